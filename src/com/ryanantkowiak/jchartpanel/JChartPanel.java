@@ -1,20 +1,41 @@
 package com.ryanantkowiak.jchartpanel;
 
+import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Cursor;
+import java.awt.Dimension;
 import java.awt.Font;
+import java.awt.FontMetrics;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.awt.event.MouseEvent;
+import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 /**
  * Class definition of JChartPanel. A java component that displays a dynamic
@@ -23,7 +44,7 @@ import javax.swing.JPanel;
  * @author antko
  *
  */
-public class JChartPanel extends JPanel implements MouseMotionListener, KeyListener
+public class JChartPanel extends JPanel implements MouseListener, MouseMotionListener, KeyListener
 {
 	/**
 	 * Serializable class ID
@@ -71,6 +92,22 @@ public class JChartPanel extends JPanel implements MouseMotionListener, KeyListe
 	 */
 	public static final int DEFAULT_KEY_Y_DELTA = 25;
 
+	/**
+	 * Default distance (in pixels) from the cursor within which the nearest data
+	 * series is highlighted.
+	 */
+	public static final int DEFAULT_HIGHLIGHT_DISTANCE = 6;
+
+	/**
+	 * Default color used to shade the selected range of the chart panel.
+	 */
+	public static final Color DEFAULT_SELECTION_COLOR = new Color(255, 255, 255, 48);
+
+	/**
+	 * Default font used to display the statistics of the selected range.
+	 */
+	public static final Font DEFAULT_STATISTICS_FONT = new Font("Arial", Font.PLAIN, 14);
+
 	/**
 	 * Default font used to display the tips.
 	 */
@@ -118,6 +155,18 @@ public class JChartPanel extends JPanel implements MouseMotionListener, KeyListe
 		 */
 		protected boolean visible;
 
+		/**
+		 * The derived series that produces the data of this series, or null if this
+		 * series is not derived from another series.
+		 */
+		protected JChartPanelDerivedSeries derivedSeries;
+
+		/**
+		 * Flag to indicate whether this series is drawn as a percentile envelope per
+		 * pixel column, rather than as a line graph.
+		 */
+		protected boolean envelope;
+
 		/**
 		 * Construct a ChartSeriesStruct object.
 		 * 
@@ -140,6 +189,24 @@ public class JChartPanel extends JPanel implements MouseMotionListener, KeyListe
 			this.visible = true;
 		}
 
+		/**
+		 * Construct a copy of a ChartSeriesStruct object, which shares the series
+		 * data of the original.
+		 * 
+		 * @param other
+		 *            - the ChartSeriesStruct object to copy
+		 */
+		protected ChartSeriesStruct(ChartSeriesStruct other)
+		{
+			this.seriesIndex = other.seriesIndex;
+			this.seriesData = other.seriesData;
+			this.seriesName = other.seriesName;
+			this.seriesColor = other.seriesColor;
+			this.visible = other.visible;
+			this.derivedSeries = other.derivedSeries;
+			this.envelope = other.envelope;
+		}
+
 		/**
 		 * Compares two ChartSeriesStruct objects for sorting based on seriesIndex.
 		 */
@@ -158,9 +225,413 @@ public class JChartPanel extends JPanel implements MouseMotionListener, KeyListe
 	}
 
 	/**
-	 * Data structure that maps indices to the actual series data.
+	 * Applies a set of changes to the data series of a chart panel. The changes
+	 * are made to a working copy of the series, which is kept sorted by series
+	 * index, and a series is copied the first time it is modified. The chart panel
+	 * only sees the changes once they are all committed, so painting never sees a
+	 * partially applied batch.
+	 * 
+	 * @author antko
+	 *
+	 */
+	public class ChartMutator
+	{
+		/**
+		 * Working copy of the data series, sorted by series index.
+		 */
+		protected final List<ChartSeriesStruct> series;
+
+		/**
+		 * The series structures that were created or copied by this mutator, and so
+		 * can be modified in place.
+		 */
+		protected final Map<ChartSeriesStruct, Boolean> owned = new IdentityHashMap<ChartSeriesStruct, Boolean>();
+
+		/**
+		 * Lowest position in the working copy at which an unused series index may be
+		 * found.
+		 */
+		protected int freeIndexHint;
+
+		/**
+		 * Flag to indicate whether any change was made.
+		 */
+		protected boolean changed;
+
+		/**
+		 * Construct a ChartMutator object.
+		 * 
+		 * @param current
+		 *            - the current data series of the chart panel, sorted by series
+		 *            index
+		 */
+		protected ChartMutator(List<ChartSeriesStruct> current)
+		{
+			this.series = new ArrayList<ChartSeriesStruct>(current);
+		}
+
+		/**
+		 * Add a data series to the chart panel.
+		 * 
+		 * @param data
+		 *            - the series data
+		 * @param seriesName
+		 *            - the name/label of the series
+		 * @param color
+		 *            - the color to use when drawing the series data or label name
+		 * @return - integer index identifier of the series
+		 */
+		public int addSeries(List<Double> data, String seriesName, Color color)
+		{
+			if (data != null)
+				return addSeries(new JChartPanelDataScreenPlacement(data), seriesName, color);
+
+			return -1;
+		}
+
+		/**
+		 * Add a data series to the chart panel, using the given storage for the data
+		 * points.
+		 * 
+		 * @param storage
+		 *            - the storage of the series data
+		 * @param seriesName
+		 *            - the name/label of the series
+		 * @param color
+		 *            - the color to use when drawing the series data or label name
+		 * @return - integer index identifier of the series
+		 */
+		public int addSeries(JChartPanelSeriesStorage storage, String seriesName, Color color)
+		{
+			if (storage != null)
+				return addSeries(new JChartPanelDataScreenPlacement(storage), seriesName, color);
+
+			return -1;
+		}
+
+		/**
+		 * Add the chart panel data of a series to the chart panel.
+		 * 
+		 * @param placement
+		 *            - the chart panel data of the series
+		 * @param seriesName
+		 *            - the name/label of the series
+		 * @param color
+		 *            - the color to use when drawing the series data or label name
+		 * @return - integer index identifier of the series
+		 */
+		protected int addSeries(JChartPanelDataScreenPlacement placement, String seriesName, Color color)
+		{
+			if (color == null)
+				return -1;
+
+			// The series are sorted by index, so the first position whose index is
+			// greater than the position is the lowest unused index
+			int n = series.size();
+			int i = freeIndexHint;
+
+			while (i < n && series.get(i).seriesIndex == i)
+				++i;
+
+			placement.setDecimationCache(decimationCache);
+
+			ChartSeriesStruct css = new ChartSeriesStruct(i, placement, seriesName, color);
+
+			series.add(i, css);
+			owned.put(css, Boolean.TRUE);
+			freeIndexHint = i + 1;
+			changed = true;
+
+			return css.seriesIndex;
+		}
+
+		/**
+		 * Add a series derived from another series of the chart panel.
+		 * 
+		 * @param sourceIndex
+		 *            - the index/id of the source series
+		 * @param derivedSeries
+		 *            - the derived series, which must not already be in use
+		 * @param seriesName
+		 *            - the name/label of the series
+		 * @param color
+		 *            - the color to use when drawing the series data or label name
+		 * @return - integer index identifier of the derived series, or -1 if there
+		 *         is no series with the given source index
+		 */
+		public int addDerivedSeries(int sourceIndex, JChartPanelDerivedSeries derivedSeries, String seriesName,
+				Color color)
+		{
+			int pos = find(sourceIndex);
+
+			if (derivedSeries == null || color == null || pos < 0)
+				return -1;
+
+			ChartSeriesStruct source = series.get(pos);
+
+			derivedSeries.bind(source.seriesData.storage, source.derivedSeries);
+
+			int seriesIndex = addSeries(derivedSeries.getStorage(), seriesName, color);
+
+			series.get(find(seriesIndex)).derivedSeries = derivedSeries;
+
+			return seriesIndex;
+		}
+
+		/**
+		 * Remove a data series from the chart panel, along with the series derived
+		 * from it.
+		 * 
+		 * @param seriesIndex
+		 *            - id/index of the series data to remove from the chart panel
+		 * @return - true if the series was successfully removed
+		 */
+		public boolean removeSeries(int seriesIndex)
+		{
+			int pos = find(seriesIndex);
+
+			if (pos < 0)
+				return false;
+
+			series.remove(pos);
+			freeIndexHint = Math.min(freeIndexHint, pos);
+			changed = true;
+
+			removeOrphanedDerivedSeries();
+
+			return true;
+		}
+
+		/**
+		 * Remove the derived series whose source series is no longer in the chart
+		 * panel, and then the series derived from those, so that none is left being
+		 * fed by a source the chart panel no longer shows.
+		 */
+		protected void removeOrphanedDerivedSeries()
+		{
+			boolean removed = true;
+
+			while (removed)
+			{
+				removed = false;
+
+				for (int i = series.size() - 1 ; i >= 0 ; --i)
+				{
+					JChartPanelDerivedSeries derivedSeries = series.get(i).derivedSeries;
+
+					if (derivedSeries != null && !hasStorage(derivedSeries.source))
+					{
+						series.remove(i);
+						freeIndexHint = Math.min(freeIndexHint, i);
+						removed = true;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Returns true if one of the data series uses the given storage.
+		 * 
+		 * @param storage
+		 *            - the storage of the series data points
+		 * @return - true if the storage is used by one of the data series
+		 */
+		protected boolean hasStorage(JChartPanelSeriesStorage storage)
+		{
+			for (ChartSeriesStruct css : series)
+				if (css.seriesData.storage == storage)
+					return true;
+
+			return false;
+		}
+
+		/**
+		 * Remove all data series from the chart panel.
+		 */
+		public void removeAllSeries()
+		{
+			changed |= !series.isEmpty();
+			series.clear();
+			freeIndexHint = 0;
+		}
+
+		/**
+		 * Set the visiblity flag of a data series.
+		 * 
+		 * @param seriesIndex
+		 *            - index/id of the data series
+		 * @param visible
+		 *            - flag to indicate whether the data series should be visible
+		 * @return - true if the visibility flag was successfully set
+		 */
+		public boolean setSeriesVisible(int seriesIndex, boolean visible)
+		{
+			ChartSeriesStruct css = edit(seriesIndex);
+
+			if (css == null)
+				return false;
+
+			css.visible = visible;
+			return true;
+		}
+
+		/**
+		 * Toggle the visibility of series data.
+		 * 
+		 * @param seriesIndex
+		 *            - the index/id of the data series
+		 * @return - true if the visibility of the data series was successfully
+		 *         toggled
+		 */
+		public boolean toggleSeriesVisible(int seriesIndex)
+		{
+			ChartSeriesStruct css = edit(seriesIndex);
+
+			if (css == null)
+				return false;
+
+			css.visible = !css.visible;
+			return true;
+		}
+
+		/**
+		 * Set the color for the display of the series data and the label/name.
+		 * 
+		 * @param seriesIndex
+		 *            - the index/id of the data series
+		 * @param color
+		 *            - the color to set
+		 * @return - true if the color of the data series was successfully set
+		 */
+		public boolean setSeriesColor(int seriesIndex, Color color)
+		{
+			ChartSeriesStruct css = color == null ? null : edit(seriesIndex);
+
+			if (css == null)
+				return false;
+
+			css.seriesColor = color;
+			return true;
+		}
+
+		/**
+		 * Set whether a data series is drawn as a percentile envelope.
+		 * 
+		 * @param seriesIndex
+		 *            - the index/id of the data series
+		 * @param envelope
+		 *            - true if the data series should be drawn as a percentile
+		 *            envelope
+		 * @return - true if the drawing mode was successfully set
+		 */
+		public boolean setSeriesEnvelope(int seriesIndex, boolean envelope)
+		{
+			ChartSeriesStruct css = edit(seriesIndex);
+
+			if (css == null)
+				return false;
+
+			css.envelope = envelope;
+			return true;
+		}
+
+		/**
+		 * Returns the position of a data series in the working copy.
+		 * 
+		 * @param seriesIndex
+		 *            - the index/id of the data series
+		 * @return - the position of the data series, or a negative value if there is
+		 *         no such series
+		 */
+		protected int find(int seriesIndex)
+		{
+			int lo = 0;
+			int hi = series.size() - 1;
+
+			while (lo <= hi)
+			{
+				int mid = (lo + hi) >>> 1;
+				int midIndex = series.get(mid).seriesIndex;
+
+				if (midIndex < seriesIndex)
+					lo = mid + 1;
+				else if (midIndex > seriesIndex)
+					hi = mid - 1;
+				else
+					return mid;
+			}
+
+			return -1;
+		}
+
+		/**
+		 * Returns a data series that can be modified by this mutator, copying the
+		 * series the first time it is modified.
+		 * 
+		 * @param seriesIndex
+		 *            - the index/id of the data series
+		 * @return - the modifiable data series, or null if there is no such series
+		 */
+		protected ChartSeriesStruct edit(int seriesIndex)
+		{
+			int pos = find(seriesIndex);
+
+			if (pos < 0)
+				return null;
+
+			ChartSeriesStruct css = series.get(pos);
+
+			if (!owned.containsKey(css))
+			{
+				css = new ChartSeriesStruct(css);
+				series.set(pos, css);
+				owned.put(css, Boolean.TRUE);
+			}
+
+			changed = true;
+			return css;
+		}
+	}
+
+	/**
+	 * Minimum number of screen points of the visible data series for which the
+	 * line graphs are drawn on all the processor cores.
+	 */
+	public static final int TILED_RENDERING_MIN_POINTS = 50000;
+
+	/**
+	 * Default delay, in milliseconds, after the last size change of the chart
+	 * panel before its screen placement is recalculated.
+	 */
+	public static final int DEFAULT_PLACEMENT_DELAY = 30;
+
+	/**
+	 * Thread pool shared by all the chart panels to calculate screen placements
+	 * off the event dispatch thread.
 	 */
-	protected List<ChartSeriesStruct> seriesData = new ArrayList<ChartSeriesStruct>();
+	protected static final ExecutorService PLACEMENT_EXECUTOR = Executors.newFixedThreadPool(
+			Math.max(1, Runtime.getRuntime().availableProcessors() / 2), new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable r)
+				{
+					Thread t = new Thread(r, "JChartPanelPlacement");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+
+	/**
+	 * Data structure that maps indices to the actual series data. The list is
+	 * sorted by series index and is never modified; changes to the data series
+	 * replace it with a new list.
+	 */
+	protected volatile List<ChartSeriesStruct> seriesData = Collections.<ChartSeriesStruct> emptyList();
+
+	/**
+	 * Lock that serializes the changes to the data series.
+	 */
+	private final Object seriesLock = new Object();
 
 	/**
 	 * List of tips that are displayed in the chart, as the cursor moves
@@ -168,6 +639,28 @@ public class JChartPanel extends JPanel implements MouseMotionListener, KeyListe
 	 */
 	protected List<String> tips;
 
+	/**
+	 * The timestamps of the tips, in non-decreasing order, or null if the tips are
+	 * spread evenly across the chart panel.
+	 */
+	protected long[] tipTimestamps;
+
+	/**
+	 * Flag to indicate whether the time axis shared by the timestamped series
+	 * spans from the earliest to the latest timestamp of all those series.
+	 */
+	protected boolean autoTimeRange = true;
+
+	/**
+	 * The time at the left edge of the chart panel, for timestamped series.
+	 */
+	protected long timeFrom;
+
+	/**
+	 * The time at the right edge of the chart panel, for timestamped series.
+	 */
+	protected long timeTo;
+
 	/**
 	 * Reference to the parent JFrame that owns this chart. Useful for callbacks on
 	 * keyboard events in order to do things such as maximize/restore or close the
@@ -245,6 +738,12 @@ public class JChartPanel extends JPanel implements MouseMotionListener, KeyListe
 	 */
 	protected boolean showKey = true;
 
+	/**
+	 * Flag to indicate whether the key/legend should show the value of each series
+	 * at the position of the vertical guide.
+	 */
+	protected boolean showKeyValues = false;
+
 	/**
 	 * Delta (in pixels) in the Y-direction (up and down) between labels on the
 	 * key/legend.
@@ -252,58 +751,198 @@ public class JChartPanel extends JPanel implements MouseMotionListener, KeyListe
 	protected int keyYDelta = DEFAULT_KEY_Y_DELTA;
 
 	/**
-	 * Construct a JChartPanel.
+	 * Cache of decimated data series shared with other chart panels, or null if
+	 * decimations are not cached.
 	 */
-	public JChartPanel()
-	{
-		addMouseMotionListener(this);
-		addKeyListener(this);
-		setFocusable(true);
-		requestFocus();
-	}
+	protected JChartPanelDecimationCache decimationCache;
 
 	/**
-	 * Set the parent JFrame that owns the chart panel.
-	 * 
-	 * @param parentFrame
-	 *            - the JFrame that owns the chart panel
+	 * Flag to indicate whether repaints requested with requestRepaint() are
+	 * deferred to a shared repaint clock, such as the one of a
+	 * JChartPanelDashboard.
 	 */
-	public void setParentFrame(JFrame parentFrame)
-	{
-		this.parentFrame = parentFrame;
-	}
+	protected boolean deferRepaint = false;
 
 	/**
-	 * Add a data series to the chart panel.
-	 * 
-	 * @param series
-	 *            - the series data
-	 * @return - integer index identifier of the series
+	 * Flag to indicate that a deferred repaint was requested and has not yet been
+	 * performed.
 	 */
-	public int addSeries(List<Double> series)
-	{
-		return addSeries(series, "", DEFAULT_SERIES_COLOR);
-	}
+	protected volatile boolean repaintRequested = false;
 
 	/**
-	 * Add a data series to the chart panel.
-	 * 
-	 * @param series
-	 *            - the series data
-	 * @param seriesName
-	 *            - the name/label of the series
-	 * @return - integer index identifier of the series
+	 * Flag to indicate whether the line graphs of a chart panel with many screen
+	 * points are drawn in vertical strips on all the processor cores.
 	 */
-	public int addSeries(List<Double> series, String seriesName)
-	{
-		return addSeries(series, seriesName, DEFAULT_SERIES_COLOR);
-	}
+	protected boolean tiledRendering = true;
 
 	/**
-	 * Add a data series to the chart panel.
-	 * 
-	 * @param series
-	 *            - the series data
+	 * Renderer used to draw the line graphs in vertical strips on all the
+	 * processor cores.
+	 */
+	protected JChartPanelTiledRenderer tiledRenderer = new JChartPanelTiledRenderer();
+
+	/**
+	 * The number of most recent data points shown across a scrolling chart panel,
+	 * or zero if the chart panel shows all the data points.
+	 */
+	protected int scrollingWindow = 0;
+
+	/**
+	 * Renderer used to draw a scrolling chart panel.
+	 */
+	protected JChartPanelScrollingRenderer scrollingRenderer = new JChartPanelScrollingRenderer();
+
+	/**
+	 * Flag to indicate whether the data series are drawn as a density heatmap,
+	 * rather than as line graphs.
+	 */
+	protected boolean densityMode = false;
+
+	/**
+	 * Renderer used to draw the data series as a density heatmap.
+	 */
+	protected JChartPanelDensityRenderer densityRenderer = new JChartPanelDensityRenderer();
+
+	/**
+	 * Flag to indicate whether the data series nearest to the cursor is
+	 * highlighted and named.
+	 */
+	protected boolean highlightNearest = false;
+
+	/**
+	 * Distance (in pixels) from the cursor within which the nearest data series
+	 * is highlighted.
+	 */
+	protected int highlightDistance = DEFAULT_HIGHLIGHT_DISTANCE;
+
+	/**
+	 * The highlighted data series, or null if no series is highlighted.
+	 */
+	protected ChartSeriesStruct highlightedSeries;
+
+	/**
+	 * The x-coordinate where the selection of a range started, or -1 if no range
+	 * is selected.
+	 */
+	protected int selectionStart = -1;
+
+	/**
+	 * The x-coordinate where the selection of a range ended.
+	 */
+	protected int selectionEnd = -1;
+
+	/**
+	 * The color used to shade the selected range of the chart panel.
+	 */
+	protected Color selectionColor = DEFAULT_SELECTION_COLOR;
+
+	/**
+	 * The font used to display the statistics of the selected range.
+	 */
+	protected Font statisticsFont = DEFAULT_STATISTICS_FONT;
+
+	/**
+	 * Flag to indicate whether the screen placement of the data series is
+	 * recalculated off the event dispatch thread.
+	 */
+	protected boolean asyncPlacement = true;
+
+	/**
+	 * The most recently published screen placement of the data series.
+	 */
+	protected volatile JChartPanelPlacementSnapshot placementSnapshot;
+
+	/**
+	 * The calculation of the screen placement in progress, if any.
+	 */
+	protected Future<?> placementJob;
+
+	/**
+	 * Counter incremented each time a placement calculation starts. A finished
+	 * calculation is only published if no other calculation started after it.
+	 */
+	protected int placementGeneration;
+
+	/**
+	 * The size of the chart panel for the calculation in progress.
+	 */
+	protected Dimension pendingSize = new Dimension();
+
+	/**
+	 * The state of the data for the calculation in progress.
+	 */
+	protected JChartPanelPlacementSnapshot.DataState pendingState;
+
+	/**
+	 * Timer that delays the calculation of the screen placement while the chart
+	 * panel is being resized.
+	 */
+	protected Timer placementTimer;
+
+	/**
+	 * Construct a JChartPanel.
+	 */
+	public JChartPanel()
+	{
+		placementTimer = new Timer(DEFAULT_PLACEMENT_DELAY, new ActionListener()
+		{
+			@Override
+			public void actionPerformed(ActionEvent e)
+			{
+				startPlacementJob();
+			}
+		});
+		placementTimer.setRepeats(false);
+
+		addMouseListener(this);
+		addMouseMotionListener(this);
+		addKeyListener(this);
+		setFocusable(true);
+		requestFocus();
+	}
+
+	/**
+	 * Set the parent JFrame that owns the chart panel.
+	 * 
+	 * @param parentFrame
+	 *            - the JFrame that owns the chart panel
+	 */
+	public void setParentFrame(JFrame parentFrame)
+	{
+		this.parentFrame = parentFrame;
+	}
+
+	/**
+	 * Add a data series to the chart panel.
+	 * 
+	 * @param series
+	 *            - the series data
+	 * @return - integer index identifier of the series
+	 */
+	public int addSeries(List<Double> series)
+	{
+		return addSeries(series, "", DEFAULT_SERIES_COLOR);
+	}
+
+	/**
+	 * Add a data series to the chart panel.
+	 * 
+	 * @param series
+	 *            - the series data
+	 * @param seriesName
+	 *            - the name/label of the series
+	 * @return - integer index identifier of the series
+	 */
+	public int addSeries(List<Double> series, String seriesName)
+	{
+		return addSeries(series, seriesName, DEFAULT_SERIES_COLOR);
+	}
+
+	/**
+	 * Add a data series to the chart panel.
+	 * 
+	 * @param series
+	 *            - the series data
 	 * @param color
 	 *            - the color to use when drawing series data or label name
 	 * @return - integer index identifier of the series
@@ -326,91 +965,163 @@ public class JChartPanel extends JPanel implements MouseMotionListener, KeyListe
 	 */
 	public int addSeries(List<Double> series, String seriesName, Color color)
 	{
-		if (series != null && color != null)
-		{
-			int seriesIndex = getNextSeriesIndex();
+		if (series != null)
+			return addSeries(new JChartPanelDataScreenPlacement(series), seriesName, color);
 
-			ChartSeriesStruct css = new ChartSeriesStruct(seriesIndex, new JChartPanelDataScreenPlacement(series),
-					seriesName, color);
+		return -1;
+	}
 
-			seriesData.add(css);
+	/**
+	 * Add a data series to the chart panel, using the given storage for the data
+	 * points. Use this to hold the data points of a long series in a compact
+	 * representation, such as a JChartPanelCompressedSeriesStorage.
+	 * 
+	 * @param storage
+	 *            - the storage of the series data
+	 * @param seriesName
+	 *            - the name/label of the series
+	 * @param color
+	 *            - the color to use when drawing the series data or label name
+	 * @return - integer index identifier of the series
+	 */
+	public int addSeries(JChartPanelSeriesStorage storage, String seriesName, Color color)
+	{
+		if (storage != null)
+			return addSeries(new JChartPanelDataScreenPlacement(storage), seriesName, color);
 
-			Collections.sort(seriesData);
+		return -1;
+	}
 
-			return css.seriesIndex;
-		}
+	/**
+	 * Open a raw series file as a data series of the chart panel. The file and
+	 * its level of detail sidecar file, written beforehand by
+	 * JChartPanelLodBuilder, are mapped into memory, so only the data needed to
+	 * draw the series is read, however long the series is.
+	 * 
+	 * @param rawFile
+	 *            - the raw series file
+	 * @param seriesName
+	 *            - the name/label of the series
+	 * @param color
+	 *            - the color to use when drawing the series data or label name
+	 * @return - integer index identifier of the series
+	 * @throws IOException
+	 *             - if the files cannot be mapped, or the sidecar file is missing
+	 *             or not valid
+	 */
+	public int openSeries(File rawFile, String seriesName, Color color) throws IOException
+	{
+		return addSeries(new JChartPanelLodSeriesStorage(rawFile), seriesName, color);
+	}
 
-		return -1;
+	/**
+	 * Export the visible data series of the chart panel, along with its
+	 * background and key/legend, as an SVG image. Each series is decimated per
+	 * pixel column of the image, so the size of the image does not depend on the
+	 * number of data points.
+	 * 
+	 * @param out
+	 *            - the output stream to write the image to; it is flushed but not
+	 *            closed
+	 * @param width
+	 *            - the width of the image in pixels
+	 * @param height
+	 *            - the height of the image in pixels
+	 * @throws IOException
+	 *             - if the image cannot be written
+	 */
+	public void exportSvg(OutputStream out, int width, int height) throws IOException
+	{
+		new JChartPanelSvgExporter(this).export(out, width, height);
 	}
 
 	/**
-	 * Remove a data series from the chart panel, identified by the given series
-	 * index ID.
+	 * Add the chart panel data of a series to the chart panel.
 	 * 
-	 * @param seriesIndex
-	 *            - id/index of the series data to remove from the chart panel
-	 * @return - true if the series was successfully removed from the chart panel
+	 * @param placement
+	 *            - the chart panel data of the series
+	 * @param seriesName
+	 *            - the name/label of the series
+	 * @param color
+	 *            - the color to use when drawing the series data or label name
+	 * @return - integer index identifier of the series
 	 */
-	public boolean removeSeries(int seriesIndex)
+	protected int addSeries(JChartPanelDataScreenPlacement placement, String seriesName, Color color)
 	{
-		for (ChartSeriesStruct css : seriesData)
+		synchronized (seriesLock)
 		{
-			if (seriesIndex == css.seriesIndex)
-			{
-				seriesData.remove(css);
-				return true;
-			}
+			ChartMutator mutator = new ChartMutator(seriesData);
+			int seriesIndex = mutator.addSeries(placement, seriesName, color);
+			commit(mutator);
+			return seriesIndex;
 		}
-
-		return false;
 	}
 
 	/**
-	 * Remove all data series data from the chart panel.
+	 * Append a data point to a data series of the chart panel, and request a
+	 * repaint. The storage of the series must support appending, which is not the
+	 * case for a fixed-size list such as one from Arrays.asList().
+	 * 
+	 * @param seriesIndex
+	 *            - the index/id of the data series
+	 * @param value
+	 *            - the value of the data point to append
+	 * @return - true if the data point was successfully appended
 	 */
-	public void removeAllSeries()
+	public boolean appendToSeries(int seriesIndex, double value)
 	{
-		seriesData.clear();
+		return appendToSeries(seriesIndex, new double[] { value });
 	}
 
 	/**
-	 * Set the visiblity flag of a data series.
+	 * Append data points to a data series of the chart panel, and request a
+	 * repaint. The storage of the series must support appending, which is not the
+	 * case for a fixed-size list such as one from Arrays.asList().
 	 * 
 	 * @param seriesIndex
-	 *            - index/id of the data series
-	 * @param visible
-	 *            - flag to indicate whether the data series should be visible
-	 * @return - true if the visibility flag was successfully set
+	 *            - the index/id of the data series
+	 * @param values
+	 *            - the values of the data points to append
+	 * @return - true if the data points were successfully appended
 	 */
-	public boolean setSeriesVisible(int seriesIndex, boolean visible)
+	public boolean appendToSeries(int seriesIndex, double[] values)
 	{
-		for (ChartSeriesStruct css : seriesData)
-		{
-			if (seriesIndex == css.seriesIndex)
-			{
-				css.visible = visible;
-				return true;
-			}
-		}
+		if (values != null)
+			return appendToSeries(seriesIndex, values, 0, values.length);
 
 		return false;
 	}
 
 	/**
-	 * Toggle the visibility of series data.
+	 * Append a range of an array of data points to a data series of the chart
+	 * panel, and request a repaint. This lets a caller reuse one array for
+	 * successive appends.
 	 * 
 	 * @param seriesIndex
 	 *            - the index/id of the data series
-	 * @return - true if the visibility of the data series was successfully toggled
-	 */
-	public boolean toggleSeriesVisible(int seriesIndex)
+	 * @param values
+	 *            - the array holding the values of the data points to append
+	 * @param offset
+	 *            - the index in the array of the first data point to append
+	 * @param length
+	 *            - the number of data points to append
+	 * @return - true if the data points were successfully appended
+	 */
+	public boolean appendToSeries(int seriesIndex, double[] values, int offset, int length)
 	{
-		for (ChartSeriesStruct css : seriesData)
+		if (values != null)
 		{
-			if (seriesIndex == css.seriesIndex)
+			for (ChartSeriesStruct css : seriesData)
 			{
-				css.visible = !css.visible;
-				return true;
+				if (seriesIndex == css.seriesIndex)
+				{
+					for (int i = offset ; i < offset + length ; ++i)
+						css.seriesData.storage.append(values[i]);
+
+					updateDerivedSeries();
+					requestRepaint();
+					return true;
+				}
 			}
 		}
 
@@ -418,23 +1129,81 @@ public class JChartPanel extends JPanel implements MouseMotionListener, KeyListe
 	}
 
 	/**
-	 * Set the color for the display of the series data and the label/name.
+	 * Rewrite the values of a range of data points of a data series, for a series
+	 * that is corrected after the fact. Only the pixel columns that hold the
+	 * rewritten data points are placed and painted again, unless the range of
+	 * values of the series changes, in which case the whole series is placed
+	 * again. Series derived from the rewritten series with addDerivedSeries are
+	 * not recomputed: they keep the values derived from the data points as they
+	 * were appended.
 	 * 
 	 * @param seriesIndex
 	 *            - the index/id of the data series
-	 * @param color
-	 *            - the color to set
-	 * @return - true if the color of the data series was successfully set
-	 */
-	public boolean setSeriesColor(int seriesIndex, Color color)
+	 * @param offset
+	 *            - the index of the first data point to rewrite
+	 * @param values
+	 *            - the new values of the data points
+	 * @return - true if the series exists
+	 * @throws UnsupportedOperationException
+	 *             - if the storage of the series cannot be rewritten
+	 * @throws IndexOutOfBoundsException
+	 *             - if the range of data points is not within the series
+	 */
+	public boolean updateRange(int seriesIndex, int offset, double[] values)
 	{
-		if (color != null)
+		if (values != null)
 		{
 			for (ChartSeriesStruct css : seriesData)
 			{
 				if (seriesIndex == css.seriesIndex)
 				{
-					css.seriesColor = color;
+					if (!(css.seriesData.storage instanceof JChartPanelUpdatableSeriesStorage))
+						throw new UnsupportedOperationException(
+								"The data points of series " + seriesIndex + " cannot be rewritten");
+
+					JChartPanelPlacementSnapshot snapshot = placementSnapshot;
+					boolean current = snapshot != null && snapshot.pixelWidth == getWidth()
+							&& snapshot.pixelHeight == getHeight() && snapshot.dataState.equals(getDataState());
+
+					((JChartPanelUpdatableSeriesStorage) css.seriesData.storage).setRange(offset, values, 0,
+							values.length);
+
+					if (values.length == 0)
+						return true;
+
+					css.seriesData.invalidateRange(offset, offset + values.length);
+
+					// A hidden series is placed again once it is shown
+					if (!css.visible)
+						return true;
+
+					JChartPanelPlacementSnapshot.Series placed = null;
+					int[] dirty = new int[2];
+
+					if (current && scrollingWindow == 0 && !densityMode && !css.envelope && !(showKey && showKeyValues)
+							&& selectionStart < 0 && snapshot.getSeries(css.seriesData) != null)
+						placed = snapshot.getSeries(css.seriesData).updateRange(offset, offset + values.length, dirty);
+
+					if (placed != null)
+					{
+						// Swap the new screen points of the series into the current placement
+						++placementGeneration;
+						placementSnapshot = new JChartPanelPlacementSnapshot(snapshot, getDataState(),
+								css.seriesData, placed);
+
+						// Only repaint the pixel columns they changed, unless the repaint is deferred
+						// to a shared clock, or the series are drawn in tiles, which are all rendered
+						// whatever the area being repainted
+						if (deferRepaint || isTiledRendering(placementSnapshot))
+							requestRepaint();
+						else
+							repaint(dirty[0], 0, dirty[1] - dirty[0] + 1, getHeight());
+					}
+					else
+					{
+						requestRepaint();
+					}
+
 					return true;
 				}
 			}
@@ -444,63 +1213,267 @@ public class JChartPanel extends JPanel implements MouseMotionListener, KeyListe
 	}
 
 	/**
-	 * Show/Hide the key/legend of the chart panel.
+	 * Add a series derived from another series of the chart panel, such as a
+	 * moving average. The derived series processes the data points the source
+	 * series already has, then is updated incrementally as data points are
+	 * appended to the source series with appendToSeries. Data points appended
+	 * directly to the storage of the source series are only processed with the
+	 * next call to appendToSeries.
 	 * 
-	 * @param showKey
-	 *            - flag to indicate if the key/legend should be shown
+	 * @param sourceIndex
+	 *            - the index/id of the source series
+	 * @param derivedSeries
+	 *            - the derived series, which must not already be in use
+	 * @param seriesName
+	 *            - the name/label of the series
+	 * @param color
+	 *            - the color to use when drawing the series data or label name
+	 * @return - integer index identifier of the derived series, or -1 if there is
+	 *         no series with the given source index
 	 */
-	public void showKey(boolean showKey)
+	public int addDerivedSeries(int sourceIndex, JChartPanelDerivedSeries derivedSeries, String seriesName,
+			Color color)
 	{
-		this.showKey = showKey;
+		synchronized (seriesLock)
+		{
+			ChartMutator mutator = new ChartMutator(seriesData);
+			int seriesIndex = mutator.addDerivedSeries(sourceIndex, derivedSeries, seriesName, color);
+			commit(mutator);
+			return seriesIndex;
+		}
 	}
 
 	/**
-	 * Set the coordinates of the key/legend of the chart panel.
-	 * 
-	 * @param keyPosition
-	 *            - the new coordinates of the key/legend
+	 * Bring all the derived series of the chart panel up to date with their
+	 * source series.
 	 */
-	public void setKeyPosition(Point keyPosition)
+	protected void updateDerivedSeries()
 	{
-		if (null != keyPosition)
-			this.keyPosition = keyPosition;
+		for (ChartSeriesStruct css : seriesData)
+			if (css.derivedSeries != null)
+				css.derivedSeries.update();
 	}
 
 	/**
-	 * Set the font used to display the key/legend of the chart panel.
+	 * Remove a data series from the chart panel, identified by the given series
+	 * index ID. The series derived from it are removed too.
 	 * 
-	 * @param keyFont
-	 *            - the new font of of the key/legend
+	 * @param seriesIndex
+	 *            - id/index of the series data to remove from the chart panel
+	 * @return - true if the series was successfully removed from the chart panel
 	 */
-	public void setKeyFont(Font keyFont)
+	public boolean removeSeries(int seriesIndex)
 	{
-		if (null != keyFont)
-			this.keyFont = keyFont;
+		synchronized (seriesLock)
+		{
+			ChartMutator mutator = new ChartMutator(seriesData);
+			boolean removed = mutator.removeSeries(seriesIndex);
+			commit(mutator);
+			return removed;
+		}
 	}
 
 	/**
-	 * Set the delta (in pixels) in the Y-direction (up and down) between labels on
-	 * the key/legend.
-	 * 
-	 * @param keyYDelta
-	 *            - the new delta between labels
+	 * Remove all data series data from the chart panel.
 	 */
-	public void setKeyYDelta(int keyYDelta)
+	public void removeAllSeries()
 	{
-		this.keyYDelta = keyYDelta;
+		synchronized (seriesLock)
+		{
+			ChartMutator mutator = new ChartMutator(seriesData);
+			mutator.removeAllSeries();
+			commit(mutator);
+		}
 	}
 
 	/**
-	 * Set the color of the tip text on the chart panel.
+	 * Set the visiblity flag of a data series.
 	 * 
-	 * @param tipColor
-	 *            - the new color to use when displaying the tips
+	 * @param seriesIndex
+	 *            - index/id of the data series
+	 * @param visible
+	 *            - flag to indicate whether the data series should be visible
+	 * @return - true if the visibility flag was successfully set
 	 */
-	public void setTipColor(Color tipColor)
+	public boolean setSeriesVisible(int seriesIndex, boolean visible)
 	{
-		if (null != tipColor)
-			this.tipColor = tipColor;
-	}
+		synchronized (seriesLock)
+		{
+			ChartMutator mutator = new ChartMutator(seriesData);
+			boolean set = mutator.setSeriesVisible(seriesIndex, visible);
+			commit(mutator);
+			return set;
+		}
+	}
+
+	/**
+	 * Toggle the visibility of series data.
+	 * 
+	 * @param seriesIndex
+	 *            - the index/id of the data series
+	 * @return - true if the visibility of the data series was successfully toggled
+	 */
+	public boolean toggleSeriesVisible(int seriesIndex)
+	{
+		synchronized (seriesLock)
+		{
+			ChartMutator mutator = new ChartMutator(seriesData);
+			boolean toggled = mutator.toggleSeriesVisible(seriesIndex);
+			commit(mutator);
+			return toggled;
+		}
+	}
+
+	/**
+	 * Set the color for the display of the series data and the label/name.
+	 * 
+	 * @param seriesIndex
+	 *            - the index/id of the data series
+	 * @param color
+	 *            - the color to set
+	 * @return - true if the color of the data series was successfully set
+	 */
+	public boolean setSeriesColor(int seriesIndex, Color color)
+	{
+		synchronized (seriesLock)
+		{
+			ChartMutator mutator = new ChartMutator(seriesData);
+			boolean set = mutator.setSeriesColor(seriesIndex, color);
+			commit(mutator);
+			return set;
+		}
+	}
+
+	/**
+	 * Set whether a data series is drawn as a percentile envelope: a band from the
+	 * 5th to the 95th percentile of the data points in each pixel column, with a
+	 * line through the median. Series that do not have many more data points than
+	 * pixel columns, and timestamped series, are still drawn as line graphs.
+	 * 
+	 * @param seriesIndex
+	 *            - the index/id of the data series
+	 * @param envelope
+	 *            - true if the data series should be drawn as a percentile envelope
+	 * @return - true if the drawing mode was successfully set
+	 */
+	public boolean setSeriesEnvelope(int seriesIndex, boolean envelope)
+	{
+		synchronized (seriesLock)
+		{
+			ChartMutator mutator = new ChartMutator(seriesData);
+			boolean set = mutator.setSeriesEnvelope(seriesIndex, envelope);
+			commit(mutator);
+			return set;
+		}
+	}
+
+	/**
+	 * Apply any number of changes to the data series of the chart panel as a
+	 * single batch. The changes become visible to painting all at once, the
+	 * series are sorted once, and the chart panel is repainted once, rather than
+	 * once per change.
+	 * 
+	 * @param changes
+	 *            - receives the mutator through which to make the changes
+	 */
+	public void batch(Consumer<ChartMutator> changes)
+	{
+		synchronized (seriesLock)
+		{
+			ChartMutator mutator = new ChartMutator(seriesData);
+			changes.accept(mutator);
+			commit(mutator);
+		}
+	}
+
+	/**
+	 * Publish the changes made by a mutator as the data series of the chart
+	 * panel, and request a repaint if anything was changed. Must be called while
+	 * holding the series lock.
+	 * 
+	 * @param mutator
+	 *            - the mutator holding the changes
+	 */
+	protected void commit(ChartMutator mutator)
+	{
+		if (mutator.changed)
+		{
+			seriesData = Collections.unmodifiableList(mutator.series);
+			highlightedSeries = null;
+			requestRepaint();
+		}
+	}
+
+	/**
+	 * Show/Hide the key/legend of the chart panel.
+	 * 
+	 * @param showKey
+	 *            - flag to indicate if the key/legend should be shown
+	 */
+	public void showKey(boolean showKey)
+	{
+		this.showKey = showKey;
+	}
+
+	/**
+	 * Show/Hide the value of each series at the position of the vertical guide in
+	 * the key/legend of the chart panel.
+	 * 
+	 * @param showKeyValues
+	 *            - flag to indicate if the series values should be shown
+	 */
+	public void showKeyValues(boolean showKeyValues)
+	{
+		this.showKeyValues = showKeyValues;
+	}
+
+	/**
+	 * Set the coordinates of the key/legend of the chart panel.
+	 * 
+	 * @param keyPosition
+	 *            - the new coordinates of the key/legend
+	 */
+	public void setKeyPosition(Point keyPosition)
+	{
+		if (null != keyPosition)
+			this.keyPosition = keyPosition;
+	}
+
+	/**
+	 * Set the font used to display the key/legend of the chart panel.
+	 * 
+	 * @param keyFont
+	 *            - the new font of of the key/legend
+	 */
+	public void setKeyFont(Font keyFont)
+	{
+		if (null != keyFont)
+			this.keyFont = keyFont;
+	}
+
+	/**
+	 * Set the delta (in pixels) in the Y-direction (up and down) between labels on
+	 * the key/legend.
+	 * 
+	 * @param keyYDelta
+	 *            - the new delta between labels
+	 */
+	public void setKeyYDelta(int keyYDelta)
+	{
+		this.keyYDelta = keyYDelta;
+	}
+
+	/**
+	 * Set the color of the tip text on the chart panel.
+	 * 
+	 * @param tipColor
+	 *            - the new color to use when displaying the tips
+	 */
+	public void setTipColor(Color tipColor)
+	{
+		if (null != tipColor)
+			this.tipColor = tipColor;
+	}
 
 	/**
 	 * Set the font of the tip text on the chart panel.
@@ -549,210 +1522,1140 @@ public class JChartPanel extends JPanel implements MouseMotionListener, KeyListe
 	}
 
 	/**
-	 * Set the color of the vertical guide on the chart panel.
+	 * Set the color of the vertical guide on the chart panel.
+	 * 
+	 * @param verticalGuideColor
+	 *            - the new color for the vertical guide
+	 */
+	public void setVerticalGuideColor(Color verticalGuideColor)
+	{
+		if (null != verticalGuideColor)
+			this.verticalGuideColor = verticalGuideColor;
+	}
+
+	/**
+	 * Show/Hide the horizontal guide on the chart panel.
+	 * 
+	 * @param showHorizontalGuide
+	 *            - true if the horizontal guide should be shown
+	 */
+	public void showHorizontalGuide(boolean showHorizontalGuide)
+	{
+		this.showHorizontalGuide = showHorizontalGuide;
+	}
+
+	/**
+	 * Set the color of the horizontal guide on the chart panel.
+	 * 
+	 * @param horizontalGuideColor
+	 *            - the new color for the horizontal guide
+	 */
+	public void setHorizontalGuideColor(Color horizontalGuideColor)
+	{
+		if (null != horizontalGuideColor)
+			this.horizontalGuideColor = horizontalGuideColor;
+	}
+
+	/**
+	 * Enable/Disable drawing the line graphs of a chart panel with many screen
+	 * points in vertical strips on all the processor cores.
+	 * 
+	 * @param tiledRendering
+	 *            - true if the line graphs may be drawn on all the processor cores
+	 */
+	public void setTiledRendering(boolean tiledRendering)
+	{
+		this.tiledRendering = tiledRendering;
+	}
+
+	/**
+	 * Enable/Disable recalculating the screen placement of the data series off the
+	 * event dispatch thread. When enabled, the chart panel shows its last finished
+	 * placement, scaled to the current size, until the new placement is ready.
+	 * When disabled, the placement is recalculated while painting.
+	 * 
+	 * @param asyncPlacement
+	 *            - true if the placement should be recalculated in the background
+	 */
+	public void setAsyncPlacement(boolean asyncPlacement)
+	{
+		this.asyncPlacement = asyncPlacement;
+		requestRepaint();
+	}
+
+	/**
+	 * Enable/Disable drawing the data series as a density heatmap. Each pixel is
+	 * colored by the number of series line segments that cross it, which stays
+	 * readable and fast when thousands of series overlap.
+	 * 
+	 * @param densityMode
+	 *            - true if the data series should be drawn as a density heatmap
+	 */
+	public void setDensityMode(boolean densityMode)
+	{
+		this.densityMode = densityMode;
+		requestRepaint();
+	}
+
+	/**
+	 * Enable/Disable highlighting the data series nearest to the cursor. The
+	 * nearest series within the highlight distance is drawn thicker and its name
+	 * is shown next to the cursor.
+	 * 
+	 * @param highlightNearest
+	 *            - true if the data series nearest to the cursor should be
+	 *            highlighted
+	 */
+	public void setHighlightNearest(boolean highlightNearest)
+	{
+		this.highlightNearest = highlightNearest;
+		this.highlightedSeries = null;
+		requestRepaint();
+	}
+
+	/**
+	 * Set the distance (in pixels) from the cursor within which the nearest data
+	 * series is highlighted.
+	 * 
+	 * @param highlightDistance
+	 *            - the highlight distance, in pixels
+	 */
+	public void setHighlightDistance(int highlightDistance)
+	{
+		if (highlightDistance >= 0)
+			this.highlightDistance = highlightDistance;
+	}
+
+	/**
+	 * Get the indices of the visible data series that pass within a distance of
+	 * the given point, nearest first.
+	 * 
+	 * @param p
+	 *            - the coordinate near which to look for data series
+	 * @param distance
+	 *            - the maximum distance, in pixels
+	 * @return - the index/id of each data series near the point
+	 */
+	public List<Integer> getSeriesNear(Point p, int distance)
+	{
+		List<Integer> seriesIndices = new ArrayList<Integer>();
+
+		for (ChartSeriesStruct css : getStructsNear(p, distance))
+			seriesIndices.add(css.seriesIndex);
+
+		return seriesIndices;
+	}
+
+	/**
+	 * Returns the visible data series that pass within a distance of the given
+	 * point, nearest first.
+	 * 
+	 * @param p
+	 *            - the coordinate near which to look for data series
+	 * @param distance
+	 *            - the maximum distance, in pixels
+	 * @return - the data series near the point
+	 */
+	protected List<ChartSeriesStruct> getStructsNear(Point p, int distance)
+	{
+		List<ChartSeriesStruct> near = new ArrayList<ChartSeriesStruct>();
+		JChartPanelPlacementSnapshot snapshot = placementSnapshot;
+
+		if (snapshot == null || scrollingWindow > 0 || getWidth() < 1 || getHeight() < 1)
+			return near;
+
+		Map<JChartPanelDataScreenPlacement, ChartSeriesStruct> visible;
+		visible = new IdentityHashMap<JChartPanelDataScreenPlacement, ChartSeriesStruct>();
+
+		for (ChartSeriesStruct css : seriesData)
+			if (css.visible)
+				visible.put(css.seriesData, css);
+
+		List<JChartPanelDataScreenPlacement> placements = snapshot.getPlacements();
+
+		// The snapshot may be for a previous size of the chart panel
+		int x = (int) ((long) p.x * snapshot.pixelWidth / getWidth());
+		int y = (int) ((long) p.y * snapshot.pixelHeight / getHeight());
+
+		// The hit index is built with the snapshot when highlighting is enabled, and
+		// on the first query otherwise
+		for (int i : snapshot.getHitIndex().query(x, y, distance))
+		{
+			ChartSeriesStruct css = visible.get(placements.get(i));
+
+			if (css != null)
+				near.add(css);
+		}
+
+		return near;
+	}
+
+	/**
+	 * Make the chart panel a scrolling chart, that shows the given number of most
+	 * recent data points of its series on a shared index axis. As data points are
+	 * appended, the chart only draws the newly exposed columns, and only redraws
+	 * everything when the range of values of a visible series changes.
+	 * 
+	 * @param scrollingWindow
+	 *            - the number of data points shown across the chart panel (at least
+	 *            two), or zero to show all the data points
+	 */
+	public void setScrollingWindow(int scrollingWindow)
+	{
+		if (scrollingWindow == 0 || scrollingWindow >= 2)
+		{
+			this.scrollingWindow = scrollingWindow;
+			requestRepaint();
+		}
+	}
+
+	/**
+	 * Set the background color of the chart panel.
+	 * 
+	 * @param bgColor
+	 *            - the new background color for the chart panel
+	 */
+	public void setChartBackgroundColor(Color bgColor)
+	{
+		if (bgColor != null)
+			chartBackgroundColor = bgColor;
+	}
+
+	/**
+	 * Get the value of a data series at the data point closest to the given
+	 * coordinate, as the series was last drawn.
+	 * 
+	 * @param seriesIndex
+	 *            - the index/id of the data series
+	 * @param p
+	 *            - the coordinate from which to retrieve the value
+	 * @return - the value of the data series, or NaN if there is no such series,
+	 *         the series is empty or it has not been drawn
+	 */
+	public double getSeriesValue(int seriesIndex, Point p)
+	{
+		JChartPanelPlacementSnapshot snapshot = placementSnapshot;
+
+		for (ChartSeriesStruct css : seriesData)
+			if (seriesIndex == css.seriesIndex)
+				return getValueAt(css, snapshot, p.x);
+
+		return Double.NaN;
+	}
+
+	/**
+	 * Get the statistics of the data points of a series between two
+	 * x-coordinates of the chart panel.
+	 * 
+	 * @param seriesIndex
+	 *            - the index/id of the data series
+	 * @param fromX
+	 *            - the x-coordinate of one end of the range
+	 * @param toX
+	 *            - the x-coordinate of the other end of the range
+	 * @return - the statistics of the data points, or null if there is no such
+	 *         series, it has no data points or it has not been drawn
+	 */
+	public JChartPanelRangeStatistics.Summary getRangeStatistics(int seriesIndex, int fromX, int toX)
+	{
+		JChartPanelPlacementSnapshot snapshot = placementSnapshot;
+
+		for (ChartSeriesStruct css : seriesData)
+			if (seriesIndex == css.seriesIndex)
+				return getRangeStatistics(css, snapshot, fromX, toX);
+
+		return null;
+	}
+
+	/**
+	 * Returns the index of the data point of a series that is closest to the given
+	 * x-coordinate, as the series is placed in a placement snapshot.
+	 * 
+	 * @param css
+	 *            - the data series
+	 * @param snapshot
+	 *            - the placement snapshot, or null if there is none yet
+	 * @param x
+	 *            - the x-coordinate on the chart panel
+	 * @return - the index of the closest data point, or -1 if the series is empty
+	 *         or not placed in the snapshot
+	 */
+	protected int getIndexAt(ChartSeriesStruct css, JChartPanelPlacementSnapshot snapshot, int x)
+	{
+		JChartPanelPlacementSnapshot.Series placed = snapshot == null ? null : snapshot.getSeries(css.seriesData);
+
+		if (placed == null || getWidth() < 1)
+			return -1;
+
+		// The snapshot may be for a previous size of the chart panel
+		return placed.getIndexAt((int) ((long) x * snapshot.pixelWidth / getWidth()));
+	}
+
+	/**
+	 * Returns the value of the data point of a series that is closest to the given
+	 * x-coordinate, as the series is placed in a placement snapshot.
+	 * 
+	 * @param css
+	 *            - the data series
+	 * @param snapshot
+	 *            - the placement snapshot, or null if there is none yet
+	 * @param x
+	 *            - the x-coordinate on the chart panel
+	 * @return - the value of the closest data point, or NaN if the series is empty
+	 *         or not placed in the snapshot
+	 */
+	protected double getValueAt(ChartSeriesStruct css, JChartPanelPlacementSnapshot snapshot, int x)
+	{
+		int index = getIndexAt(css, snapshot, x);
+
+		return index < 0 ? Double.NaN : css.seriesData.storage.get(index);
+	}
+
+	/**
+	 * Returns the statistics of the data points of a series between two
+	 * x-coordinates, as the series is placed in a placement snapshot.
+	 * 
+	 * @param css
+	 *            - the data series
+	 * @param snapshot
+	 *            - the placement snapshot, or null if there is none yet
+	 * @param fromX
+	 *            - the x-coordinate of one end of the range
+	 * @param toX
+	 *            - the x-coordinate of the other end of the range
+	 * @return - the statistics of the data points, or null if the series is empty
+	 *         or not placed in the snapshot
+	 */
+	protected JChartPanelRangeStatistics.Summary getRangeStatistics(ChartSeriesStruct css,
+			JChartPanelPlacementSnapshot snapshot, int fromX, int toX)
+	{
+		int fromIndex = getIndexAt(css, snapshot, Math.min(fromX, toX));
+		int toIndex = getIndexAt(css, snapshot, Math.max(fromX, toX));
+
+		if (fromIndex < 0)
+			return null;
+
+		return css.seriesData.getRangeStatistics().query(fromIndex, toIndex + 1);
+	}
+
+	/**
+	 * Clear the selected range of the chart panel.
+	 */
+	public void clearSelection()
+	{
+		selectionStart = -1;
+		selectionEnd = -1;
+		requestRepaint();
+	}
+
+	/**
+	 * Set the cache of decimated data series used by this chart panel. Chart
+	 * panels that share a cache reuse the decimations of series that they have in
+	 * common.
+	 * 
+	 * @param decimationCache
+	 *            - the cache to use, or null to not cache decimations
+	 */
+	public void setDecimationCache(JChartPanelDecimationCache decimationCache)
+	{
+		this.decimationCache = decimationCache;
+
+		for (ChartSeriesStruct css : seriesData)
+			css.seriesData.setDecimationCache(decimationCache);
+	}
+
+	/**
+	 * Set the position of the vertical and horizontal guides on the chart panel.
+	 * 
+	 * @param guidePosition
+	 *            - the new coordinates of the guides
+	 */
+	public void setGuidePosition(Point guidePosition)
+	{
+		if (null != guidePosition && !guidePosition.equals(lastMousePosition))
+		{
+			lastMousePosition = new Point(guidePosition);
+			requestRepaint();
+		}
+	}
+
+	/**
+	 * Get the position of the vertical and horizontal guides on the chart panel.
+	 * 
+	 * @return - the coordinates of the guides
+	 */
+	public Point getGuidePosition()
+	{
+		return new Point(lastMousePosition);
+	}
+
+	/**
+	 * Request that the chart panel is repainted. If the chart panel is driven by a
+	 * shared repaint clock, the repaint happens on the next tick of the clock, and
+	 * any number of requests before then result in a single repaint.
+	 */
+	public void requestRepaint()
+	{
+		if (deferRepaint)
+			repaintRequested = true;
+		else
+			repaint();
+	}
+
+	/**
+	 * Returns true if one of the data series of the chart panel uses the given
+	 * storage.
+	 * 
+	 * @param storage
+	 *            - the storage of the series data points
+	 * @return - true if the storage is used by this chart panel
+	 */
+	protected boolean usesStorage(JChartPanelSeriesStorage storage)
+	{
+		for (ChartSeriesStruct css : seriesData)
+			if (css.seriesData.storage == storage)
+				return true;
+
+		return false;
+	}
+
+	/**
+	 * Return a list of the series index IDs that are currently being used by this
+	 * chart panel.
+	 * 
+	 * @return - List of index IDs in use
+	 */
+	public List<Integer> getSeriesIndices()
+	{
+		List<Integer> indices = new ArrayList<Integer>();
+
+		for (ChartSeriesStruct css : seriesData)
+			indices.add(css.seriesIndex);
+
+		return indices;
+	}
+
+	/**
+	 * Return a list of the series index IDs that are currently being used by this
+	 * chart panel and that are currently visible.
+	 * 
+	 * @return - List of visible index IDs in use
+	 */
+	public List<Integer> getVisibleSeriesindicies()
+	{
+		List<Integer> indices = new ArrayList<Integer>();
+
+		for (ChartSeriesStruct css : seriesData)
+			if (css.visible)
+				indices.add(css.seriesIndex);
+
+		return indices;
+	}
+
+	/**
+	 * Return a list of the series index IDs that are currently being used by this
+	 * chart panel and that are currently not visible.
+	 * 
+	 * @return - List of index IDs that are in use and not visible
+	 */
+	public List<Integer> getInvisibleSeriesindicies()
+	{
+		List<Integer> indices = new ArrayList<Integer>();
+
+		for (ChartSeriesStruct css : seriesData)
+			if (!css.visible)
+				indices.add(css.seriesIndex);
+
+		return indices;
+	}
+
+	/**
+	 * Paints the component.
+	 * 
+	 * @param g
+	 *            - the graphics context in which to paint the component
+	 */
+	@Override
+	protected void paintComponent(Graphics g)
+	{
+		// First call super-class paintComponent
+		super.paintComponent(g);
+
+		// Set the and draw the background color
+		g.setColor(chartBackgroundColor);
+		g.fillRect(0, 0, getWidth(), getHeight());
+
+		// Place the timestamped series on a shared time axis
+		updateTimeAxis();
+
+		// Draw the line graphs of the visible data series
+		paintSeries(g);
+
+		// Shade the selected range, and show the statistics of each visible series
+		// within it
+		if (selectionStart >= 0 && scrollingWindow == 0)
+			paintSelection(g);
+
+		// Name the highlighted series next to the cursor
+		ChartSeriesStruct highlighted = highlightedSeries;
+
+		if (highlighted != null && highlighted.visible && scrollingWindow == 0)
+		{
+			g.setColor(highlighted.seriesColor);
+			g.setFont(keyFont);
+			g.drawString("" + highlighted.seriesIndex + ": " + highlighted.seriesName, lastMousePosition.x + 12,
+					lastMousePosition.y - 8);
+		}
+
+		// Draw the on-screen tip text, if necessary
+		if (showTips)
+		{
+			g.setColor(tipColor);
+			g.setFont(tipFont);
+			g.drawString(getTip(lastMousePosition), tipPosition.x, tipPosition.y);
+		}
+
+		// Show the vertical guide, if necessary
+		if (showVerticalGuide)
+		{
+			g.setColor(verticalGuideColor);
+			g.drawLine(lastMousePosition.x, 0, lastMousePosition.x, getHeight());
+		}
+
+		// Show the horizontal guide, if necessary
+		if (showHorizontalGuide)
+		{
+			g.setColor(horizontalGuideColor);
+			g.drawLine(0, lastMousePosition.y, getWidth(), lastMousePosition.y);
+		}
+
+		// Draw the key/legend, if necessary
+		if (showKey)
+			paintKey(g);
+	}
+
+	/**
+	 * Paints the key/legend of the chart panel. Each data series has its own line
+	 * of the key, whether or not it is visible, so only the lines that fall within
+	 * the area being repainted are drawn.
+	 * 
+	 * @param g
+	 *            - the graphics context in which to paint the component
+	 */
+	protected void paintKey(Graphics g)
+	{
+		List<ChartSeriesStruct> series = seriesData;
+		JChartPanelPlacementSnapshot snapshot = placementSnapshot;
+
+		g.setFont(keyFont);
+
+		FontMetrics metrics = g.getFontMetrics();
+		Rectangle clip = g.getClipBounds();
+		int from = 0;
+		int to = series.size();
+
+		if (clip != null && keyYDelta > 0)
+		{
+			// A line is drawn if any of its text, from the ascent above its baseline to
+			// the descent below it, falls within the clip
+			int top = clip.y - metrics.getDescent() - keyPosition.y;
+			int bottom = clip.y + clip.height + metrics.getAscent() - keyPosition.y;
+
+			from = Math.max(0, (int) Math.ceil((double) top / keyYDelta));
+			to = Math.min(to, (int) Math.floor((double) bottom / keyYDelta) + 1);
+		}
+
+		for (int i = from ; i < to ; ++i)
+		{
+			ChartSeriesStruct css = series.get(i);
+
+			if (css.visible)
+			{
+				g.setColor(css.seriesColor);
+				String label = "" + css.seriesIndex + ": " + css.seriesName;
+
+				if (showKeyValues)
+					label += " = " + getValueAt(css, snapshot, lastMousePosition.x);
+
+				g.drawString(label, keyPosition.x, keyPosition.y + i * keyYDelta);
+			}
+		}
+	}
+
+	/**
+	 * Paints the selected range of the chart panel, along with the statistics of
+	 * the data points of each visible series within the range.
+	 * 
+	 * @param g
+	 *            - the graphics context in which to paint the component
+	 */
+	protected void paintSelection(Graphics g)
+	{
+		int left = Math.min(selectionStart, selectionEnd);
+		int right = Math.max(selectionStart, selectionEnd);
+
+		g.setColor(selectionColor);
+		g.fillRect(left, 0, right - left + 1, getHeight());
+
+		List<ChartSeriesStruct> visible = new ArrayList<ChartSeriesStruct>();
+
+		for (ChartSeriesStruct css : seriesData)
+			if (css.visible)
+				visible.add(css);
+
+		JChartPanelPlacementSnapshot snapshot = placementSnapshot;
+
+		g.setFont(statisticsFont);
+
+		int lineHeight = g.getFontMetrics().getHeight();
+		int y = getHeight() - 8 - (visible.size() - 1) * lineHeight;
+
+		for (ChartSeriesStruct css : visible)
+		{
+			JChartPanelRangeStatistics.Summary summary = getRangeStatistics(css, snapshot, left, right);
+
+			if (summary != null)
+			{
+				g.setColor(css.seriesColor);
+				g.drawString("" + css.seriesIndex + ": " + summary, left + 4, y);
+			}
+
+			y += lineHeight;
+		}
+	}
+
+	/**
+	 * Returns true if painting the whole chart panel from a placement snapshot
+	 * draws the line graphs in tiles, on all the processor cores.
+	 * 
+	 * @param snapshot
+	 *            - the placement snapshot to paint
+	 * @return - true if the line graphs are drawn in tiles
+	 */
+	protected boolean isTiledRendering(JChartPanelPlacementSnapshot snapshot)
+	{
+		if (!tiledRendering || densityMode || !JChartPanelTiledRenderer.isAvailable())
+			return false;
+
+		int pointCount = 0;
+
+		for (ChartSeriesStruct css : seriesData)
+			if (css.visible && snapshot.getSeries(css.seriesData) != null)
+				pointCount += snapshot.getPoints(css.seriesData).size();
+
+		return pointCount >= TILED_RENDERING_MIN_POINTS;
+	}
+
+	/**
+	 * Paints the line graphs of the visible data series.
+	 * 
+	 * @param g
+	 *            - the graphics context in which to paint the component
+	 */
+	protected void paintSeries(Graphics g)
+	{
+		// A scrolling chart places the most recent data points itself
+		if (scrollingWindow > 0)
+		{
+			List<JChartPanelSeriesStorage> storages = new ArrayList<JChartPanelSeriesStorage>();
+			List<Color> colors = new ArrayList<Color>();
+
+			for (ChartSeriesStruct css : seriesData)
+			{
+				if (css.visible)
+				{
+					storages.add(css.seriesData.storage);
+					colors.add(css.seriesColor);
+				}
+			}
+
+			g.drawImage(scrollingRenderer.render(storages, colors, chartBackgroundColor, getWidth(), getHeight(),
+					scrollingWindow), 0, 0, null);
+			return;
+		}
+
+		// Have each series calculate their screen placement, given the current size of
+		// the chart panel window
+		JChartPanelPlacementSnapshot snapshot = updatePlacement();
+
+		Graphics2D g2 = (Graphics2D) g.create();
+
+		try
+		{
+			// Until the placement for the current size is published, show the last
+			// finished placement scaled to the current size
+			if (snapshot.pixelWidth != getWidth() || snapshot.pixelHeight != getHeight())
+				g2.scale((double) getWidth() / Math.max(1, snapshot.pixelWidth),
+						(double) getHeight() / Math.max(1, snapshot.pixelHeight));
+
+			paintSeries(g2, snapshot);
+
+			ChartSeriesStruct highlighted = highlightedSeries;
+
+			if (highlighted != null && highlighted.visible && !densityMode)
+			{
+				// Draw the highlighted series again, over the other series
+				List<Point> chartPoints = snapshot.getPoints(highlighted.seriesData);
+
+				g2.setColor(highlighted.seriesColor);
+				g2.setStroke(new BasicStroke(3));
+
+				for (int i = 1 ; i < chartPoints.size() ; ++i)
+					g2.drawLine(chartPoints.get(i - 1).x, chartPoints.get(i - 1).y, chartPoints.get(i).x,
+							chartPoints.get(i).y);
+			}
+		}
+		finally
+		{
+			g2.dispose();
+		}
+	}
+
+	/**
+	 * Paints the line graphs of the visible data series from a placement snapshot.
+	 * 
+	 * @param g
+	 *            - the graphics context in which to paint the component
+	 * @param snapshot
+	 *            - the screen points of the data series
+	 */
+	protected void paintSeries(Graphics g, JChartPanelPlacementSnapshot snapshot)
+	{
+		int width = snapshot.pixelWidth;
+		int height = snapshot.pixelHeight;
+
+		if (densityMode)
+		{
+			List<List<Point>> pointLists = new ArrayList<List<Point>>();
+
+			for (ChartSeriesStruct css : seriesData)
+				if (css.visible)
+					pointLists.add(snapshot.getPoints(css.seriesData));
+
+			g.drawImage(densityRenderer.render(pointLists, chartBackgroundColor, width, height), 0, 0, null);
+			return;
+		}
+
+		// Only the visible data series with screen points inside the area being
+		// repainted need to be drawn
+		Rectangle clip = g.getClipBounds();
+		List<ChartSeriesStruct> drawn = new ArrayList<ChartSeriesStruct>();
+
+		for (ChartSeriesStruct css : seriesData)
+			if (css.visible && snapshot.intersects(css.seriesData, clip))
+				drawn.add(css);
+
+		// Count the screen points of the drawn data series, to decide whether to draw
+		// the series on all the processor cores
+		int pointCount = 0;
+
+		for (ChartSeriesStruct css : drawn)
+			pointCount += snapshot.getPoints(css.seriesData).size();
+
+		if (tiledRendering && pointCount >= TILED_RENDERING_MIN_POINTS && JChartPanelTiledRenderer.isAvailable())
+		{
+			List<List<Point>> pointLists = new ArrayList<List<Point>>();
+			List<Color> colors = new ArrayList<Color>();
+
+			for (ChartSeriesStruct css : drawn)
+			{
+				if (snapshot.getSeries(css.seriesData).envelope == null)
+				{
+					pointLists.add(snapshot.getPoints(css.seriesData));
+					colors.add(css.seriesColor);
+				}
+			}
+
+			g.drawImage(tiledRenderer.render(pointLists, colors, chartBackgroundColor, width, height), 0, 0,
+					null);
+
+			for (ChartSeriesStruct css : drawn)
+			{
+				int[][] envelope = snapshot.getSeries(css.seriesData).envelope;
+
+				if (envelope != null)
+					paintEnvelope(g, css.seriesColor, envelope);
+			}
+
+			return;
+		}
+
+		// Group the line graphs by color, so that the color of the graphics context
+		// only changes once per color rather than once per data series
+		Map<Color, List<List<Point>>> batches = new LinkedHashMap<Color, List<List<Point>>>();
+
+		for (ChartSeriesStruct css : drawn)
+		{
+			int[][] envelope = snapshot.getSeries(css.seriesData).envelope;
+
+			if (envelope != null)
+			{
+				paintEnvelope(g, css.seriesColor, envelope);
+				continue;
+			}
+
+			List<List<Point>> batch = batches.get(css.seriesColor);
+
+			if (batch == null)
+			{
+				batch = new ArrayList<List<Point>>();
+				batches.put(css.seriesColor, batch);
+			}
+
+			batch.add(snapshot.getPoints(css.seriesData));
+		}
+
+		for (Map.Entry<Color, List<List<Point>>> batch : batches.entrySet())
+		{
+			g.setColor(batch.getKey());
+
+			for (List<Point> chartPoints : batch.getValue())
+			{
+				// Only draw the segments that cross the clip horizontally
+				int from = 1;
+				int to = chartPoints.size() - 1;
+
+				if (clip != null)
+				{
+					from = Math.max(1, JChartPanelTiledRenderer.firstIndexAtOrAfter(chartPoints, clip.x));
+					to = Math.min(to, JChartPanelTiledRenderer.firstIndexAtOrAfter(chartPoints, clip.x + clip.width));
+				}
+
+				// Draw line graph of the data points
+				for (int i = from ; i <= to ; ++i)
+					g.drawLine(chartPoints.get(i - 1).x, chartPoints.get(i - 1).y, chartPoints.get(i).x,
+							chartPoints.get(i).y);
+			}
+		}
+	}
+
+	/**
+	 * Paints the percentile envelope of a data series: a translucent band between
+	 * the lower and upper edge in each pixel column, and a line through the
+	 * medians.
 	 * 
-	 * @param verticalGuideColor
-	 *            - the new color for the vertical guide
+	 * @param g
+	 *            - the graphics context in which to paint the component
+	 * @param color
+	 *            - the color of the data series
+	 * @param envelope
+	 *            - the lower edge, median and upper edge of the envelope
 	 */
-	public void setVerticalGuideColor(Color verticalGuideColor)
+	protected void paintEnvelope(Graphics g, Color color, int[][] envelope)
 	{
-		if (null != verticalGuideColor)
-			this.verticalGuideColor = verticalGuideColor;
-	}
+		int[] low = envelope[0];
+		int[] median = envelope[1];
+		int[] high = envelope[2];
 
-	/**
-	 * Show/Hide the horizontal guide on the chart panel.
-	 * 
-	 * @param showHorizontalGuide
-	 *            - true if the horizontal guide should be shown
-	 */
-	public void showHorizontalGuide(boolean showHorizontalGuide)
-	{
-		this.showHorizontalGuide = showHorizontalGuide;
-	}
+		g.setColor(new Color(color.getRed(), color.getGreen(), color.getBlue(), 96));
 
-	/**
-	 * Set the color of the horizontal guide on the chart panel.
-	 * 
-	 * @param horizontalGuideColor
-	 *            - the new color for the horizontal guide
-	 */
-	public void setHorizontalGuideColor(Color horizontalGuideColor)
-	{
-		if (null != horizontalGuideColor)
-			this.horizontalGuideColor = horizontalGuideColor;
+		for (int x = 0 ; x < low.length ; ++x)
+			if (low[x] != Integer.MIN_VALUE)
+				g.drawLine(x, high[x], x, low[x]);
+
+		g.setColor(color);
+
+		int previous = -1;
+
+		for (int x = 0 ; x < median.length ; ++x)
+		{
+			if (median[x] == Integer.MIN_VALUE)
+				continue;
+
+			if (previous >= 0)
+				g.drawLine(previous, median[previous], x, median[x]);
+
+			previous = x;
+		}
 	}
 
 	/**
-	 * Set the background color of the chart panel.
+	 * Returns the placement snapshot to paint. When there is no snapshot yet, or
+	 * placement is synchronous, an out of date snapshot is recalculated right away.
+	 * Otherwise an out of date snapshot is returned as is, and a new one is
+	 * calculated off the event dispatch thread. When the size of the chart panel
+	 * changed, the calculation starts after a short delay that restarts with every
+	 * size change, so resizing only recalculates once it pauses. When only the data
+	 * changed, it starts right away, or once the calculation in progress is
+	 * published.
 	 * 
-	 * @param bgColor
-	 *            - the new background color for the chart panel
+	 * @return - the placement snapshot to paint
 	 */
-	public void setChartBackgroundColor(Color bgColor)
+	protected JChartPanelPlacementSnapshot updatePlacement()
 	{
-		if (bgColor != null)
-			chartBackgroundColor = bgColor;
+		Dimension size = getSize();
+		JChartPanelPlacementSnapshot.DataState state = getDataState();
+		JChartPanelPlacementSnapshot snapshot = placementSnapshot;
+
+		if (snapshot != null && snapshot.pixelWidth == size.width && snapshot.pixelHeight == size.height
+				&& snapshot.dataState.equals(state))
+			return snapshot;
+
+		if (snapshot == null || !asyncPlacement)
+		{
+			// Invalidate any placement in progress, which is now out of date
+			++placementGeneration;
+
+			snapshot = calculatePlacement(new ArrayList<ChartSeriesStruct>(seriesData), size, timeFrom, timeTo,
+					state);
+			placementSnapshot = snapshot;
+			return snapshot;
+		}
+
+		boolean running = placementJob != null && !placementJob.isDone();
+
+		if (snapshot.pixelWidth != size.width || snapshot.pixelHeight != size.height)
+		{
+			if (!running || !pendingSize.equals(size) || !state.equals(pendingState))
+				placementTimer.restart();
+		}
+		else if (!running && !placementTimer.isRunning())
+		{
+			// Only the data changed. While a calculation is in progress, publishing it
+			// repaints the chart panel, which starts the next one, so that a steady
+			// stream of appended data points does not keep cancelling calculations.
+			startPlacementJob();
+		}
+
+		return snapshot;
 	}
 
 	/**
-	 * Returns the lowest integer (greater than or equal to zero) that is currently
-	 * not being used as a series index.
-	 * 
-	 * @return - the next integer to use for a new series index
+	 * Starts calculating a placement snapshot for the current size and data of the
+	 * chart panel off the event dispatch thread, cancelling any calculation in
+	 * progress. The snapshot is published on the event dispatch thread once it is
+	 * finished, unless another calculation was started in the meantime.
 	 */
-	protected int getNextSeriesIndex()
+	protected void startPlacementJob()
 	{
-		int n = seriesData.size();
+		if (placementJob != null)
+			placementJob.cancel(true);
+
+		final List<ChartSeriesStruct> series = new ArrayList<ChartSeriesStruct>(seriesData);
+		final Dimension size = getSize();
+		final long from = timeFrom;
+		final long to = timeTo;
+		final JChartPanelPlacementSnapshot.DataState state = getDataState();
+		final int generation = ++placementGeneration;
+
+		pendingSize = size;
+		pendingState = state;
 
-		for (int i = 0 ; i < n ; ++i)
-			if (seriesData.get(i).seriesIndex > i)
-				return i;
+		placementJob = PLACEMENT_EXECUTOR.submit(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				final JChartPanelPlacementSnapshot snapshot = calculatePlacement(series, size, from, to, state);
 
-		return n;
+				if (snapshot == null)
+					return;
+
+				SwingUtilities.invokeLater(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						if (generation == placementGeneration)
+						{
+							placementSnapshot = snapshot;
+							requestRepaint();
+						}
+					}
+				});
+			}
+		});
 	}
 
 	/**
-	 * Return a list of the series index IDs that are currently being used by this
-	 * chart panel.
+	 * Calculates the screen placement of the given data series.
 	 * 
-	 * @return - List of index IDs in use
-	 */
-	public List<Integer> getSeriesIndices()
+	 * @param series
+	 *            - the data series to place
+	 * @param size
+	 *            - the size of the chart panel
+	 * @param timeFrom
+	 *            - the time at the left edge of the chart panel
+	 * @param timeTo
+	 *            - the time at the right edge of the chart panel
+	 * @param state
+	 *            - state of the data of the chart panel
+	 * @return - the placement snapshot, or null if the calculation was interrupted
+	 */
+	protected JChartPanelPlacementSnapshot calculatePlacement(List<ChartSeriesStruct> series, Dimension size,
+			long timeFrom, long timeTo, JChartPanelPlacementSnapshot.DataState state)
 	{
-		List<Integer> indices = new ArrayList<Integer>();
+		Map<JChartPanelDataScreenPlacement, JChartPanelPlacementSnapshot.Series> placed;
+		placed = new LinkedHashMap<JChartPanelDataScreenPlacement, JChartPanelPlacementSnapshot.Series>();
 
-		for (ChartSeriesStruct css : seriesData)
-			indices.add(css.seriesIndex);
+		for (ChartSeriesStruct css : series)
+		{
+			if (Thread.currentThread().isInterrupted())
+				return null;
 
-		return indices;
+			// Hidden series are not placed; a series keeps its last placement while it is
+			// hidden, so showing it again only recalculates it if the size of the chart
+			// panel or its data changed in the meantime
+			if (!css.visible)
+				continue;
+
+			// Calculate the envelope along with the screen points, so that it is ready
+			// to paint at the same size as them
+			placed.put(css.seriesData, css.seriesData.place(size, timeFrom, timeTo, css.envelope));
+		}
+
+		JChartPanelPlacementSnapshot snapshot = new JChartPanelPlacementSnapshot(size.width, size.height, timeFrom,
+				timeTo, state, placed);
+
+		// Build the hit index with the snapshot, so that moving the cursor over the
+		// chart panel does not have to
+		if (highlightNearest)
+			snapshot.getHitIndex();
+
+		return snapshot;
 	}
 
 	/**
-	 * Return a list of the series index IDs that are currently being used by this
-	 * chart panel and that are currently visible.
+	 * Returns the state of the data of the chart panel, which changes when series
+	 * are added, removed, shown or hidden, data points are appended to or
+	 * rewritten in a visible series, the envelope of a visible series is shown or
+	 * hidden, the time axis changes, or highlighting is enabled, which needs the
+	 * hit index built with the placement.
 	 * 
-	 * @return - List of visible index IDs in use
+	 * @return - the state of the data
 	 */
-	public List<Integer> getVisibleSeriesindicies()
+	protected JChartPanelPlacementSnapshot.DataState getDataState()
 	{
-		List<Integer> indices = new ArrayList<Integer>();
+		List<ChartSeriesStruct> visible = new ArrayList<ChartSeriesStruct>();
 
 		for (ChartSeriesStruct css : seriesData)
 			if (css.visible)
-				indices.add(css.seriesIndex);
+				visible.add(css);
 
-		return indices;
+		JChartPanelDataScreenPlacement[] placements = new JChartPanelDataScreenPlacement[visible.size()];
+		int[] sizes = new int[visible.size()];
+		int[] updateCounts = new int[visible.size()];
+		boolean[] envelopes = new boolean[visible.size()];
+
+		for (int i = 0 ; i < visible.size() ; ++i)
+		{
+			ChartSeriesStruct css = visible.get(i);
+
+			placements[i] = css.seriesData;
+			sizes[i] = css.seriesData.storage.size();
+			updateCounts[i] = css.seriesData.getUpdateCount();
+			envelopes[i] = css.envelope;
+		}
+
+		return new JChartPanelPlacementSnapshot.DataState(timeFrom, timeTo, highlightNearest, placements, sizes,
+				updateCounts, envelopes);
 	}
 
 	/**
-	 * Return a list of the series index IDs that are currently being used by this
-	 * chart panel and that are currently not visible.
+	 * Set the tips text for the chart panel.
 	 * 
-	 * @return - List of index IDs that are in use and not visible
+	 * @param tips
+	 *            - list of tips text to display as the cursor moves left-to-right
+	 *            inside the chart panel
 	 */
-	public List<Integer> getInvisibleSeriesindicies()
+	public void setTips(List<String> tips)
 	{
-		List<Integer> indices = new ArrayList<Integer>();
-
-		for (ChartSeriesStruct css : seriesData)
-			if (!css.visible)
-				indices.add(css.seriesIndex);
-
-		return indices;
+		this.tips = tips;
+		this.tipTimestamps = null;
 	}
 
 	/**
-	 * Paints the component.
+	 * Set timestamped tips text for the chart panel. As the cursor moves over the
+	 * time axis of the chart panel, the tip with the latest timestamp at or before
+	 * the time under the cursor is displayed.
 	 * 
-	 * @param g
-	 *            - the graphics context in which to paint the component
+	 * @param tipTimestamps
+	 *            - the timestamps of the tips, in non-decreasing order
+	 * @param tips
+	 *            - list of tips text, one for each timestamp
 	 */
-	@Override
-	protected void paintComponent(Graphics g)
+	public void setTips(long[] tipTimestamps, List<String> tips)
 	{
-		// First call super-class paintComponent
-		super.paintComponent(g);
-
-		// Set the and draw the background color
-		g.setColor(chartBackgroundColor);
-		g.fillRect(0, 0, getWidth(), getHeight());
-
-		// Have each series calculate their screen placement, given the current size of
-		// the chart panel window
-		for (ChartSeriesStruct css : seriesData)
-			css.seriesData.setDimension(getSize());
-
-		// Iterate over all the series data
-		for (ChartSeriesStruct css : seriesData)
+		if (tipTimestamps != null && tips != null && tipTimestamps.length == tips.size())
 		{
-			// If the data series is visible, draw it
-			if (css.visible)
-			{
-				// Use the appropriate color for each data series
-				g.setColor(css.seriesColor);
-
-				// Get the on-screen coordinates of all the data points
-				List<Point> chartPoints = css.seriesData.getPoints();
-
-				// Draw line graph of the data points
-				for (int i = 1 ; i < chartPoints.size() ; ++i)
-					g.drawLine(chartPoints.get(i - 1).x, chartPoints.get(i - 1).y, chartPoints.get(i).x,
-							chartPoints.get(i).y);
-			}
+			this.tips = tips;
+			this.tipTimestamps = tipTimestamps;
 		}
+	}
 
-		// Draw the on-screen tip text, if necessary
-		if (showTips)
+	/**
+	 * Set the range of time shown across the chart panel, for all its timestamped
+	 * series.
+	 * 
+	 * @param timeFrom
+	 *            - the time at the left edge of the chart panel
+	 * @param timeTo
+	 *            - the time at the right edge of the chart panel
+	 */
+	public void setTimeRange(long timeFrom, long timeTo)
+	{
+		if (timeFrom < timeTo)
 		{
-			g.setColor(tipColor);
-			g.setFont(tipFont);
-			g.drawString(getTip(lastMousePosition), tipPosition.x, tipPosition.y);
+			this.timeFrom = timeFrom;
+			this.timeTo = timeTo;
+			this.autoTimeRange = false;
+			requestRepaint();
 		}
+	}
 
-		// Show the vertical guide, if necessary
-		if (showVerticalGuide)
-		{
-			g.setColor(verticalGuideColor);
-			g.drawLine(lastMousePosition.x, 0, lastMousePosition.x, getHeight());
-		}
+	/**
+	 * Make the range of time shown across the chart panel span from the earliest
+	 * to the latest timestamp of all its timestamped series.
+	 */
+	public void setAutoTimeRange()
+	{
+		autoTimeRange = true;
+		requestRepaint();
+	}
 
-		// Show the horizontal guide, if necessary
-		if (showHorizontalGuide)
-		{
-			g.setColor(horizontalGuideColor);
-			g.drawLine(0, lastMousePosition.y, getWidth(), lastMousePosition.y);
-		}
+	/**
+	 * Get the time on the time axis of the chart panel at the given point.
+	 * 
+	 * @param p
+	 *            - the coordinate from which to retrieve the time
+	 * @return - the time at the point
+	 */
+	public long getTimeAt(Point p)
+	{
+		if (getWidth() < 1)
+			return timeFrom;
 
-		// Draw the key/legend, if necessary
-		if (showKey)
+		return timeFrom + Math.round((double) p.x * (timeTo - timeFrom) / getWidth());
+	}
+
+	/**
+	 * Calculates the range of the time axis, if it is automatic. The range is
+	 * passed to the timestamped series when they are placed.
+	 */
+	protected void updateTimeAxis()
+	{
+		if (autoTimeRange)
 		{
-			Point p = new Point(keyPosition);
+			long from = Long.MAX_VALUE;
+			long to = Long.MIN_VALUE;
 
 			for (ChartSeriesStruct css : seriesData)
 			{
-				if (css.visible)
+				JChartPanelTimestampedSeriesStorage ts = css.seriesData.timestampedStorage;
+
+				if (ts != null && ts.size() > 0)
 				{
-					g.setColor(css.seriesColor);
-					g.setFont(keyFont);
-					g.drawString("" + css.seriesIndex + ": " + css.seriesName, p.x, p.y);
+					from = Math.min(from, ts.getTimestamp(0));
+					to = Math.max(to, ts.getTimestamp(ts.size() - 1));
 				}
-
-				p.y += keyYDelta;
 			}
-		}
-	}
 
-	/**
-	 * Set the tips text for the chart panel.
-	 * 
-	 * @param tips
-	 *            - list of tips text to display as the cursor moves left-to-right
-	 *            inside the chart panel
-	 */
-	public void setTips(List<String> tips)
-	{
-		this.tips = tips;
+			if (from > to)
+				return;
+
+			timeFrom = from;
+			timeTo = to;
+		}
 	}
 
 	/**
@@ -769,6 +2672,26 @@ public class JChartPanel extends JPanel implements MouseMotionListener, KeyListe
 		if (tips == null || tips.isEmpty() || xPos < 0 || xPos >= getWidth())
 			return "";
 
+		if (tipTimestamps != null)
+		{
+			// Binary search for the last tip at or before the time under the cursor
+			long time = getTimeAt(p);
+			int lo = 0;
+			int hi = tipTimestamps.length;
+
+			while (lo < hi)
+			{
+				int mid = (lo + hi) >>> 1;
+
+				if (tipTimestamps[mid] <= time)
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+
+			return lo > 0 ? tips.get(lo - 1) : "";
+		}
+
 		if (tips.size() == 1)
 			return tips.get(0);
 
@@ -785,8 +2708,60 @@ public class JChartPanel extends JPanel implements MouseMotionListener, KeyListe
 	 * 
 	 */
 	@Override
+	public void mouseClicked(MouseEvent e)
+	{
+	}
+
+	/**
+	 * Start selecting a range of the chart panel.
+	 */
+	@Override
+	public void mousePressed(MouseEvent e)
+	{
+		selectionStart = e.getX();
+		selectionEnd = e.getX();
+		requestRepaint();
+	}
+
+	/**
+	 * Finish selecting a range of the chart panel. A click without a drag clears
+	 * the selection.
+	 */
+	@Override
+	public void mouseReleased(MouseEvent e)
+	{
+		if (selectionStart == e.getX())
+			clearSelection();
+	}
+
+	/**
+	 * 
+	 */
+	@Override
+	public void mouseEntered(MouseEvent e)
+	{
+	}
+
+	/**
+	 * 
+	 */
+	@Override
+	public void mouseExited(MouseEvent e)
+	{
+	}
+
+	/**
+	 * Extend the selected range of the chart panel.
+	 */
+	@Override
 	public void mouseDragged(MouseEvent e)
 	{
+		if (selectionStart >= 0)
+		{
+			selectionEnd = Math.max(0, Math.min(getWidth() - 1, e.getX()));
+			lastMousePosition = e.getPoint();
+			requestRepaint();
+		}
 	}
 
 	/**
@@ -796,7 +2771,14 @@ public class JChartPanel extends JPanel implements MouseMotionListener, KeyListe
 	public void mouseMoved(MouseEvent e)
 	{
 		lastMousePosition = e.getPoint();
-		repaint();
+
+		if (highlightNearest)
+		{
+			List<ChartSeriesStruct> near = getStructsNear(lastMousePosition, highlightDistance);
+			highlightedSeries = near.isEmpty() ? null : near.get(0);
+		}
+
+		requestRepaint();
 	}
 
 	/**
@@ -811,7 +2793,7 @@ public class JChartPanel extends JPanel implements MouseMotionListener, KeyListe
 			if (lastMousePosition.x > 0)
 			{
 				lastMousePosition.x--;
-				repaint();
+				requestRepaint();
 			}
 		}
 		// Right-Arrow - Nudge the vertical guide, one pixel to the right
@@ -820,7 +2802,7 @@ public class JChartPanel extends JPanel implements MouseMotionListener, KeyListe
 			if (lastMousePosition.x < getWidth() - 1)
 			{
 				lastMousePosition.x++;
-				repaint();
+				requestRepaint();
 			}
 		}
 		// Up-Arrow - Nudge the horizontal guide, one pixel up
@@ -829,7 +2811,7 @@ public class JChartPanel extends JPanel implements MouseMotionListener, KeyListe
 			if (lastMousePosition.y > 0)
 			{
 				lastMousePosition.y--;
-				repaint();
+				requestRepaint();
 			}
 		}
 		// Down-Arrow - Nudge the horizontal guide, one pixel down
@@ -838,7 +2820,7 @@ public class JChartPanel extends JPanel implements MouseMotionListener, KeyListe
 			if (lastMousePosition.y < getHeight() - 1)
 			{
 				lastMousePosition.y++;
-				repaint();
+				requestRepaint();
 			}
 		}
 	}
@@ -869,19 +2851,19 @@ public class JChartPanel extends JPanel implements MouseMotionListener, KeyListe
 		else if (ke.getKeyChar() == 'v')
 		{
 			showVerticalGuide = !showVerticalGuide;
-			repaint();
+			requestRepaint();
 		}
 		// h - Toggle display of the horizontal guide
 		else if (ke.getKeyChar() == 'h')
 		{
 			showHorizontalGuide = !showHorizontalGuide;
-			repaint();
+			requestRepaint();
 		}
 		// t - Toggle display of the tips text
 		else if (ke.getKeyChar() == 't')
 		{
 			showTips = !showTips;
-			repaint();
+			requestRepaint();
 		}
 		// m - Toggle the display of the mouse cursor over the chart panel
 		else if (ke.getKeyChar() == 'm')
@@ -910,18 +2892,42 @@ public class JChartPanel extends JPanel implements MouseMotionListener, KeyListe
 				}
 			}
 		}
+		// d - Toggle drawing the data series as a density heatmap
+		else if (ke.getKeyChar() == 'd')
+		{
+			densityMode = !densityMode;
+			requestRepaint();
+		}
+		// n - Toggle highlighting the data series nearest to the cursor
+		else if (ke.getKeyChar() == 'n')
+		{
+			setHighlightNearest(!highlightNearest);
+		}
+		// e - Toggle drawing every data series as a percentile envelope
+		else if (ke.getKeyChar() == 'e')
+		{
+			batch(new Consumer<ChartMutator>()
+			{
+				@Override
+				public void accept(ChartMutator mutator)
+				{
+					for (ChartSeriesStruct css : seriesData)
+						mutator.setSeriesEnvelope(css.seriesIndex, !css.envelope);
+				}
+			});
+		}
 		// k - Toggle display of the key/legend
 		else if (ke.getKeyChar() == 'k')
 		{
 			showKey = !showKey;
-			repaint();
+			requestRepaint();
 		}
 		// 0-9 - Toggle the display of the relevant data-series
 		else if (ke.getKeyChar() >= '0' && ke.getKeyChar() <= '9')
 		{
 			int index = ke.getKeyChar() - '0';
 			toggleSeriesVisible(index);
-			repaint();
+			requestRepaint();
 		}
 	}
 }
@@ -0,0 +1,447 @@
+package com.ryanantkowiak.jchartpanel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Series storage that holds the data points in compressed blocks. Each value is
+ * encoded as the XOR of its bits with the bits of the previous value, storing
+ * only the meaningful bits of the XOR. Slowly changing series, such as sampled
+ * metrics, take a small fraction of the memory of a list of Double objects.
+ * 
+ * Each block keeps the minimum, maximum, first and last value of its data
+ * points, so range queries only decode the blocks that are partially covered by
+ * the range.
+ * 
+ * @author antko
+ *
+ */
+public class JChartPanelCompressedSeriesStorage implements JChartPanelSeriesStorage
+{
+	/**
+	 * Default number of data points in each compressed block.
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 512;
+
+	/**
+	 * A block of compressed data points, along with a summary of the values.
+	 * 
+	 * @author antko
+	 *
+	 */
+	protected static class Block
+	{
+		/**
+		 * The encoded bits of the data points.
+		 */
+		protected long[] words = new long[8];
+
+		/**
+		 * The number of encoded bits.
+		 */
+		protected int bitLength;
+
+		/**
+		 * The number of data points in the block.
+		 */
+		protected int count;
+
+		/**
+		 * The minimum value in the block.
+		 */
+		protected double minValue = Double.MAX_VALUE;
+
+		/**
+		 * The maximum value in the block.
+		 */
+		protected double maxValue = -Double.MAX_VALUE;
+
+		/**
+		 * The first value in the block.
+		 */
+		protected double firstValue;
+
+		/**
+		 * The last value in the block.
+		 */
+		protected double lastValue;
+
+		/**
+		 * The number of leading zeros of the previously stored XOR, or -1 if there is
+		 * none.
+		 */
+		protected int previousLeading = -1;
+
+		/**
+		 * The number of trailing zeros of the previously stored XOR.
+		 */
+		protected int previousTrailing;
+
+		/**
+		 * Encodes a value at the end of the block.
+		 * 
+		 * @param v
+		 *            - the value to encode
+		 */
+		protected void encode(double v)
+		{
+			if (count == 0)
+			{
+				write(Double.doubleToRawLongBits(v), 64);
+				firstValue = v;
+			}
+			else
+			{
+				long xor = Double.doubleToRawLongBits(v) ^ Double.doubleToRawLongBits(lastValue);
+
+				if (xor == 0)
+				{
+					write(0, 1);
+				}
+				else
+				{
+					int leading = Math.min(31, Long.numberOfLeadingZeros(xor));
+					int trailing = Long.numberOfTrailingZeros(xor);
+
+					if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing)
+					{
+						// Meaningful bits fit inside the previous window
+						write(2, 2);
+						write(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+					}
+					else
+					{
+						int meaningful = 64 - leading - trailing;
+
+						write(3, 2);
+						write(leading, 5);
+						write(meaningful - 1, 6);
+						write(xor >>> trailing, meaningful);
+
+						previousLeading = leading;
+						previousTrailing = trailing;
+					}
+				}
+			}
+
+			if (v < minValue)
+				minValue = v;
+
+			if (v > maxValue)
+				maxValue = v;
+
+			lastValue = v;
+			++count;
+		}
+
+		/**
+		 * Decodes all the values of the block.
+		 * 
+		 * @param values
+		 *            - array which receives the decoded values
+		 */
+		protected void decode(double[] values)
+		{
+			if (count == 0)
+				return;
+
+			int pos = 0;
+			long bits = read(pos, 64);
+			pos += 64;
+			values[0] = Double.longBitsToDouble(bits);
+
+			int leading = 0;
+			int trailing = 0;
+
+			for (int i = 1 ; i < count ; ++i)
+			{
+				if (read(pos++, 1) != 0)
+				{
+					if (read(pos++, 1) != 0)
+					{
+						leading = (int) read(pos, 5);
+						int meaningful = (int) read(pos + 5, 6) + 1;
+						pos += 11;
+						trailing = 64 - leading - meaningful;
+					}
+
+					int meaningful = 64 - leading - trailing;
+					bits ^= read(pos, meaningful) << trailing;
+					pos += meaningful;
+				}
+
+				values[i] = Double.longBitsToDouble(bits);
+			}
+		}
+
+		/**
+		 * Writes the lowest bits of a value at the end of the encoded bits.
+		 * 
+		 * @param value
+		 *            - the value holding the bits to write
+		 * @param bits
+		 *            - the number of bits to write (1 to 64)
+		 */
+		protected void write(long value, int bits)
+		{
+			if (bits < 64)
+				value &= (1L << bits) - 1;
+
+			int wordIndex = bitLength >>> 6;
+			int free = 64 - (bitLength & 63);
+
+			if (wordIndex + 1 >= words.length)
+				words = Arrays.copyOf(words, words.length * 2);
+
+			if (bits <= free)
+			{
+				words[wordIndex] |= value << (free - bits);
+			}
+			else
+			{
+				words[wordIndex] |= value >>> (bits - free);
+				words[wordIndex + 1] |= value << (64 - (bits - free));
+			}
+
+			bitLength += bits;
+		}
+
+		/**
+		 * Reads bits from the encoded bits.
+		 * 
+		 * @param pos
+		 *            - the position of the first bit to read
+		 * @param bits
+		 *            - the number of bits to read (1 to 64)
+		 * @return - the bits read, in the lowest bits of the result
+		 */
+		protected long read(int pos, int bits)
+		{
+			int wordIndex = pos >>> 6;
+			int available = 64 - (pos & 63);
+
+			if (bits <= available)
+			{
+				long v = words[wordIndex] >>> (available - bits);
+				return bits < 64 ? v & ((1L << bits) - 1) : v;
+			}
+
+			int remaining = bits - available;
+			long high = words[wordIndex] & ((1L << available) - 1);
+
+			return (high << remaining) | (words[wordIndex + 1] >>> (64 - remaining));
+		}
+
+		/**
+		 * Releases the unused capacity of the encoded bits, once the block is full.
+		 */
+		protected void trim()
+		{
+			words = Arrays.copyOf(words, (bitLength + 63) >>> 6);
+		}
+	}
+
+	/**
+	 * The compressed blocks of data points.
+	 */
+	protected List<Block> blocks = new ArrayList<Block>();
+
+	/**
+	 * The number of data points in each block.
+	 */
+	protected int blockSize;
+
+	/**
+	 * The number of data points in the storage.
+	 */
+	protected int size;
+
+	/**
+	 * The minimum value in the series data.
+	 */
+	protected double minValue = Double.MAX_VALUE;
+
+	/**
+	 * The maximum value in the series data.
+	 */
+	protected double maxValue = -Double.MAX_VALUE;
+
+	/**
+	 * The index of the block whose values are held in decodedValues, or -1 if none.
+	 */
+	protected int decodedBlockIndex = -1;
+
+	/**
+	 * The decoded values of the most recently accessed block.
+	 */
+	protected double[] decodedValues;
+
+	/**
+	 * Constructor for an empty compressed series storage with the default block
+	 * size.
+	 */
+	public JChartPanelCompressedSeriesStorage()
+	{
+		this(DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * Constructor for an empty compressed series storage.
+	 * 
+	 * @param blockSize
+	 *            - the number of data points in each compressed block
+	 */
+	public JChartPanelCompressedSeriesStorage(int blockSize)
+	{
+		if (blockSize < 1)
+			throw new IllegalArgumentException("blockSize must be positive");
+
+		this.blockSize = blockSize;
+		this.decodedValues = new double[blockSize];
+	}
+
+	/**
+	 * Constructor for a compressed series storage that holds a copy of the given
+	 * data points.
+	 * 
+	 * @param series
+	 *            - the series data points
+	 */
+	public JChartPanelCompressedSeriesStorage(List<Double> series)
+	{
+		this(DEFAULT_BLOCK_SIZE);
+
+		for (Double v : series)
+			append(v);
+	}
+
+	@Override
+	public synchronized int size()
+	{
+		return size;
+	}
+
+	@Override
+	public synchronized double get(int index)
+	{
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+
+		return decodeBlock(index / blockSize)[index % blockSize];
+	}
+
+	@Override
+	public synchronized double getMinValue()
+	{
+		return minValue;
+	}
+
+	@Override
+	public synchronized double getMaxValue()
+	{
+		return maxValue;
+	}
+
+	@Override
+	public synchronized void getRangeMinMax(int fromIndex, int toIndex, double[] minMax)
+	{
+		double min = Double.MAX_VALUE;
+		double max = -Double.MAX_VALUE;
+
+		for (int b = fromIndex / blockSize ; fromIndex < toIndex ; ++b)
+		{
+			int blockStart = b * blockSize;
+			int blockEnd = blockStart + blocks.get(b).count;
+			int end = Math.min(toIndex, blockEnd);
+
+			if (fromIndex == blockStart && end == blockEnd)
+			{
+				// The whole block is in range, so use its summary
+				min = Math.min(min, blocks.get(b).minValue);
+				max = Math.max(max, blocks.get(b).maxValue);
+			}
+			else
+			{
+				double[] values = decodeBlock(b);
+
+				for (int i = fromIndex - blockStart ; i < end - blockStart ; ++i)
+				{
+					if (values[i] < min)
+						min = values[i];
+
+					if (values[i] > max)
+						max = values[i];
+				}
+			}
+
+			fromIndex = end;
+		}
+
+		minMax[0] = min;
+		minMax[1] = max;
+	}
+
+	@Override
+	public synchronized void append(double value)
+	{
+		Block block = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+
+		if (block == null || block.count == blockSize)
+		{
+			if (block != null)
+				block.trim();
+
+			block = new Block();
+			blocks.add(block);
+		}
+
+		block.encode(value);
+
+		if (decodedBlockIndex == blocks.size() - 1)
+			decodedBlockIndex = -1;
+
+		if (value < minValue)
+			minValue = value;
+
+		if (value > maxValue)
+			maxValue = value;
+
+		++size;
+	}
+
+	/**
+	 * Returns the number of bytes used by the encoded data points and block
+	 * summaries. Useful to compare against other storages of the same series.
+	 * 
+	 * @return - the approximate number of bytes used by the storage
+	 */
+	public synchronized long getCompressedByteCount()
+	{
+		long bytes = 0;
+
+		for (Block block : blocks)
+			bytes += 8L * block.words.length + 64;
+
+		return bytes;
+	}
+
+	/**
+	 * Returns the decoded values of a block, decoding the block if it is not the
+	 * most recently decoded block.
+	 * 
+	 * @param blockIndex
+	 *            - the index of the block
+	 * @return - the decoded values of the block
+	 */
+	protected double[] decodeBlock(int blockIndex)
+	{
+		if (decodedBlockIndex != blockIndex)
+		{
+			blocks.get(blockIndex).decode(decodedValues);
+			decodedBlockIndex = blockIndex;
+		}
+
+		return decodedValues;
+	}
+}
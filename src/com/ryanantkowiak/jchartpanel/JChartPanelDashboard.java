@@ -0,0 +1,300 @@
+package com.ryanantkowiak.jchartpanel;
+
+import java.awt.Color;
+import java.awt.GridLayout;
+import java.awt.Point;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseMotionListener;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JPanel;
+import javax.swing.Timer;
+
+/**
+ * A container that tiles many chart panels in a grid. The chart panels share a
+ * single store of series data, a single cache of decimated series and a single
+ * repaint clock, and can have their cursor guides linked together.
+ * 
+ * @author antko
+ *
+ */
+public class JChartPanelDashboard extends JPanel implements ActionListener, MouseMotionListener
+{
+	/**
+	 * Serializable class ID
+	 */
+	protected static final long serialVersionUID = 1L;
+
+	/**
+	 * Default interval, in milliseconds, between ticks of the repaint clock.
+	 */
+	public static final int DEFAULT_REPAINT_INTERVAL = 40;
+
+	/**
+	 * The store of series data shared by all the chart panels.
+	 */
+	protected final JChartPanelDataStore dataStore = new JChartPanelDataStore();
+
+	/**
+	 * The cache of decimated series shared by all the chart panels.
+	 */
+	protected final JChartPanelDecimationCache decimationCache = new JChartPanelDecimationCache();
+
+	/**
+	 * The chart panels in the dashboard.
+	 */
+	protected final List<JChartPanel> panels = new ArrayList<JChartPanel>();
+
+	/**
+	 * The repaint clock that drives all the chart panels.
+	 */
+	protected final Timer repaintTimer;
+
+	/**
+	 * Flag to indicate whether moving the cursor guides in one chart panel moves
+	 * the guides in all the other chart panels.
+	 */
+	protected boolean linkGuides = true;
+
+	/**
+	 * Construct a JChartPanelDashboard.
+	 * 
+	 * @param rows
+	 *            - the number of rows of chart panels, or zero for any number
+	 * @param columns
+	 *            - the number of columns of chart panels, or zero for any number
+	 */
+	public JChartPanelDashboard(int rows, int columns)
+	{
+		super(new GridLayout(rows, columns));
+
+		repaintTimer = new Timer(DEFAULT_REPAINT_INTERVAL, this);
+		repaintTimer.setCoalesce(true);
+	}
+
+	/**
+	 * Returns the store of series data shared by all the chart panels.
+	 * 
+	 * @return - the data store
+	 */
+	public JChartPanelDataStore getDataStore()
+	{
+		return dataStore;
+	}
+
+	/**
+	 * Returns the cache of decimated series shared by all the chart panels.
+	 * 
+	 * @return - the decimation cache
+	 */
+	public JChartPanelDecimationCache getDecimationCache()
+	{
+		return decimationCache;
+	}
+
+	/**
+	 * Create a new chart panel and add it to the dashboard.
+	 * 
+	 * @return - the new chart panel
+	 */
+	public JChartPanel addPanel()
+	{
+		JChartPanel panel = new JChartPanel();
+		addPanel(panel);
+		return panel;
+	}
+
+	/**
+	 * Add a chart panel to the dashboard. The chart panel starts using the shared
+	 * decimation cache and repaint clock of the dashboard.
+	 * 
+	 * @param panel
+	 *            - the chart panel to add
+	 */
+	public void addPanel(JChartPanel panel)
+	{
+		if (panel != null && !panels.contains(panel))
+		{
+			panel.setDecimationCache(decimationCache);
+			panel.deferRepaint = true;
+			panel.addMouseMotionListener(this);
+
+			panels.add(panel);
+			add(panel);
+			revalidate();
+		}
+	}
+
+	/**
+	 * Remove a chart panel from the dashboard.
+	 * 
+	 * @param panel
+	 *            - the chart panel to remove
+	 * @return - true if the chart panel was removed
+	 */
+	public boolean removePanel(JChartPanel panel)
+	{
+		if (panels.remove(panel))
+		{
+			panel.setDecimationCache(null);
+			panel.deferRepaint = false;
+			panel.removeMouseMotionListener(this);
+
+			remove(panel);
+			revalidate();
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns the chart panels in the dashboard.
+	 * 
+	 * @return - the chart panels
+	 */
+	public List<JChartPanel> getPanels()
+	{
+		return new ArrayList<JChartPanel>(panels);
+	}
+
+	/**
+	 * Add a series from the shared data store to one of the chart panels.
+	 * 
+	 * @param panel
+	 *            - the chart panel
+	 * @param name
+	 *            - the name of the series in the data store
+	 * @param seriesName
+	 *            - the name/label of the series in the chart panel
+	 * @param color
+	 *            - the color to use when drawing the series data or label name
+	 * @return - integer index identifier of the series in the chart panel, or -1
+	 *         if there is no series with the given name in the data store
+	 */
+	public int addSeries(JChartPanel panel, String name, String seriesName, Color color)
+	{
+		JChartPanelSeriesStorage storage = dataStore.get(name);
+
+		if (panel == null || storage == null)
+			return -1;
+
+		return panel.addSeries(storage, seriesName, color);
+	}
+
+	/**
+	 * Notify the dashboard that the data of a series in the shared data store has
+	 * changed. Every chart panel that shows the series is repainted on the next
+	 * tick of the repaint clock.
+	 * 
+	 * @param name
+	 *            - the name of the series in the data store
+	 */
+	public void seriesChanged(String name)
+	{
+		JChartPanelSeriesStorage storage = dataStore.get(name);
+
+		if (storage == null)
+			return;
+
+		for (JChartPanel panel : panels)
+			if (panel.usesStorage(storage))
+				panel.requestRepaint();
+	}
+
+	/**
+	 * Set the interval between ticks of the repaint clock.
+	 * 
+	 * @param interval
+	 *            - the interval, in milliseconds
+	 */
+	public void setRepaintInterval(int interval)
+	{
+		repaintTimer.setDelay(interval);
+	}
+
+	/**
+	 * Link/Unlink the cursor guides of the chart panels.
+	 * 
+	 * @param linkGuides
+	 *            - true if moving the guides in one chart panel should move the
+	 *            guides in all the other chart panels
+	 */
+	public void linkGuides(boolean linkGuides)
+	{
+		this.linkGuides = linkGuides;
+	}
+
+	/**
+	 * Starts the repaint clock when the dashboard is added to a displayable
+	 * container.
+	 */
+	@Override
+	public void addNotify()
+	{
+		super.addNotify();
+		repaintTimer.start();
+	}
+
+	/**
+	 * Stops the repaint clock when the dashboard is removed from a displayable
+	 * container.
+	 */
+	@Override
+	public void removeNotify()
+	{
+		repaintTimer.stop();
+		super.removeNotify();
+	}
+
+	/**
+	 * Tick of the repaint clock. Repaints every chart panel that requested a
+	 * repaint since the last tick.
+	 */
+	@Override
+	public void actionPerformed(ActionEvent e)
+	{
+		for (JChartPanel panel : panels)
+		{
+			if (panel.repaintRequested)
+			{
+				panel.repaintRequested = false;
+				panel.repaint();
+			}
+		}
+	}
+
+	/**
+	 * 
+	 */
+	@Override
+	public void mouseDragged(MouseEvent e)
+	{
+	}
+
+	/**
+	 * Move the cursor guides of all the other chart panels to the same relative
+	 * position as the guides of the chart panel under the cursor.
+	 */
+	@Override
+	public void mouseMoved(MouseEvent e)
+	{
+		if (!linkGuides || !(e.getSource() instanceof JChartPanel))
+			return;
+
+		JChartPanel source = (JChartPanel) e.getSource();
+
+		if (source.getWidth() < 1 || source.getHeight() < 1)
+			return;
+
+		double xPct = (double) e.getX() / source.getWidth();
+		double yPct = (double) e.getY() / source.getHeight();
+
+		for (JChartPanel panel : panels)
+			if (panel != source)
+				panel.setGuidePosition(new Point((int) (xPct * panel.getWidth()), (int) (yPct * panel.getHeight())));
+	}
+}
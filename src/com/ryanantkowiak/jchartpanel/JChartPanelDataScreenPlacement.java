@@ -7,7 +7,10 @@ import java.util.List;
 
 /**
  * Class used internally by JChartPanel to manage the data for a series and the
- * calculation of screen placement.
+ * calculation of screen placement. The placement may be recalculated off the
+ * event dispatch thread, so its public methods are synchronized. The chart
+ * panel only reads the immutable placements returned by place(), so that it
+ * never waits for a calculation in progress.
  * 
  * @author antko
  *
@@ -20,10 +23,27 @@ public class JChartPanelDataScreenPlacement
 	protected static final Dimension DEFAULT_DIMENSION = new Dimension(1000, 800);
 
 	/**
-	 * The raw data points.
+	 * Number of data points per pixel column above which the screen points are
+	 * decimated to the first, minimum, maximum and last value of each column.
+	 */
+	protected static final int DECIMATION_POINTS_PER_PIXEL = 4;
+
+	/**
+	 * The quantiles of the data points in each pixel column that make up the
+	 * envelope of a series: the lower edge, the median and the upper edge.
+	 */
+	protected static final double[] ENVELOPE_QUANTILES = { 0.05, 0.5, 0.95 };
+
+	/**
+	 * The raw data points, if the series was provided as a list.
 	 */
 	public List<Double> series;
 
+	/**
+	 * The storage of the raw data points.
+	 */
+	public JChartPanelSeriesStorage storage;
+
 	/**
 	 * The calculated screen positions of each point on the chart panel.
 	 */
@@ -65,6 +85,84 @@ public class JChartPanelDataScreenPlacement
 	 */
 	public double pixelsPerValue;
 
+	/**
+	 * Cache of decimated data series shared with other chart panels, or null if
+	 * decimations are not cached.
+	 */
+	public volatile JChartPanelDecimationCache decimationCache;
+
+	/**
+	 * The storage of the raw data points, if the data points are timestamped, or
+	 * null if the data points are evenly spaced.
+	 */
+	public JChartPanelTimestampedSeriesStorage timestampedStorage;
+
+	/**
+	 * The time at the left edge of the chart panel, for a timestamped series.
+	 */
+	public long timeFrom;
+
+	/**
+	 * The time at the right edge of the chart panel, for a timestamped series.
+	 */
+	public long timeTo;
+
+	/**
+	 * The calculated amount of pixels per unit of time, for a timestamped series.
+	 */
+	public double pixelsPerTime;
+
+	/**
+	 * Index used to answer statistics queries over ranges of the series, or null
+	 * until the first query. Guarded by the statistics lock rather than the lock of
+	 * the placement.
+	 */
+	private JChartPanelRangeStatistics rangeStatistics;
+
+	/**
+	 * Lock guarding the statistics index, so that statistics queries do not wait
+	 * for a placement calculation in progress.
+	 */
+	private final Object statisticsLock = new Object();
+
+	/**
+	 * Cache of quantile sketches of the series, or null until the envelope of the
+	 * series is first calculated.
+	 */
+	public volatile JChartPanelQuantileIndex quantileIndex;
+
+	/**
+	 * The update count of the storage up to which this placement invalidated the
+	 * rewritten ranges. Rewrites made through another chart panel showing the same
+	 * storage are not invalidated range by range, and everything calculated from
+	 * the data points is dropped instead.
+	 */
+	private volatile int invalidatedUpdateCount;
+
+	/**
+	 * The update count of the storage read when the screen points were last
+	 * calculated.
+	 */
+	private int placedUpdateCount;
+
+	/**
+	 * The update count of the storage when the statistics index was built.
+	 * Guarded by the statistics lock.
+	 */
+	private int statisticsUpdateCount;
+
+	/**
+	 * The y-coordinates of the envelope of the series in each pixel column, or
+	 * null if it has not been calculated for the current screen placement.
+	 */
+	private int[][] envelope;
+
+	/**
+	 * Flag to indicate that the screen points must be recalculated, even if the
+	 * size of the chart panel has not changed.
+	 */
+	private boolean stale;
+
 	/**
 	 * Constructor for the chart panel data
 	 * 
@@ -73,26 +171,61 @@ public class JChartPanelDataScreenPlacement
 	 */
 	public JChartPanelDataScreenPlacement(List<Double> series)
 	{
+		this(new JChartPanelListSeriesStorage(series));
+
 		this.series = series;
+	}
 
-		seriesSize = series.size();
-		minValue = Double.MAX_VALUE;
-		maxValue = Double.MIN_VALUE;
+	/**
+	 * Constructor for the chart panel data
+	 * 
+	 * @param storage
+	 *            - the storage of the series data points
+	 */
+	public JChartPanelDataScreenPlacement(JChartPanelSeriesStorage storage)
+	{
+		this(storage, DEFAULT_DIMENSION);
+	}
 
-		for (int i = 0 ; i < seriesSize ; ++i)
-		{
-			double v = series.get(i);
+	/**
+	 * Constructor for the chart panel data, placed on a chart panel of a given
+	 * size.
+	 * 
+	 * @param storage
+	 *            - the storage of the series data points
+	 * @param dim
+	 *            - the dimensions of the size of the chart panel
+	 */
+	public JChartPanelDataScreenPlacement(JChartPanelSeriesStorage storage, Dimension dim)
+	{
+		this.storage = storage;
 
-			if (v < minValue)
-				minValue = v;
+		if (storage instanceof JChartPanelTimestampedSeriesStorage)
+		{
+			timestampedStorage = (JChartPanelTimestampedSeriesStorage) storage;
 
-			if (v > maxValue)
-				maxValue = v;
+			if (storage.size() > 0)
+			{
+				timeFrom = timestampedStorage.getTimestamp(0);
+				timeTo = timestampedStorage.getTimestamp(storage.size() - 1);
+			}
 		}
 
-		valueSpan = maxValue - minValue;
+		readStorage();
+
+		setDimension(dim);
+	}
 
-		setDimension(DEFAULT_DIMENSION);
+	/**
+	 * Sets the cache of decimated data series to use when the series has many more
+	 * data points than pixel columns.
+	 * 
+	 * @param decimationCache
+	 *            - the cache to use, or null to not cache decimations
+	 */
+	public synchronized void setDecimationCache(JChartPanelDecimationCache decimationCache)
+	{
+		this.decimationCache = decimationCache;
 	}
 
 	/**
@@ -101,44 +234,341 @@ public class JChartPanelDataScreenPlacement
 	 * @param dim
 	 *            - the dimensions of the size of the chart panel
 	 */
-	public void setDimension(Dimension dim)
+	public synchronized void setDimension(Dimension dim)
 	{
+		int updateCount = getUpdateCount();
+
 		if (dim != null && (dim.width != pixelWidth || dim.height != pixelHeight))
 		{
 			pixelWidth = dim.width;
 			pixelHeight = dim.height;
 
+			if (updateCount != placedUpdateCount)
+				readStorage();
+
+			recalculate();
+		}
+		else if (storage.size() != seriesSize || stale || updateCount != placedUpdateCount)
+		{
+			// Data points were appended to or rewritten in the storage, or the time axis
+			// changed, since the last calculation
+			readStorage();
 			recalculate();
 		}
 	}
 
+	/**
+	 * Places the series on a chart panel of the given size and range of time, and
+	 * returns the resulting placement as an immutable snapshot that can be read
+	 * from any thread.
+	 * 
+	 * @param dim
+	 *            - the dimensions of the size of the chart panel
+	 * @param timeFrom
+	 *            - the time at the left edge of the chart panel
+	 * @param timeTo
+	 *            - the time at the right edge of the chart panel
+	 * @param withEnvelope
+	 *            - true if the percentile envelope of the series is drawn, and
+	 *            should be calculated along with the screen points
+	 * @return - the screen placement of the series
+	 */
+	public synchronized JChartPanelPlacementSnapshot.Series place(Dimension dim, long timeFrom, long timeTo,
+			boolean withEnvelope)
+	{
+		if (timestampedStorage != null)
+			setTimeRange(timeFrom, timeTo);
+
+		setDimension(dim);
+
+		return new JChartPanelPlacementSnapshot.Series(this, withEnvelope ? getEnvelope() : null);
+	}
+
+	/**
+	 * Sets the range of time shown across the chart panel, for a timestamped
+	 * series. Chart panels use the same range of time for all their timestamped
+	 * series, so that they share a time axis.
+	 * 
+	 * @param timeFrom
+	 *            - the time at the left edge of the chart panel
+	 * @param timeTo
+	 *            - the time at the right edge of the chart panel
+	 */
+	public synchronized void setTimeRange(long timeFrom, long timeTo)
+	{
+		if (timeFrom != this.timeFrom || timeTo != this.timeTo)
+		{
+			this.timeFrom = timeFrom;
+			this.timeTo = timeTo;
+			stale = true;
+		}
+	}
+
+	/**
+	 * Returns the number of times ranges of data points of the series were
+	 * rewritten, through any chart panel showing the series.
+	 * 
+	 * @return - the update count of the storage, or zero if its data points
+	 *         cannot be rewritten
+	 */
+	public int getUpdateCount()
+	{
+		if (storage instanceof JChartPanelUpdatableSeriesStorage)
+			return ((JChartPanelUpdatableSeriesStorage) storage).getUpdateCount();
+
+		return 0;
+	}
+
+	/**
+	 * Invalidates what was calculated from a range of data points that was
+	 * rewritten in the storage: the cached quantile sketches and decimations. The
+	 * statistics index and the screen points are recalculated once the update
+	 * count of the storage changes. Does not take the lock of the placement, so it
+	 * never waits for a placement calculation in progress. Call from the thread
+	 * that rewrites the storage, right after the rewrite.
+	 * 
+	 * @param fromIndex
+	 *            - the first index of the rewritten range (inclusive)
+	 * @param toIndex
+	 *            - the last index of the rewritten range (exclusive)
+	 */
+	public void invalidateRange(int fromIndex, int toIndex)
+	{
+		JChartPanelQuantileIndex index = quantileIndex;
+
+		if (index != null)
+			index.invalidate(fromIndex, toIndex);
+
+		JChartPanelDecimationCache cache = decimationCache;
+
+		if (cache != null)
+			cache.invalidate(storage);
+
+		// Only this rewrite is newer than the invalidated ones; otherwise a rewrite
+		// made through another chart panel is still to be invalidated
+		int updateCount = getUpdateCount();
+
+		if (invalidatedUpdateCount == updateCount - 1)
+			invalidatedUpdateCount = updateCount;
+	}
+
+	/**
+	 * Reads the size and the range of values of the series data from the storage.
+	 */
+	private void readStorage()
+	{
+		int updateCount = getUpdateCount();
+
+		// The storage was rewritten through another chart panel, or the rewrite is
+		// not invalidated yet, so the cached sketches and decimations may be stale
+		if (updateCount != invalidatedUpdateCount)
+		{
+			quantileIndex = null;
+
+			JChartPanelDecimationCache cache = decimationCache;
+
+			if (cache != null)
+				cache.invalidate(storage);
+
+			invalidatedUpdateCount = updateCount;
+		}
+
+		placedUpdateCount = updateCount;
+		seriesSize = storage.size();
+		minValue = storage.getMinValue();
+		maxValue = storage.getMaxValue();
+		valueSpan = maxValue - minValue;
+	}
+
 	/**
 	 * Returns the list of screen points of the data series on the chart panel, in
 	 * pixels.
 	 * 
 	 * @return - the screen points for the chart panel
 	 */
-	public List<Point> getPoints()
+	public synchronized List<Point> getPoints()
 	{
 		return chartPoints;
 	}
 
+	/**
+	 * Returns the index used to answer statistics queries over ranges of the
+	 * series. The index is built on the first call, then extended with the data
+	 * points appended since the previous query, and built again once data points
+	 * are rewritten. It has its own lock, so a query does not wait for a
+	 * placement calculation in progress.
+	 * 
+	 * @return - the statistics index of the series
+	 */
+	public JChartPanelRangeStatistics getRangeStatistics()
+	{
+		int updateCount = getUpdateCount();
+
+		synchronized (statisticsLock)
+		{
+			if (rangeStatistics == null || updateCount != statisticsUpdateCount)
+			{
+				rangeStatistics = new JChartPanelRangeStatistics(storage);
+				statisticsUpdateCount = updateCount;
+			}
+
+			return rangeStatistics;
+		}
+	}
+
+	/**
+	 * Returns the envelope of the series for the current screen placement: the
+	 * y-coordinates of the 5th percentile, median and 95th percentile of the data
+	 * points in each pixel column. The percentiles are estimated from quantile
+	 * sketches cached per block of data points, and the envelope is cached until
+	 * the screen placement changes.
+	 * 
+	 * @return - the lower edge, median and upper edge of the envelope, each with
+	 *         one y-coordinate per pixel column (Integer.MIN_VALUE for a column
+	 *         without data points), or null if the series does not have many more
+	 *         data points than pixel columns, is timestamped, or has summarized
+	 *         storage, whose data points would all have to be read to sketch them
+	 */
+	public synchronized int[][] getEnvelope()
+	{
+		if (timestampedStorage != null || storage instanceof JChartPanelSummarizedSeriesStorage
+				|| seriesSize <= DECIMATION_POINTS_PER_PIXEL * (pixelWidth + 1))
+			return null;
+
+		if (envelope == null)
+		{
+			if (quantileIndex == null)
+				quantileIndex = new JChartPanelQuantileIndex(storage);
+
+			int[][] e = new int[ENVELOPE_QUANTILES.length][pixelWidth + 1];
+			int from = 0;
+
+			for (int column = 0 ; column <= pixelWidth ; ++column)
+			{
+				// Data points with index below to have an x-coordinate of at most column
+				int to = Math.min(seriesSize, (int) Math.ceil((column + 1) / pixelsPerValue));
+
+				if (to <= from)
+				{
+					for (int q = 0 ; q < e.length ; ++q)
+						e[q][column] = Integer.MIN_VALUE;
+
+					continue;
+				}
+
+				double[] quantiles = quantileIndex.getSketch(from, to).getQuantiles(ENVELOPE_QUANTILES);
+
+				for (int q = 0 ; q < e.length ; ++q)
+					e[q][column] = valueToPixelY(quantiles[q]);
+
+				from = to;
+			}
+
+			envelope = e;
+		}
+
+		return envelope;
+	}
+
 	/**
 	 * Recalculates the screen points of the data series in the chart panel.
 	 */
 	private void recalculate()
 	{
+		stale = false;
+		envelope = null;
+
+		if (timestampedStorage != null)
+		{
+			recalculateTimestamped();
+			return;
+		}
+
 		pixelsPerValue = pixelWidth / (seriesSize - 1.0);
 
-		chartPoints = new ArrayList<Point>();
+		if (seriesSize > DECIMATION_POINTS_PER_PIXEL * (pixelWidth + 1))
+		{
+			decimate();
+			return;
+		}
+
+		chartPoints = new ArrayList<Point>(seriesSize);
 
 		for (int i = 0 ; i < seriesSize ; ++i)
 		{
 			double xCoord = pixelsPerValue * ((double) i);
-			double yPctInRange = (series.get(i) - minValue) / (valueSpan);
-			double yCoord = pixelHeight - (yPctInRange * pixelHeight);
 
-			chartPoints.add(new Point((int) xCoord, (int) yCoord));
+			chartPoints.add(new Point((int) xCoord, valueToPixelY(storage.get(i))));
+		}
+	}
+
+	/**
+	 * Recalculates the screen points of a data series that has many more data
+	 * points than pixel columns, from the decimated values of the series.
+	 */
+	private void decimate()
+	{
+		JChartPanelDecimation decimation;
+
+		if (decimationCache != null)
+			decimation = decimationCache.get(storage, 0, seriesSize, pixelWidth);
+		else
+			decimation = new JChartPanelDecimation(storage, 0, seriesSize, pixelWidth);
+
+		chartPoints = new ArrayList<Point>(decimation.count);
+
+		for (int i = 0 ; i < decimation.count ; ++i)
+			chartPoints.add(new Point(decimation.columns[i], valueToPixelY(decimation.values[i])));
+	}
+
+	/**
+	 * Recalculates the screen points of a timestamped data series, placed on the
+	 * time axis. Only the data points in the range of time of the chart panel,
+	 * and the nearest data point on either side, are placed. They are found with
+	 * a binary search.
+	 */
+	private void recalculateTimestamped()
+	{
+		pixelsPerTime = timeTo > timeFrom ? pixelWidth / (double) (timeTo - timeFrom) : 0.0;
+
+		int fromIndex = Math.max(0, timestampedStorage.indexAtOrAfter(timeFrom) - 1);
+		int toIndex = Math.min(seriesSize, timestampedStorage.indexAtOrAfter(timeTo + 1, fromIndex, seriesSize) + 1);
+
+		if (toIndex - fromIndex > DECIMATION_POINTS_PER_PIXEL * (pixelWidth + 1))
+		{
+			JChartPanelDecimation decimation = new JChartPanelDecimation(timestampedStorage, fromIndex, toIndex,
+					timeFrom, pixelsPerTime, pixelWidth);
+
+			chartPoints = new ArrayList<Point>(decimation.count);
+
+			for (int i = 0 ; i < decimation.count ; ++i)
+				chartPoints.add(new Point(decimation.columns[i], valueToPixelY(decimation.values[i])));
+
+			return;
 		}
+
+		chartPoints = new ArrayList<Point>(Math.max(0, toIndex - fromIndex));
+
+		for (int i = fromIndex ; i < toIndex ; ++i)
+		{
+			int xCoord = JChartPanelDecimation.timeToPixel(timestampedStorage.getTimestamp(i), timeFrom, pixelsPerTime);
+
+			chartPoints.add(new Point(xCoord, valueToPixelY(storage.get(i))));
+		}
+	}
+
+	/**
+	 * Calculates the y-coordinate on the chart panel of a value of the data series.
+	 * 
+	 * @param value
+	 *            - the value of a data point
+	 * @return - the y-coordinate, in pixels
+	 */
+	private int valueToPixelY(double value)
+	{
+		double yPctInRange = (value - minValue) / (valueSpan);
+		double yCoord = pixelHeight - (yPctInRange * pixelHeight);
+
+		return (int) yCoord;
 	}
 }
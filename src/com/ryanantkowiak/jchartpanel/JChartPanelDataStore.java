@@ -0,0 +1,71 @@
+package com.ryanantkowiak.jchartpanel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Store of named series storages, shared by the chart panels of a dashboard.
+ * Each series is held once in memory, no matter how many chart panels show it.
+ * 
+ * @author antko
+ *
+ */
+public class JChartPanelDataStore
+{
+	/**
+	 * The series storages, by name.
+	 */
+	protected final Map<String, JChartPanelSeriesStorage> storages = new HashMap<String, JChartPanelSeriesStorage>();
+
+	/**
+	 * Adds or replaces a named series storage.
+	 * 
+	 * @param name
+	 *            - the name of the series
+	 * @param storage
+	 *            - the storage of the series data points
+	 */
+	public synchronized void put(String name, JChartPanelSeriesStorage storage)
+	{
+		if (name != null && storage != null)
+			storages.put(name, storage);
+	}
+
+	/**
+	 * Returns a named series storage.
+	 * 
+	 * @param name
+	 *            - the name of the series
+	 * @return - the storage of the series data points, or null if there is no
+	 *         series with the given name
+	 */
+	public synchronized JChartPanelSeriesStorage get(String name)
+	{
+		return storages.get(name);
+	}
+
+	/**
+	 * Removes a named series storage.
+	 * 
+	 * @param name
+	 *            - the name of the series
+	 * @return - the removed storage, or null if there is no series with the given
+	 *         name
+	 */
+	public synchronized JChartPanelSeriesStorage remove(String name)
+	{
+		return storages.remove(name);
+	}
+
+	/**
+	 * Returns the names of all the series in the store.
+	 * 
+	 * @return - the names of the series
+	 */
+	public synchronized List<String> getNames()
+	{
+		return new ArrayList<String>(storages.keySet());
+	}
+}
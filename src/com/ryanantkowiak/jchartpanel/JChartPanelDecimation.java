@@ -0,0 +1,211 @@
+package com.ryanantkowiak.jchartpanel;
+
+import java.util.Arrays;
+
+/**
+ * The decimated values of a range of a data series, for a given width in
+ * pixels. Each pixel column gets at most four values: the first, minimum,
+ * maximum and last value of the data points that fall in the column. Drawing
+ * lines between these values looks the same as drawing lines between all of
+ * the data points.
+ * 
+ * The decimated values do not depend on the height of the chart panel, so the
+ * same decimation can be shared by chart panels of the same width.
+ * 
+ * @author antko
+ *
+ */
+public class JChartPanelDecimation
+{
+	/**
+	 * The pixel column of each decimated value.
+	 */
+	public final int[] columns;
+
+	/**
+	 * The decimated values.
+	 */
+	public final double[] values;
+
+	/**
+	 * The number of decimated values.
+	 */
+	public final int count;
+
+	/**
+	 * Constructor for a decimation of a range of a data series.
+	 * 
+	 * @param storage
+	 *            - the storage of the series data points
+	 * @param fromIndex
+	 *            - the first index of the range (inclusive)
+	 * @param toIndex
+	 *            - the last index of the range (exclusive)
+	 * @param pixelWidth
+	 *            - the width of the chart panel in pixels
+	 */
+	public JChartPanelDecimation(JChartPanelSeriesStorage storage, int fromIndex, int toIndex, int pixelWidth)
+	{
+		this(storage, fromIndex, toIndex, pixelWidth, 0, pixelWidth);
+	}
+
+	/**
+	 * Constructor for the decimated values of a range of pixel columns only, out
+	 * of the decimation of a range of a data series. The values are the same as
+	 * those of the columns in the decimation of the whole range.
+	 * 
+	 * @param storage
+	 *            - the storage of the series data points
+	 * @param fromIndex
+	 *            - the first index of the range (inclusive)
+	 * @param toIndex
+	 *            - the last index of the range (exclusive)
+	 * @param pixelWidth
+	 *            - the width of the chart panel in pixels
+	 * @param fromColumn
+	 *            - the first pixel column to decimate (inclusive)
+	 * @param toColumn
+	 *            - the last pixel column to decimate (inclusive)
+	 */
+	public JChartPanelDecimation(JChartPanelSeriesStorage storage, int fromIndex, int toIndex, int pixelWidth,
+			int fromColumn, int toColumn)
+	{
+		int[] c = new int[4 * (toColumn - fromColumn + 1)];
+		double[] v = new double[4 * (toColumn - fromColumn + 1)];
+		int n = 0;
+
+		double pixelsPerValue = pixelWidth / (toIndex - fromIndex - 1.0);
+		double[] minMax = new double[2];
+
+		// The data points left of the first column are those with an x-coordinate of
+		// at most the column before it
+		int from = fromColumn == 0 ? fromIndex
+				: Math.min(toIndex, fromIndex + (int) Math.ceil(fromColumn / pixelsPerValue));
+
+		for (int column = fromColumn ; column <= toColumn && from < toIndex ; ++column)
+		{
+			// Data points with index below to have an x-coordinate of at most column
+			int to = Math.min(toIndex, fromIndex + (int) Math.ceil((column + 1) / pixelsPerValue));
+
+			if (to <= from)
+				continue;
+
+			c[n] = column;
+			v[n++] = storage.get(from);
+
+			if (to - from > 1)
+			{
+				storage.getRangeMinMax(from, to, minMax);
+
+				c[n] = column;
+				v[n++] = minMax[0];
+				c[n] = column;
+				v[n++] = minMax[1];
+				c[n] = column;
+				v[n++] = storage.get(to - 1);
+			}
+
+			from = to;
+		}
+
+		columns = c;
+		values = v;
+		count = n;
+	}
+
+	/**
+	 * Constructor for a decimation of a range of a timestamped data series, placed
+	 * on a time axis. The data points are grouped into pixel columns by their
+	 * timestamps, and the column boundaries are found with a binary search, so
+	 * the cost depends on the number of columns rather than on the number of data
+	 * points.
+	 * 
+	 * @param storage
+	 *            - the storage of the series data points
+	 * @param fromIndex
+	 *            - the first index of the range (inclusive)
+	 * @param toIndex
+	 *            - the last index of the range (exclusive)
+	 * @param fromTime
+	 *            - the time at the left edge of the chart panel
+	 * @param pixelsPerTime
+	 *            - the amount of pixels per unit of time
+	 * @param pixelWidth
+	 *            - the width of the chart panel in pixels
+	 */
+	public JChartPanelDecimation(JChartPanelTimestampedSeriesStorage storage, int fromIndex, int toIndex,
+			long fromTime, double pixelsPerTime, int pixelWidth)
+	{
+		// The range may include one data point left and one right of the chart panel
+		int[] c = new int[4 * (pixelWidth + 3)];
+		double[] v = new double[4 * (pixelWidth + 3)];
+		int n = 0;
+
+		double[] minMax = new double[2];
+		int from = fromIndex;
+
+		while (from < toIndex)
+		{
+			int column = timeToPixel(storage.getTimestamp(from), fromTime, pixelsPerTime);
+
+			// Find the first data point in a column right of this one
+			int lo = from + 1;
+			int hi = toIndex;
+
+			while (lo < hi)
+			{
+				int mid = (lo + hi) >>> 1;
+
+				if (timeToPixel(storage.getTimestamp(mid), fromTime, pixelsPerTime) <= column)
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+
+			int to = lo;
+
+			if (n + 4 > c.length)
+			{
+				c = Arrays.copyOf(c, c.length * 2);
+				v = Arrays.copyOf(v, v.length * 2);
+			}
+
+			c[n] = column;
+			v[n++] = storage.get(from);
+
+			if (to - from > 1)
+			{
+				storage.getRangeMinMax(from, to, minMax);
+
+				c[n] = column;
+				v[n++] = minMax[0];
+				c[n] = column;
+				v[n++] = minMax[1];
+				c[n] = column;
+				v[n++] = storage.get(to - 1);
+			}
+
+			from = to;
+		}
+
+		columns = c;
+		values = v;
+		count = n;
+	}
+
+	/**
+	 * Calculates the x-coordinate on the chart panel of a time on a time axis.
+	 * 
+	 * @param time
+	 *            - the time
+	 * @param fromTime
+	 *            - the time at the left edge of the chart panel
+	 * @param pixelsPerTime
+	 *            - the amount of pixels per unit of time
+	 * @return - the x-coordinate, in pixels
+	 */
+	public static int timeToPixel(long time, long fromTime, double pixelsPerTime)
+	{
+		return (int) Math.floor((time - fromTime) * pixelsPerTime);
+	}
+}
@@ -0,0 +1,206 @@
+package com.ryanantkowiak.jchartpanel;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of decimated data series, keyed by the series storage, the range of
+ * the series and the width in pixels. Chart panels that share a cache reuse the
+ * decimation of a series that is shown by more than one panel of the same
+ * width. The least recently used decimations are evicted once the cache is
+ * full.
+ * 
+ * @author antko
+ *
+ */
+public class JChartPanelDecimationCache
+{
+	/**
+	 * Default maximum number of decimations held by the cache.
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 256;
+
+	/**
+	 * Key identifying a decimation in the cache.
+	 * 
+	 * @author antko
+	 *
+	 */
+	protected static class Key
+	{
+		/**
+		 * The storage of the series data points, compared by identity.
+		 */
+		protected final JChartPanelSeriesStorage storage;
+
+		/**
+		 * The first index of the range (inclusive).
+		 */
+		protected final int fromIndex;
+
+		/**
+		 * The last index of the range (exclusive).
+		 */
+		protected final int toIndex;
+
+		/**
+		 * The width of the chart panel in pixels.
+		 */
+		protected final int pixelWidth;
+
+		/**
+		 * Construct a Key object.
+		 * 
+		 * @param storage
+		 *            - the storage of the series data points
+		 * @param fromIndex
+		 *            - the first index of the range (inclusive)
+		 * @param toIndex
+		 *            - the last index of the range (exclusive)
+		 * @param pixelWidth
+		 *            - the width of the chart panel in pixels
+		 */
+		protected Key(JChartPanelSeriesStorage storage, int fromIndex, int toIndex, int pixelWidth)
+		{
+			this.storage = storage;
+			this.fromIndex = fromIndex;
+			this.toIndex = toIndex;
+			this.pixelWidth = pixelWidth;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof Key))
+				return false;
+
+			Key k = (Key) o;
+
+			return storage == k.storage && fromIndex == k.fromIndex && toIndex == k.toIndex
+					&& pixelWidth == k.pixelWidth;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			int h = System.identityHashCode(storage);
+			h = 31 * h + fromIndex;
+			h = 31 * h + toIndex;
+			return 31 * h + pixelWidth;
+		}
+	}
+
+	/**
+	 * The cached decimations, in least recently used order.
+	 */
+	protected final Map<Key, JChartPanelDecimation> entries;
+
+	/**
+	 * The number of times decimations were removed from the cache. A decimation
+	 * calculated while decimations were removed may have read data points from
+	 * before the change, and is not cached.
+	 */
+	protected long generation;
+
+	/**
+	 * Construct a decimation cache with the default maximum number of entries.
+	 */
+	public JChartPanelDecimationCache()
+	{
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * Construct a decimation cache.
+	 * 
+	 * @param maxEntries
+	 *            - the maximum number of decimations held by the cache
+	 */
+	public JChartPanelDecimationCache(final int maxEntries)
+	{
+		entries = new LinkedHashMap<Key, JChartPanelDecimation>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, JChartPanelDecimation> eldest)
+			{
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Returns the decimation of a range of a data series, calculating it if it is
+	 * not in the cache.
+	 * 
+	 * @param storage
+	 *            - the storage of the series data points
+	 * @param fromIndex
+	 *            - the first index of the range (inclusive)
+	 * @param toIndex
+	 *            - the last index of the range (exclusive)
+	 * @param pixelWidth
+	 *            - the width of the chart panel in pixels
+	 * @return - the decimation
+	 */
+	public JChartPanelDecimation get(JChartPanelSeriesStorage storage, int fromIndex, int toIndex, int pixelWidth)
+	{
+		Key key = new Key(storage, fromIndex, toIndex, pixelWidth);
+		JChartPanelDecimation decimation;
+		long calculatedGeneration;
+
+		synchronized (entries)
+		{
+			decimation = entries.get(key);
+			calculatedGeneration = generation;
+		}
+
+		if (decimation == null)
+		{
+			decimation = new JChartPanelDecimation(storage, fromIndex, toIndex, pixelWidth);
+
+			synchronized (entries)
+			{
+				if (generation == calculatedGeneration)
+					entries.put(key, decimation);
+			}
+		}
+
+		return decimation;
+	}
+
+	/**
+	 * Removes all the decimations of a data series from the cache. A decimation
+	 * being calculated meanwhile is not added to the cache.
+	 * 
+	 * @param storage
+	 *            - the storage of the series data points
+	 */
+	public void invalidate(JChartPanelSeriesStorage storage)
+	{
+		synchronized (entries)
+		{
+			++generation;
+
+			Iterator<Key> it = entries.keySet().iterator();
+
+			while (it.hasNext())
+				if (it.next().storage == storage)
+					it.remove();
+		}
+	}
+
+	/**
+	 * Removes all the decimations from the cache.
+	 */
+	public void clear()
+	{
+		synchronized (entries)
+		{
+			++generation;
+			entries.clear();
+		}
+	}
+}
@@ -0,0 +1,282 @@
+package com.ryanantkowiak.jchartpanel;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Class used internally by JChartPanel to draw the data series as a density
+ * heatmap. Every line segment of every visible series adds one to the count of
+ * each pixel it crosses, and the counts are mapped to a color ramp on a
+ * logarithmic scale. The rows of the chart panel are split into bands that
+ * are counted in parallel into a single grid, each band by its own thread, so
+ * the memory used does not grow with the number of processor cores.
+ * 
+ * @author antko
+ *
+ */
+public class JChartPanelDensityRenderer
+{
+	/**
+	 * The colors of the ramp, from the lowest to the highest density.
+	 */
+	protected static final Color[] RAMP_COLORS = { new Color(0, 0, 96), Color.BLUE, Color.CYAN, Color.YELLOW,
+			Color.RED, Color.WHITE };
+
+	/**
+	 * Number of entries in the color ramp lookup table.
+	 */
+	protected static final int RAMP_SIZE = 256;
+
+	/**
+	 * Lookup table of RGB values of the color ramp.
+	 */
+	protected static final int[] RAMP = createRamp();
+
+	/**
+	 * Number of bands of rows per processor core. Using more bands than cores
+	 * balances the work when the series cross some rows more than others.
+	 */
+	protected static final int BANDS_PER_THREAD = 4;
+
+	/**
+	 * The image holding the drawn heatmap.
+	 */
+	protected BufferedImage image;
+
+	/**
+	 * The count grid, reused while the size of the chart panel does not change.
+	 */
+	protected int[] grid;
+
+	/**
+	 * Draws the density heatmap of the given data series into an image the size
+	 * of the chart panel.
+	 * 
+	 * @param pointLists
+	 *            - the screen points of each data series to draw
+	 * @param background
+	 *            - the background color of the chart panel, used for pixels that
+	 *            no series crosses
+	 * @param width
+	 *            - the width of the chart panel in pixels
+	 * @param height
+	 *            - the height of the chart panel in pixels
+	 * @return - the image holding the drawn heatmap
+	 */
+	public BufferedImage render(final List<List<Point>> pointLists, Color background, final int width,
+			final int height)
+	{
+		if (image == null || image.getWidth() != width || image.getHeight() != height)
+		{
+			image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			grid = new int[width * height];
+		}
+
+		// Count each band of rows in parallel, all into the one grid. A line that
+		// crosses several bands is stepped through by each of them, so a single core
+		// counts the whole grid as one band.
+		int threads = JChartPanelTiledRenderer.THREAD_COUNT;
+		final int bands = threads == 1 ? 1 : Math.max(1, Math.min(threads * BANDS_PER_THREAD, height));
+		final int[] bandMax = new int[bands];
+		final int[] counts = grid;
+		List<Future<?>> futures = new ArrayList<Future<?>>(bands);
+
+		for (int b = 0 ; b < bands ; ++b)
+		{
+			final int band = b;
+
+			futures.add(JChartPanelTiledRenderer.EXECUTOR.submit(new Callable<Void>()
+			{
+				@Override
+				public Void call()
+				{
+					int fromY = height * band / bands;
+					int toY = height * (band + 1) / bands;
+					int max = 0;
+
+					Arrays.fill(counts, fromY * width, toY * width, 0);
+
+					for (List<Point> points : pointLists)
+						countSeries(counts, points, width, fromY, toY);
+
+					for (int i = fromY * width ; i < toY * width ; ++i)
+						max = Math.max(max, counts[i]);
+
+					bandMax[band] = max;
+					return null;
+				}
+			}));
+		}
+
+		waitFor(futures);
+
+		int max = 0;
+
+		for (int m : bandMax)
+			max = Math.max(max, m);
+
+		// Map the counts to the color ramp
+		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		int backgroundRgb = background.getRGB() & 0xFFFFFF;
+		double scale = (RAMP_SIZE - 1) / Math.log1p(Math.max(1, max));
+
+		for (int i = 0 ; i < counts.length ; ++i)
+			pixels[i] = counts[i] == 0 ? backgroundRgb : RAMP[(int) (Math.log1p(counts[i]) * scale)];
+
+		return image;
+	}
+
+	/**
+	 * Adds one to the count of each pixel crossed by the line graph of a data
+	 * series, within a band of rows. A pixel shared by two consecutive segments
+	 * is only counted once. Segments that lie entirely above or below the band
+	 * are skipped.
+	 * 
+	 * @param grid
+	 *            - the count grid, in rows of width pixels
+	 * @param points
+	 *            - the screen points of the data series
+	 * @param width
+	 *            - the width of the chart panel in pixels
+	 * @param fromY
+	 *            - the first row of the band
+	 * @param toY
+	 *            - the row after the last row of the band
+	 */
+	protected static void countSeries(int[] grid, List<Point> points, int width, int fromY, int toY)
+	{
+		if (points.isEmpty())
+			return;
+
+		Point p = points.get(0);
+		count(grid, p.x, p.y, width, fromY, toY);
+
+		for (int i = 1 ; i < points.size() ; ++i)
+		{
+			Point q = points.get(i);
+
+			if (Math.max(p.y, q.y) < fromY || Math.min(p.y, q.y) >= toY)
+			{
+				p = q;
+				continue;
+			}
+
+			// Bresenham line from p to q, excluding p which was already counted
+			int x = p.x;
+			int y = p.y;
+			int dx = Math.abs(q.x - x);
+			int dy = -Math.abs(q.y - y);
+			int sx = x < q.x ? 1 : -1;
+			int sy = y < q.y ? 1 : -1;
+			int err = dx + dy;
+
+			while (x != q.x || y != q.y)
+			{
+				int e2 = 2 * err;
+
+				if (e2 >= dy)
+				{
+					err += dy;
+					x += sx;
+				}
+
+				if (e2 <= dx)
+				{
+					err += dx;
+					y += sy;
+				}
+
+				// Stop once the line has left the band for good
+				if (sy > 0 ? y >= toY : y < fromY)
+					break;
+
+				count(grid, x, y, width, fromY, toY);
+			}
+
+			p = q;
+		}
+	}
+
+	/**
+	 * Adds one to the count of a pixel, if it is inside the chart panel and the
+	 * band of rows.
+	 * 
+	 * @param grid
+	 *            - the count grid, in rows of width pixels
+	 * @param x
+	 *            - the x-coordinate of the pixel
+	 * @param y
+	 *            - the y-coordinate of the pixel
+	 * @param width
+	 *            - the width of the chart panel in pixels
+	 * @param fromY
+	 *            - the first row of the band
+	 * @param toY
+	 *            - the row after the last row of the band
+	 */
+	protected static void count(int[] grid, int x, int y, int width, int fromY, int toY)
+	{
+		if (x >= 0 && x < width && y >= fromY && y < toY)
+			++grid[y * width + x];
+	}
+
+	/**
+	 * Waits for all the given tasks to complete.
+	 * 
+	 * @param futures
+	 *            - the tasks to wait for
+	 */
+	protected static void waitFor(List<Future<?>> futures)
+	{
+		try
+		{
+			for (Future<?> f : futures)
+				f.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch (ExecutionException e)
+		{
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * Creates the lookup table of RGB values of the color ramp, interpolating
+	 * between the colors of the ramp.
+	 * 
+	 * @return - the lookup table
+	 */
+	protected static int[] createRamp()
+	{
+		int[] ramp = new int[RAMP_SIZE];
+
+		for (int i = 0 ; i < RAMP_SIZE ; ++i)
+		{
+			double t = (double) i / (RAMP_SIZE - 1) * (RAMP_COLORS.length - 1);
+			int c = Math.min((int) t, RAMP_COLORS.length - 2);
+			double f = t - c;
+
+			Color a = RAMP_COLORS[c];
+			Color b = RAMP_COLORS[c + 1];
+
+			int r = (int) (a.getRed() + f * (b.getRed() - a.getRed()));
+			int g = (int) (a.getGreen() + f * (b.getGreen() - a.getGreen()));
+			int bl = (int) (a.getBlue() + f * (b.getBlue() - a.getBlue()));
+
+			ramp[i] = (r << 16) | (g << 8) | bl;
+		}
+
+		return ramp;
+	}
+}
@@ -0,0 +1,341 @@
+package com.ryanantkowiak.jchartpanel;
+
+/**
+ * A data series derived from another series of a chart panel, such as a moving
+ * average. The derived series is updated incrementally: each data point
+ * appended to the source series is processed once, in constant time, and the
+ * result is appended to the storage of the derived series.
+ * 
+ * @author antko
+ *
+ */
+public abstract class JChartPanelDerivedSeries
+{
+	/**
+	 * The storage of the source series data points.
+	 */
+	protected JChartPanelSeriesStorage source;
+
+	/**
+	 * The derived series that produces the source series, or null if the source
+	 * series is not derived.
+	 */
+	protected JChartPanelDerivedSeries upstream;
+
+	/**
+	 * The storage of the derived series data points.
+	 */
+	protected final JChartPanelDoubleSeriesStorage storage = new JChartPanelDoubleSeriesStorage();
+
+	/**
+	 * The number of data points of the source series processed so far.
+	 */
+	protected int processedCount;
+
+	/**
+	 * Connects the derived series to its source series, and processes the data
+	 * points the source series already has.
+	 * 
+	 * @param source
+	 *            - the storage of the source series data points
+	 * @param upstream
+	 *            - the derived series that produces the source series, or null
+	 */
+	protected void bind(JChartPanelSeriesStorage source, JChartPanelDerivedSeries upstream)
+	{
+		if (this.source != null)
+			throw new IllegalStateException("Derived series is already bound to a source series");
+
+		this.source = source;
+		this.upstream = upstream;
+
+		update();
+	}
+
+	/**
+	 * Returns the storage of the derived series data points.
+	 * 
+	 * @return - the storage of the derived series
+	 */
+	public JChartPanelSeriesStorage getStorage()
+	{
+		return storage;
+	}
+
+	/**
+	 * Processes the data points appended to the source series since the last
+	 * update, after first updating the source series if it is derived too.
+	 */
+	public void update()
+	{
+		if (source == null)
+			return;
+
+		if (upstream != null)
+			upstream.update();
+
+		int n = source.size();
+
+		for ( ; processedCount < n ; ++processedCount)
+			storage.append(next(source.get(processedCount)));
+	}
+
+	/**
+	 * Processes the next data point of the source series.
+	 * 
+	 * @param value
+	 *            - the value of the next data point of the source series
+	 * @return - the value of the next data point of the derived series
+	 */
+	protected abstract double next(double value);
+
+	/**
+	 * Simple moving average of the most recent data points of the source series.
+	 * 
+	 * @author antko
+	 *
+	 */
+	public static class MovingAverage extends JChartPanelDerivedSeries
+	{
+		/**
+		 * The most recent data points of the source series.
+		 */
+		protected final double[] window;
+
+		/**
+		 * The position in the window of the next data point.
+		 */
+		protected int position;
+
+		/**
+		 * The number of data points in the window.
+		 */
+		protected int count;
+
+		/**
+		 * The sum of the data points in the window.
+		 */
+		protected double sum;
+
+		/**
+		 * Construct a MovingAverage object.
+		 * 
+		 * @param windowSize
+		 *            - the number of most recent data points to average
+		 */
+		public MovingAverage(int windowSize)
+		{
+			if (windowSize < 1)
+				throw new IllegalArgumentException("windowSize must be positive");
+
+			window = new double[windowSize];
+		}
+
+		@Override
+		protected double next(double value)
+		{
+			if (count == window.length)
+				sum -= window[position];
+			else
+				++count;
+
+			window[position] = value;
+			position = (position + 1) % window.length;
+
+			// Re-sum the window once per pass over it, so that the rounding errors of
+			// the running sum do not build up over a long series
+			if (position == 0)
+				sum = sum(window);
+			else
+				sum += value;
+
+			return sum / count;
+		}
+
+		/**
+		 * Returns the sum of an array of values.
+		 * 
+		 * @param values
+		 *            - the values
+		 * @return - the sum of the values
+		 */
+		protected static double sum(double[] values)
+		{
+			double sum = 0.0;
+
+			for (double v : values)
+				sum += v;
+
+			return sum;
+		}
+	}
+
+	/**
+	 * Exponentially weighted moving average of the source series.
+	 * 
+	 * @author antko
+	 *
+	 */
+	public static class Ewma extends JChartPanelDerivedSeries
+	{
+		/**
+		 * The weight of the newest data point, between 0 and 1.
+		 */
+		protected final double alpha;
+
+		/**
+		 * The current average, or NaN before the first data point.
+		 */
+		protected double average = Double.NaN;
+
+		/**
+		 * Construct an Ewma object.
+		 * 
+		 * @param alpha
+		 *            - the weight of the newest data point, between 0 (exclusive) and 1
+		 *            (inclusive)
+		 */
+		public Ewma(double alpha)
+		{
+			if (!(alpha > 0.0 && alpha <= 1.0))
+				throw new IllegalArgumentException("alpha must be in (0, 1]");
+
+			this.alpha = alpha;
+		}
+
+		@Override
+		protected double next(double value)
+		{
+			average = Double.isNaN(average) ? value : average + alpha * (value - average);
+
+			return average;
+		}
+	}
+
+	/**
+	 * Rate of change of the source series, per unit of time.
+	 * 
+	 * @author antko
+	 *
+	 */
+	public static class Rate extends JChartPanelDerivedSeries
+	{
+		/**
+		 * The amount of time between two data points of the source series.
+		 */
+		protected final double sampleInterval;
+
+		/**
+		 * The previous data point, or NaN before the first data point.
+		 */
+		protected double previous = Double.NaN;
+
+		/**
+		 * Construct a Rate object, for the change per data point.
+		 */
+		public Rate()
+		{
+			this(1.0);
+		}
+
+		/**
+		 * Construct a Rate object.
+		 * 
+		 * @param sampleInterval
+		 *            - the amount of time between two data points of the source
+		 *            series
+		 */
+		public Rate(double sampleInterval)
+		{
+			if (!(sampleInterval > 0.0))
+				throw new IllegalArgumentException("sampleInterval must be positive");
+
+			this.sampleInterval = sampleInterval;
+		}
+
+		@Override
+		protected double next(double value)
+		{
+			double rate = Double.isNaN(previous) ? 0.0 : (value - previous) / sampleInterval;
+			previous = value;
+
+			return rate;
+		}
+	}
+
+	/**
+	 * Standard deviation of the most recent data points of the source series. The
+	 * mean and the sum of the squared deviations from it are updated as data points
+	 * enter and leave the window, which stays accurate when the deviation is small
+	 * compared to the values themselves.
+	 * 
+	 * @author antko
+	 *
+	 */
+	public static class RollingStdDev extends MovingAverage
+	{
+		/**
+		 * The mean of the data points in the window.
+		 */
+		protected double mean;
+
+		/**
+		 * The sum of the squared deviations of the data points in the window from
+		 * their mean.
+		 */
+		protected double sumOfSquaredDeviations;
+
+		/**
+		 * Construct a RollingStdDev object.
+		 * 
+		 * @param windowSize
+		 *            - the number of most recent data points to include
+		 */
+		public RollingStdDev(int windowSize)
+		{
+			super(windowSize);
+		}
+
+		@Override
+		protected double next(double value)
+		{
+			double oldest = window[position];
+			boolean full = count == window.length;
+
+			if (!full)
+				++count;
+
+			window[position] = value;
+			position = (position + 1) % window.length;
+
+			if (position == 0)
+			{
+				// Recalculate from the window once per pass over it, so that rounding
+				// errors do not build up over a long series
+				mean = sum(window) / count;
+				sumOfSquaredDeviations = 0.0;
+
+				for (double v : window)
+					sumOfSquaredDeviations += (v - mean) * (v - mean);
+			}
+			else if (full)
+			{
+				double newMean = mean + (value - oldest) / count;
+				sumOfSquaredDeviations += (value - oldest) * (value - newMean + oldest - mean);
+				mean = newMean;
+			}
+			else
+			{
+				double delta = value - mean;
+				mean += delta / count;
+				sumOfSquaredDeviations += delta * (value - mean);
+			}
+
+			// Rounding errors may leave the sum slightly below zero
+			if (sumOfSquaredDeviations < 0.0)
+				sumOfSquaredDeviations = 0.0;
+
+			return Math.sqrt(sumOfSquaredDeviations / count);
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package com.ryanantkowiak.jchartpanel;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Series storage that holds the data points in a primitive double array.
+ * 
+ * @author antko
+ *
+ */
+public class JChartPanelDoubleSeriesStorage implements JChartPanelUpdatableSeriesStorage
+{
+	/**
+	 * Default initial capacity of the array of data points.
+	 */
+	public static final int DEFAULT_CAPACITY = 16;
+
+	/**
+	 * The raw data points. Only the first size elements are in use.
+	 */
+	protected double[] values;
+
+	/**
+	 * The number of data points in the storage.
+	 */
+	protected int size;
+
+	/**
+	 * The minimum value in the series data.
+	 */
+	protected double minValue = Double.MAX_VALUE;
+
+	/**
+	 * The maximum value in the series data.
+	 */
+	protected double maxValue = -Double.MAX_VALUE;
+
+	/**
+	 * Tree of the minimum and maximum values of blocks of data points, or null
+	 * until a range of data points is first rewritten.
+	 */
+	protected JChartPanelMinMaxTree minMaxTree;
+
+	/**
+	 * The number of times ranges of data points were rewritten.
+	 */
+	protected int updateCount;
+
+	/**
+	 * Constructor for an empty double series storage.
+	 */
+	public JChartPanelDoubleSeriesStorage()
+	{
+		values = new double[DEFAULT_CAPACITY];
+	}
+
+	/**
+	 * Constructor for a double series storage that holds a copy of the given data
+	 * points.
+	 * 
+	 * @param values
+	 *            - the series data points
+	 */
+	public JChartPanelDoubleSeriesStorage(double[] values)
+	{
+		this.values = Arrays.copyOf(values, Math.max(values.length, DEFAULT_CAPACITY));
+
+		for (int i = 0 ; i < values.length ; ++i)
+			include(values[i]);
+
+		size = values.length;
+	}
+
+	/**
+	 * Constructor for a double series storage that holds a copy of the given data
+	 * points.
+	 * 
+	 * @param series
+	 *            - the series data points
+	 */
+	public JChartPanelDoubleSeriesStorage(List<Double> series)
+	{
+		values = new double[Math.max(series.size(), DEFAULT_CAPACITY)];
+
+		for (Double v : series)
+			append(v);
+	}
+
+	@Override
+	public synchronized int size()
+	{
+		return size;
+	}
+
+	@Override
+	public synchronized double get(int index)
+	{
+		if (index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+
+		return values[index];
+	}
+
+	@Override
+	public synchronized double getMinValue()
+	{
+		return minValue;
+	}
+
+	@Override
+	public synchronized double getMaxValue()
+	{
+		return maxValue;
+	}
+
+	@Override
+	public synchronized void getRangeMinMax(int fromIndex, int toIndex, double[] minMax)
+	{
+		double min = Double.MAX_VALUE;
+		double max = -Double.MAX_VALUE;
+
+		for (int i = fromIndex ; i < toIndex ; ++i)
+		{
+			if (values[i] < min)
+				min = values[i];
+
+			if (values[i] > max)
+				max = values[i];
+		}
+
+		minMax[0] = min;
+		minMax[1] = max;
+	}
+
+	@Override
+	public synchronized void append(double value)
+	{
+		if (size == values.length)
+			values = Arrays.copyOf(values, size * 2);
+
+		values[size++] = value;
+		include(value);
+
+		if (minMaxTree != null)
+			minMaxTree.include(size - 1, value);
+	}
+
+	@Override
+	public synchronized void setRange(int fromIndex, double[] values, int offset, int length)
+	{
+		if (fromIndex < 0 || length < 0 || fromIndex + length > size)
+			throw new IndexOutOfBoundsException("Range: " + fromIndex + "-" + (fromIndex + length) + ", Size: " + size);
+
+		if (length == 0)
+			return;
+
+		System.arraycopy(values, offset, this.values, fromIndex, length);
+
+		if (minMaxTree == null)
+			minMaxTree = new JChartPanelMinMaxTree(this);
+		else
+			minMaxTree.update(this, fromIndex, fromIndex + length);
+
+		minValue = minMaxTree.getMinValue();
+		maxValue = minMaxTree.getMaxValue();
+
+		++updateCount;
+	}
+
+	@Override
+	public synchronized int getUpdateCount()
+	{
+		return updateCount;
+	}
+
+	/**
+	 * Updates the minimum and maximum value with the given data point.
+	 * 
+	 * @param v
+	 *            - the value of the data point
+	 */
+	protected void include(double v)
+	{
+		if (v < minValue)
+			minValue = v;
+
+		if (v > maxValue)
+			maxValue = v;
+	}
+}
@@ -0,0 +1,263 @@
+package com.ryanantkowiak.jchartpanel;
+
+/**
+ * Base class for series storages that hold the data points as scaled integers.
+ * A data point with the raw integer value r has the value offset + r * scale.
+ * Values are rounded to the nearest multiple of the scale, and clamped to the
+ * range of the raw integer type. Subclasses only hold the array of raw integer
+ * values, in the integer type of their choice.
+ * 
+ * @author antko
+ *
+ */
+public abstract class JChartPanelFixedPointSeriesStorage implements JChartPanelSeriesStorage
+{
+	/**
+	 * Default initial capacity of the array of data points.
+	 */
+	public static final int DEFAULT_CAPACITY = 16;
+
+	/**
+	 * The value represented by a raw integer value of zero.
+	 */
+	protected final double offset;
+
+	/**
+	 * The difference in value between two consecutive raw integer values.
+	 */
+	protected final double scale;
+
+	/**
+	 * The lowest raw integer value that can be stored.
+	 */
+	protected final int minRawValue;
+
+	/**
+	 * The highest raw integer value that can be stored.
+	 */
+	protected final int maxRawValue;
+
+	/**
+	 * The number of data points in the storage.
+	 */
+	protected int size;
+
+	/**
+	 * The minimum raw integer value in the series data.
+	 */
+	protected int minRaw = Integer.MAX_VALUE;
+
+	/**
+	 * The maximum raw integer value in the series data.
+	 */
+	protected int maxRaw = Integer.MIN_VALUE;
+
+	/**
+	 * Constructor for a fixed point series storage.
+	 * 
+	 * @param offset
+	 *            - the value represented by a raw integer value of zero
+	 * @param scale
+	 *            - the difference in value between two consecutive raw integer
+	 *            values, must be positive
+	 * @param minRawValue
+	 *            - the lowest raw integer value that can be stored
+	 * @param maxRawValue
+	 *            - the highest raw integer value that can be stored
+	 */
+	protected JChartPanelFixedPointSeriesStorage(double offset, double scale, int minRawValue, int maxRawValue)
+	{
+		if (!(scale > 0.0))
+			throw new IllegalArgumentException("scale must be positive");
+
+		this.offset = offset;
+		this.scale = scale;
+		this.minRawValue = minRawValue;
+		this.maxRawValue = maxRawValue;
+	}
+
+	/**
+	 * Returns the value represented by a raw integer value of zero.
+	 * 
+	 * @return - the offset
+	 */
+	public double getOffset()
+	{
+		return offset;
+	}
+
+	/**
+	 * Returns the difference in value between two consecutive raw integer values.
+	 * 
+	 * @return - the scale
+	 */
+	public double getScale()
+	{
+		return scale;
+	}
+
+	@Override
+	public synchronized int size()
+	{
+		return size;
+	}
+
+	@Override
+	public synchronized double get(int index)
+	{
+		if (index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+
+		return toValue(getRaw(index));
+	}
+
+	@Override
+	public synchronized double getMinValue()
+	{
+		return size == 0 ? Double.MAX_VALUE : toValue(minRaw);
+	}
+
+	@Override
+	public synchronized double getMaxValue()
+	{
+		return size == 0 ? -Double.MAX_VALUE : toValue(maxRaw);
+	}
+
+	@Override
+	public synchronized void getRangeMinMax(int fromIndex, int toIndex, double[] minMax)
+	{
+		if (fromIndex >= toIndex)
+		{
+			minMax[0] = Double.MAX_VALUE;
+			minMax[1] = -Double.MAX_VALUE;
+			return;
+		}
+
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+
+		for (int i = fromIndex ; i < toIndex ; ++i)
+		{
+			int raw = getRaw(i);
+
+			if (raw < min)
+				min = raw;
+
+			if (raw > max)
+				max = raw;
+		}
+
+		minMax[0] = toValue(min);
+		minMax[1] = toValue(max);
+	}
+
+	/**
+	 * Appends a data point to the end of the storage, rounded to the nearest
+	 * multiple of the scale.
+	 * 
+	 * @param value
+	 *            - the value of the data point to append
+	 * @throws IllegalArgumentException
+	 *             - if the value is NaN
+	 */
+	@Override
+	public synchronized void append(double value)
+	{
+		int raw = toRaw(value);
+
+		if (size == capacity())
+			grow(size * 2);
+
+		setRaw(size++, raw);
+		include(raw);
+	}
+
+	/**
+	 * Returns the raw integer value of the data point at the given index.
+	 * 
+	 * @param index
+	 *            - the index of the data point
+	 * @return - the raw integer value of the data point
+	 */
+	public abstract int getRaw(int index);
+
+	/**
+	 * Sets the raw integer value of the data point at the given index, within the
+	 * capacity of the storage.
+	 * 
+	 * @param index
+	 *            - the index of the data point
+	 * @param raw
+	 *            - the raw integer value, between minRawValue and maxRawValue
+	 */
+	protected abstract void setRaw(int index, int raw);
+
+	/**
+	 * Returns the number of data points the array of raw integer values can hold.
+	 * 
+	 * @return - the capacity of the storage
+	 */
+	protected abstract int capacity();
+
+	/**
+	 * Grows the array of raw integer values, keeping the data points it holds.
+	 * 
+	 * @param capacity
+	 *            - the new capacity of the storage
+	 */
+	protected abstract void grow(int capacity);
+
+	/**
+	 * Converts a raw integer value to the value it represents.
+	 * 
+	 * @param raw
+	 *            - the raw integer value
+	 * @return - the value
+	 */
+	public double toValue(int raw)
+	{
+		return offset + raw * scale;
+	}
+
+	/**
+	 * Converts a value to the nearest raw integer value, clamped to the range of
+	 * raw integer values that can be stored. NaN has no raw integer value, and is
+	 * rejected.
+	 * 
+	 * @param value
+	 *            - the value
+	 * @return - the raw integer value
+	 * @throws IllegalArgumentException
+	 *             - if the value is NaN
+	 */
+	protected int toRaw(double value)
+	{
+		if (Double.isNaN(value))
+			throw new IllegalArgumentException("NaN cannot be stored as a fixed point value");
+
+		double raw = Math.rint((value - offset) / scale);
+
+		if (raw < minRawValue)
+			return minRawValue;
+
+		if (raw > maxRawValue)
+			return maxRawValue;
+
+		return (int) raw;
+	}
+
+	/**
+	 * Updates the minimum and maximum raw integer value with the given data point.
+	 * 
+	 * @param raw
+	 *            - the raw integer value of the data point
+	 */
+	protected void include(int raw)
+	{
+		if (raw < minRaw)
+			minRaw = raw;
+
+		if (raw > maxRaw)
+			maxRaw = raw;
+	}
+}
@@ -0,0 +1,248 @@
+package com.ryanantkowiak.jchartpanel;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Index of the pixel columns covered by the line graphs of a set of data
+ * series, used to find the series that pass near a point of the chart panel.
+ * For each pixel column, the index holds the minimum and maximum y coordinate
+ * of each series within that column. A query only looks at the columns within
+ * the search distance of the point, so it takes the same time no matter how
+ * many data points the series have.
+ * 
+ * @author antko
+ *
+ */
+public class JChartPanelHitIndex
+{
+	/**
+	 * The width of the indexed area, in pixels.
+	 */
+	protected final int pixelWidth;
+
+	/**
+	 * The number of indexed data series.
+	 */
+	protected final int seriesCount;
+
+	/**
+	 * The minimum y coordinate of each series in each column, stored column by
+	 * column, or Integer.MAX_VALUE if the series does not cross the column.
+	 */
+	protected final int[] minY;
+
+	/**
+	 * The maximum y coordinate of each series in each column, stored column by
+	 * column, or Integer.MIN_VALUE if the series does not cross the column.
+	 */
+	protected final int[] maxY;
+
+	/**
+	 * Construct a JChartPanelHitIndex object.
+	 * 
+	 * @param pixelWidth
+	 *            - the width of the indexed area, in pixels
+	 * @param pointLists
+	 *            - the screen points of each data series to index
+	 */
+	public JChartPanelHitIndex(int pixelWidth, List<List<Point>> pointLists)
+	{
+		this.pixelWidth = Math.max(0, pixelWidth);
+		this.seriesCount = pointLists.size();
+		this.minY = new int[this.pixelWidth * seriesCount];
+		this.maxY = new int[this.pixelWidth * seriesCount];
+
+		Arrays.fill(minY, Integer.MAX_VALUE);
+		Arrays.fill(maxY, Integer.MIN_VALUE);
+
+		for (int s = 0 ; s < seriesCount ; ++s)
+		{
+			List<Point> points = pointLists.get(s);
+
+			if (points.size() == 1)
+				include(s, points.get(0).x, points.get(0).y, points.get(0).y);
+
+			for (int i = 1 ; i < points.size() ; ++i)
+				includeSegment(s, points.get(i - 1), points.get(i));
+		}
+	}
+
+	/**
+	 * Construct a JChartPanelHitIndex object that is a copy of another index,
+	 * except for the screen points of one data series.
+	 * 
+	 * @param other
+	 *            - the index to copy
+	 * @param s
+	 *            - the position of the data series whose screen points changed
+	 * @param points
+	 *            - the new screen points of the data series
+	 */
+	public JChartPanelHitIndex(JChartPanelHitIndex other, int s, List<Point> points)
+	{
+		this.pixelWidth = other.pixelWidth;
+		this.seriesCount = other.seriesCount;
+		this.minY = other.minY.clone();
+		this.maxY = other.maxY.clone();
+
+		for (int c = 0 ; c < pixelWidth ; ++c)
+		{
+			minY[c * seriesCount + s] = Integer.MAX_VALUE;
+			maxY[c * seriesCount + s] = Integer.MIN_VALUE;
+		}
+
+		if (points.size() == 1)
+			include(s, points.get(0).x, points.get(0).y, points.get(0).y);
+
+		for (int i = 1 ; i < points.size() ; ++i)
+			includeSegment(s, points.get(i - 1), points.get(i));
+	}
+
+	/**
+	 * Returns the data series that pass within a distance of a point, nearest
+	 * first.
+	 * 
+	 * @param x
+	 *            - the x coordinate of the point
+	 * @param y
+	 *            - the y coordinate of the point
+	 * @param distance
+	 *            - the maximum distance, in pixels
+	 * @return - the positions of the data series in the list the index was built
+	 *         from
+	 */
+	public List<Integer> query(int x, int y, int distance)
+	{
+		long[] best = new long[seriesCount];
+		Arrays.fill(best, Long.MAX_VALUE);
+
+		long limit = (long) distance * distance;
+		int from = Math.max(0, x - distance);
+		int to = Math.min(pixelWidth - 1, x + distance);
+
+		for (int c = from ; c <= to ; ++c)
+		{
+			long dx = c - x;
+			int base = c * seriesCount;
+
+			for (int s = 0 ; s < seriesCount ; ++s)
+			{
+				int lo = minY[base + s];
+				int hi = maxY[base + s];
+
+				if (lo > hi)
+					continue;
+
+				long dy = y < lo ? lo - y : (y > hi ? y - hi : 0);
+				long d = dx * dx + dy * dy;
+
+				if (d <= limit && d < best[s])
+					best[s] = d;
+			}
+		}
+
+		List<Integer> hits = new ArrayList<Integer>();
+
+		for (int s = 0 ; s < seriesCount ; ++s)
+			if (best[s] != Long.MAX_VALUE)
+				hits.add(s);
+
+		final long[] distances = best;
+
+		Collections.sort(hits, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer a, Integer b)
+			{
+				return Long.compare(distances[a], distances[b]);
+			}
+		});
+
+		return hits;
+	}
+
+	/**
+	 * Returns the data series nearest to a point, within a distance.
+	 * 
+	 * @param x
+	 *            - the x coordinate of the point
+	 * @param y
+	 *            - the y coordinate of the point
+	 * @param distance
+	 *            - the maximum distance, in pixels
+	 * @return - the position of the data series in the list the index was built
+	 *         from, or -1 if no series passes within the distance
+	 */
+	public int nearest(int x, int y, int distance)
+	{
+		List<Integer> hits = query(x, y, distance);
+
+		return hits.isEmpty() ? -1 : hits.get(0);
+	}
+
+	/**
+	 * Adds the columns crossed by a line segment of a data series to the index.
+	 * 
+	 * @param s
+	 *            - the position of the data series
+	 * @param p0
+	 *            - the start of the line segment
+	 * @param p1
+	 *            - the end of the line segment
+	 */
+	protected void includeSegment(int s, Point p0, Point p1)
+	{
+		if (p0.x == p1.x)
+		{
+			include(s, p0.x, Math.min(p0.y, p1.y), Math.max(p0.y, p1.y));
+			return;
+		}
+
+		Point left = p0.x < p1.x ? p0 : p1;
+		Point right = p0.x < p1.x ? p1 : p0;
+		double slope = (double) (right.y - left.y) / (right.x - left.x);
+		int from = Math.max(0, left.x);
+		int to = Math.min(pixelWidth - 1, right.x);
+
+		for (int c = from ; c <= to ; ++c)
+		{
+			// The part of the segment within half a pixel of the column
+			double ya = left.y + slope * (Math.max(c - 0.5, left.x) - left.x);
+			double yb = left.y + slope * (Math.min(c + 0.5, right.x) - left.x);
+
+			include(s, c, (int) Math.floor(Math.min(ya, yb)), (int) Math.ceil(Math.max(ya, yb)));
+		}
+	}
+
+	/**
+	 * Widens the span of a data series in a column to include a range of y
+	 * coordinates.
+	 * 
+	 * @param s
+	 *            - the position of the data series
+	 * @param c
+	 *            - the column
+	 * @param lo
+	 *            - the lowest y coordinate to include
+	 * @param hi
+	 *            - the highest y coordinate to include
+	 */
+	protected void include(int s, int c, int lo, int hi)
+	{
+		if (c < 0 || c >= pixelWidth)
+			return;
+
+		int i = c * seriesCount + s;
+
+		if (lo < minY[i])
+			minY[i] = lo;
+
+		if (hi > maxY[i])
+			maxY[i] = hi;
+	}
+}
@@ -0,0 +1,150 @@
+package com.ryanantkowiak.jchartpanel;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Random;
+
+/**
+ * Client that sends data points to a JChartPanelIngestServer, in the frame
+ * format the server expects. Its main method stands in for a collector, sending
+ * a random walk to each of a number of series.
+ * 
+ * @author antko
+ *
+ */
+public class JChartPanelIngestClient
+{
+	/**
+	 * The channel connected to the server.
+	 */
+	protected final SocketChannel channel;
+
+	/**
+	 * The direct buffer in which frames are encoded before they are sent.
+	 */
+	protected final ByteBuffer buffer = ByteBuffer.allocateDirect(JChartPanelIngestServer.RECEIVE_BUFFER_SIZE);
+
+	/**
+	 * Construct a JChartPanelIngestClient connected to a server.
+	 * 
+	 * @param address
+	 *            - the address of the server
+	 * @throws IOException
+	 *             - if the client cannot connect to the server
+	 */
+	public JChartPanelIngestClient(InetSocketAddress address) throws IOException
+	{
+		channel = SocketChannel.open(address);
+	}
+
+	/**
+	 * Sends a frame of data points for a series.
+	 * 
+	 * @param seriesIndex
+	 *            - the index/id of the data series on the chart panel of the server
+	 * @param values
+	 *            - the values of the data points
+	 * @throws IOException
+	 *             - if the frame cannot be sent
+	 */
+	public void send(int seriesIndex, double[] values) throws IOException
+	{
+		buffer.clear();
+		buffer.putInt(seriesIndex);
+		buffer.putInt(values.length);
+
+		for (double v : values)
+		{
+			if (!buffer.hasRemaining())
+				flush();
+
+			buffer.putDouble(v);
+		}
+
+		flush();
+	}
+
+	/**
+	 * Closes the connection to the server.
+	 * 
+	 * @throws IOException
+	 *             - if the connection cannot be closed
+	 */
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+
+	/**
+	 * Writes the encoded bytes of the buffer to the server.
+	 * 
+	 * @throws IOException
+	 *             - if the bytes cannot be written
+	 */
+	protected void flush() throws IOException
+	{
+		buffer.flip();
+
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+
+		buffer.clear();
+	}
+
+	/**
+	 * Sends a random walk to a number of series of a server, until interrupted.
+	 * 
+	 * @param args
+	 *            - the host and port of the server, the number of series (default
+	 *            1), the number of data points per frame (default 10) and the
+	 *            delay in milliseconds between frames (default 50)
+	 * @throws IOException
+	 *             - if the data points cannot be sent
+	 * @throws InterruptedException
+	 *             - if interrupted between frames
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException
+	{
+		if (args.length < 2)
+		{
+			System.err.println("Usage: JChartPanelIngestClient host port [seriesCount] [pointsPerFrame] [delayMillis]");
+			return;
+		}
+
+		int seriesCount = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+		int pointsPerFrame = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+		int delay = args.length > 4 ? Integer.parseInt(args[4]) : 50;
+
+		JChartPanelIngestClient client = new JChartPanelIngestClient(
+				new InetSocketAddress(args[0], Integer.parseInt(args[1])));
+
+		Random random = new Random();
+		double[] last = new double[seriesCount];
+		double[] values = new double[pointsPerFrame];
+
+		try
+		{
+			while (true)
+			{
+				for (int s = 0 ; s < seriesCount ; ++s)
+				{
+					for (int i = 0 ; i < pointsPerFrame ; ++i)
+					{
+						last[s] += random.nextGaussian();
+						values[i] = last[s];
+					}
+
+					client.send(s, values);
+				}
+
+				Thread.sleep(delay);
+			}
+		}
+		finally
+		{
+			client.close();
+		}
+	}
+}
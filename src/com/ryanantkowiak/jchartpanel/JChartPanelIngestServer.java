@@ -0,0 +1,594 @@
+package com.ryanantkowiak.jchartpanel;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Non-blocking TCP endpoint that appends data points sent by other processes to
+ * the series of a chart panel. A single selector thread serves all the
+ * connections, so thousands of collectors can feed one chart panel.
+ * 
+ * Each connection sends a stream of frames. A frame is the series index (a
+ * 4-byte int), the number of data points (a 4-byte int), then the values of
+ * the data points (8-byte doubles), all in big-endian byte order. The values of
+ * a frame are appended to the series as they arrive, so a frame may be larger
+ * than the receive buffer. Frames for a series index the chart panel does not
+ * have are read and dropped.
+ * 
+ * The selector thread only decodes the data points. They are appended to the
+ * series on the event dispatch thread, in the order they arrived, so the series
+ * storages are only ever written by the thread that paints them. When more than
+ * MAX_PENDING_POINTS data points wait to be appended, the server stops reading
+ * from the connections until the event dispatch thread has caught up, and the
+ * collectors are held back by TCP flow control. A batch the series cannot take,
+ * such as values for a read-only storage, is rejected and counted.
+ * 
+ * @author antko
+ *
+ */
+public class JChartPanelIngestServer
+{
+	/**
+	 * Size, in bytes, of the direct receive buffer of each connection.
+	 */
+	public static final int RECEIVE_BUFFER_SIZE = 16 * 1024;
+
+	/**
+	 * Size, in bytes, of the header of a frame.
+	 */
+	public static final int FRAME_HEADER_SIZE = 8;
+
+	/**
+	 * Number of decoded data points waiting to be appended above which the server
+	 * stops reading from the connections. Reading resumes once half of them are
+	 * appended.
+	 */
+	public static final int MAX_PENDING_POINTS = 1 << 20;
+
+	/**
+	 * The state of a connection: its receive buffer, and the progress through the
+	 * frame being received.
+	 * 
+	 * @author antko
+	 *
+	 */
+	protected static class Connection
+	{
+		/**
+		 * The direct buffer into which the socket is read.
+		 */
+		protected final ByteBuffer buffer = ByteBuffer.allocateDirect(RECEIVE_BUFFER_SIZE);
+
+		/**
+		 * The values decoded from the buffer, before they are appended to a series.
+		 */
+		protected final double[] values = new double[RECEIVE_BUFFER_SIZE / 8];
+
+		/**
+		 * The series index of the frame being received.
+		 */
+		protected int seriesIndex;
+
+		/**
+		 * The number of data points of the frame being received that have not
+		 * arrived yet, or zero if the next bytes are the header of a frame.
+		 */
+		protected int remaining;
+	}
+
+	/**
+	 * A batch of decoded data points waiting to be appended to a series.
+	 * 
+	 * @author antko
+	 *
+	 */
+	protected static class Batch
+	{
+		/**
+		 * The series index of the data points.
+		 */
+		protected final int seriesIndex;
+
+		/**
+		 * The values of the data points.
+		 */
+		protected final double[] values;
+
+		/**
+		 * Construct a Batch object.
+		 * 
+		 * @param seriesIndex
+		 *            - the series index of the data points
+		 * @param values
+		 *            - the values of the data points
+		 */
+		protected Batch(int seriesIndex, double[] values)
+		{
+			this.seriesIndex = seriesIndex;
+			this.values = values;
+		}
+	}
+
+	/**
+	 * The chart panel whose series receive the data points.
+	 */
+	protected final JChartPanel chartPanel;
+
+	/**
+	 * The address the server listens on.
+	 */
+	protected final InetSocketAddress address;
+
+	/**
+	 * The selector that multiplexes all the connections.
+	 */
+	protected Selector selector;
+
+	/**
+	 * The channel that accepts connections.
+	 */
+	protected ServerSocketChannel serverChannel;
+
+	/**
+	 * The thread that runs the selector loop.
+	 */
+	protected Thread selectorThread;
+
+	/**
+	 * The number of frames received.
+	 */
+	protected volatile long frameCount;
+
+	/**
+	 * The number of data points received.
+	 */
+	protected volatile long valueCount;
+
+	/**
+	 * The error that stopped the selector loop, or null.
+	 */
+	protected volatile IOException failure;
+
+	/**
+	 * The number of data points in batches that could not be appended.
+	 */
+	protected volatile long rejectedCount;
+
+	/**
+	 * The error of the last batch that could not be appended, or null.
+	 */
+	protected volatile RuntimeException rejection;
+
+	/**
+	 * The number of decoded data points waiting to be appended.
+	 */
+	protected final AtomicLong pendingPoints = new AtomicLong();
+
+	/**
+	 * Flag to indicate that the server stopped reading from the connections
+	 * because too many data points wait to be appended.
+	 */
+	protected volatile boolean paused;
+
+	/**
+	 * The batches of data points decoded by the selector thread and not yet
+	 * appended on the event dispatch thread.
+	 */
+	protected final Queue<Batch> pendingBatches = new ConcurrentLinkedQueue<Batch>();
+
+	/**
+	 * Flag to indicate that appending the pending batches is already scheduled
+	 * on the event dispatch thread.
+	 */
+	protected final AtomicBoolean appendScheduled = new AtomicBoolean();
+
+	/**
+	 * Appends the pending batches on the event dispatch thread.
+	 */
+	protected final Runnable appender = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			appendScheduled.set(false);
+
+			boolean rejected = false;
+
+			for (Batch batch = pendingBatches.poll() ; batch != null ; batch = pendingBatches.poll())
+			{
+				try
+				{
+					chartPanel.appendToSeries(batch.seriesIndex, batch.values);
+				}
+				catch (RuntimeException e)
+				{
+					// The series cannot take the values, such as a read-only series or NaN for
+					// a fixed point series; the values before the failed one may be appended
+					rejectedCount += batch.values.length;
+					rejection = e;
+					rejected = true;
+				}
+
+				pendingPoints.addAndGet(-batch.values.length);
+			}
+
+			// A failed append skips the update of the derived series and the repaint
+			if (rejected)
+			{
+				chartPanel.updateDerivedSeries();
+				chartPanel.requestRepaint();
+			}
+
+			if (paused && pendingPoints.get() <= MAX_PENDING_POINTS / 2)
+				selector.wakeup();
+		}
+	};
+
+	/**
+	 * Construct a JChartPanelIngestServer that listens on the loopback interface.
+	 * 
+	 * @param chartPanel
+	 *            - the chart panel whose series receive the data points
+	 * @param port
+	 *            - the TCP port to listen on, or zero for any free port
+	 */
+	public JChartPanelIngestServer(JChartPanel chartPanel, int port)
+	{
+		this(chartPanel, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+	}
+
+	/**
+	 * Construct a JChartPanelIngestServer.
+	 * 
+	 * @param chartPanel
+	 *            - the chart panel whose series receive the data points
+	 * @param address
+	 *            - the address to listen on
+	 */
+	public JChartPanelIngestServer(JChartPanel chartPanel, InetSocketAddress address)
+	{
+		this.chartPanel = chartPanel;
+		this.address = address;
+	}
+
+	/**
+	 * Start listening for connections, on a new selector thread.
+	 * 
+	 * @throws IOException
+	 *             - if the server cannot listen on its address
+	 */
+	public synchronized void start() throws IOException
+	{
+		if (selectorThread != null)
+			return;
+
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.bind(address);
+		serverChannel.configureBlocking(false);
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+		selectorThread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				runSelector();
+			}
+		}, "JChartPanelIngest");
+		selectorThread.setDaemon(true);
+		selectorThread.start();
+	}
+
+	/**
+	 * Stop listening, and close all the connections.
+	 */
+	public synchronized void stop()
+	{
+		if (selectorThread == null)
+			return;
+
+		selectorThread.interrupt();
+		selector.wakeup();
+
+		try
+		{
+			selectorThread.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		selectorThread = null;
+	}
+
+	/**
+	 * Returns the port the server listens on, which is useful when the server was
+	 * constructed with port zero.
+	 * 
+	 * @return - the port, or -1 if the server is not started
+	 */
+	public synchronized int getPort()
+	{
+		if (serverChannel == null || !serverChannel.isOpen())
+			return -1;
+
+		return serverChannel.socket().getLocalPort();
+	}
+
+	/**
+	 * Returns the number of frames received since the server started.
+	 * 
+	 * @return - the number of frames
+	 */
+	public long getFrameCount()
+	{
+		return frameCount;
+	}
+
+	/**
+	 * Returns the number of data points received since the server started.
+	 * 
+	 * @return - the number of data points
+	 */
+	public long getValueCount()
+	{
+		return valueCount;
+	}
+
+	/**
+	 * Returns the error that stopped the server, if the selector itself failed.
+	 * Errors on a single connection only close that connection.
+	 * 
+	 * @return - the error, or null if the server did not fail
+	 */
+	public IOException getFailure()
+	{
+		return failure;
+	}
+
+	/**
+	 * Returns the number of data points in batches that could not be appended to
+	 * their series.
+	 * 
+	 * @return - the number of rejected data points
+	 */
+	public long getRejectedCount()
+	{
+		return rejectedCount;
+	}
+
+	/**
+	 * Returns the error of the last batch of data points that could not be
+	 * appended to its series.
+	 * 
+	 * @return - the error, or null if no batch was rejected
+	 */
+	public RuntimeException getLastRejection()
+	{
+		return rejection;
+	}
+
+	/**
+	 * The selector loop, which accepts connections and reads the ones with data
+	 * available until the thread is interrupted, or the selector fails.
+	 */
+	protected void runSelector()
+	{
+		try
+		{
+			while (!Thread.currentThread().isInterrupted())
+			{
+				selector.select();
+
+				if (paused && pendingPoints.get() <= MAX_PENDING_POINTS / 2)
+					setReading(true);
+
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+				while (keys.hasNext())
+				{
+					SelectionKey key = keys.next();
+					keys.remove();
+
+					if (!key.isValid())
+						continue;
+
+					if (key.isAcceptable())
+						accept();
+					else if (key.isReadable() && !paused)
+						read(key);
+				}
+
+				if (!paused && pendingPoints.get() > MAX_PENDING_POINTS)
+					setReading(false);
+			}
+		}
+		catch (IOException e)
+		{
+			failure = e;
+		}
+		finally
+		{
+			for (SelectionKey key : selector.keys())
+				close(key);
+
+			try
+			{
+				selector.close();
+			}
+			catch (IOException e)
+			{
+				// The server is stopping, and the selector holds no data
+			}
+		}
+	}
+
+	/**
+	 * Starts or stops reading from all the connections. The connections that are
+	 * not read from are held back by TCP flow control.
+	 * 
+	 * @param reading
+	 *            - true to read from the connections, false to stop reading
+	 */
+	protected void setReading(boolean reading)
+	{
+		paused = !reading;
+
+		for (SelectionKey key : selector.keys())
+			if (key.isValid() && key.attachment() instanceof Connection)
+				key.interestOps(reading ? SelectionKey.OP_READ : 0);
+	}
+
+	/**
+	 * Accepts a pending connection, and registers it for reading. If the
+	 * connection cannot be accepted or registered, only that connection is closed
+	 * and the server keeps serving the others.
+	 */
+	protected void accept()
+	{
+		SocketChannel channel = null;
+
+		try
+		{
+			channel = serverChannel.accept();
+
+			if (channel != null)
+			{
+				channel.configureBlocking(false);
+				channel.register(selector, paused ? 0 : SelectionKey.OP_READ, new Connection());
+			}
+		}
+		catch (IOException e)
+		{
+			if (channel != null)
+			{
+				try
+				{
+					channel.close();
+				}
+				catch (IOException ignored)
+				{
+					// The connection is dropped either way
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the available data of a connection, and appends the data points of its
+	 * frames to the series of the chart panel. The connection is closed at the end
+	 * of the stream or on a malformed frame.
+	 * 
+	 * @param key
+	 *            - the selection key of the connection
+	 */
+	protected void read(SelectionKey key)
+	{
+		SocketChannel channel = (SocketChannel) key.channel();
+		Connection connection = (Connection) key.attachment();
+		ByteBuffer buffer = connection.buffer;
+
+		try
+		{
+			if (channel.read(buffer) < 0)
+			{
+				close(key);
+				return;
+			}
+
+			buffer.flip();
+
+			while (true)
+			{
+				if (connection.remaining == 0)
+				{
+					if (buffer.remaining() < FRAME_HEADER_SIZE)
+						break;
+
+					connection.seriesIndex = buffer.getInt();
+					connection.remaining = buffer.getInt();
+					++frameCount;
+
+					if (connection.remaining < 0)
+						throw new IOException("Invalid frame data point count: " + connection.remaining);
+
+					continue;
+				}
+
+				int n = Math.min(connection.remaining, buffer.remaining() / 8);
+
+				if (n == 0)
+					break;
+
+				for (int i = 0 ; i < n ; ++i)
+					connection.values[i] = buffer.getDouble();
+
+				append(connection.seriesIndex, Arrays.copyOf(connection.values, n));
+
+				connection.remaining -= n;
+				valueCount += n;
+			}
+
+			buffer.compact();
+		}
+		catch (IOException e)
+		{
+			close(key);
+		}
+	}
+
+	/**
+	 * Queues a batch of data points to be appended to a series on the event
+	 * dispatch thread. Batches queued while an append is already scheduled are
+	 * appended along with it.
+	 * 
+	 * @param seriesIndex
+	 *            - the series index of the data points
+	 * @param values
+	 *            - the values of the data points, which are not modified afterwards
+	 */
+	protected void append(int seriesIndex, double[] values)
+	{
+		pendingPoints.addAndGet(values.length);
+		pendingBatches.add(new Batch(seriesIndex, values));
+
+		if (appendScheduled.compareAndSet(false, true))
+			SwingUtilities.invokeLater(appender);
+	}
+
+	/**
+	 * Closes the channel of a selection key.
+	 * 
+	 * @param key
+	 *            - the selection key
+	 */
+	protected void close(SelectionKey key)
+	{
+		key.cancel();
+
+		try
+		{
+			key.channel().close();
+		}
+		catch (IOException e)
+		{
+			// The connection is dropped either way
+		}
+	}
+}
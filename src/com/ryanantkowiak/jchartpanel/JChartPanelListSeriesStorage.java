@@ -0,0 +1,167 @@
+package com.ryanantkowiak.jchartpanel;
+
+import java.util.List;
+
+/**
+ * Series storage that wraps a list of data points provided by the user of the
+ * chart panel. This is the storage used when a series is added to a chart
+ * panel as a list. Once the list is wrapped, it must only be changed through
+ * the storage, whose lock guards it.
+ * 
+ * @author antko
+ *
+ */
+public class JChartPanelListSeriesStorage implements JChartPanelUpdatableSeriesStorage
+{
+	/**
+	 * The raw data points.
+	 */
+	protected List<Double> series;
+
+	/**
+	 * The minimum value in the series data.
+	 */
+	protected double minValue = Double.MAX_VALUE;
+
+	/**
+	 * The maximum value in the series data.
+	 */
+	protected double maxValue = -Double.MAX_VALUE;
+
+	/**
+	 * Tree of the minimum and maximum values of blocks of data points, or null
+	 * until a range of data points is first rewritten.
+	 */
+	protected JChartPanelMinMaxTree minMaxTree;
+
+	/**
+	 * The number of times ranges of data points were rewritten.
+	 */
+	protected int updateCount;
+
+	/**
+	 * Constructor for the list series storage.
+	 * 
+	 * @param series
+	 *            - the series data points
+	 */
+	public JChartPanelListSeriesStorage(List<Double> series)
+	{
+		this.series = series;
+
+		int n = series.size();
+
+		for (int i = 0 ; i < n ; ++i)
+			include(series.get(i));
+	}
+
+	/**
+	 * Returns the list of data points wrapped by this storage.
+	 * 
+	 * @return - the series data points
+	 */
+	public List<Double> getSeries()
+	{
+		return series;
+	}
+
+	@Override
+	public synchronized int size()
+	{
+		return series.size();
+	}
+
+	@Override
+	public synchronized double get(int index)
+	{
+		return series.get(index);
+	}
+
+	@Override
+	public synchronized double getMinValue()
+	{
+		return minValue;
+	}
+
+	@Override
+	public synchronized double getMaxValue()
+	{
+		return maxValue;
+	}
+
+	@Override
+	public synchronized void getRangeMinMax(int fromIndex, int toIndex, double[] minMax)
+	{
+		double min = Double.MAX_VALUE;
+		double max = -Double.MAX_VALUE;
+
+		for (int i = fromIndex ; i < toIndex ; ++i)
+		{
+			double v = series.get(i);
+
+			if (v < min)
+				min = v;
+
+			if (v > max)
+				max = v;
+		}
+
+		minMax[0] = min;
+		minMax[1] = max;
+	}
+
+	@Override
+	public synchronized void append(double value)
+	{
+		series.add(value);
+		include(value);
+
+		if (minMaxTree != null)
+			minMaxTree.include(series.size() - 1, value);
+	}
+
+	@Override
+	public synchronized void setRange(int fromIndex, double[] values, int offset, int length)
+	{
+		if (fromIndex < 0 || length < 0 || fromIndex + length > series.size())
+			throw new IndexOutOfBoundsException(
+					"Range: " + fromIndex + "-" + (fromIndex + length) + ", Size: " + series.size());
+
+		if (length == 0)
+			return;
+
+		for (int i = 0 ; i < length ; ++i)
+			series.set(fromIndex + i, values[offset + i]);
+
+		if (minMaxTree == null)
+			minMaxTree = new JChartPanelMinMaxTree(this);
+		else
+			minMaxTree.update(this, fromIndex, fromIndex + length);
+
+		minValue = minMaxTree.getMinValue();
+		maxValue = minMaxTree.getMaxValue();
+
+		++updateCount;
+	}
+
+	@Override
+	public synchronized int getUpdateCount()
+	{
+		return updateCount;
+	}
+
+	/**
+	 * Updates the minimum and maximum value with the given data point.
+	 * 
+	 * @param v
+	 *            - the value of the data point
+	 */
+	protected void include(double v)
+	{
+		if (v < minValue)
+			minValue = v;
+
+		if (v > maxValue)
+			maxValue = v;
+	}
+}
@@ -0,0 +1,540 @@
+package com.ryanantkowiak.jchartpanel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Command-line tool that reads a raw series file once and writes a level of
+ * detail (LOD) sidecar file next to it, which JChartPanelLodSeriesStorage maps
+ * into memory to open the series without reading all of its data points.
+ * 
+ * The raw series file holds the values of the data points as 8-byte big-endian
+ * doubles, with no header. The sidecar file holds, in big-endian byte order:
+ * a header of HEADER_SIZE bytes; the entries of each level, where an entry is
+ * the minimum (double), maximum (double), number of data points (long), mean
+ * (double) and sum of squared deviations from the mean (double) of a span of
+ * the series; and a table of the byte offset in the raw file of each
+ * chunk of CHUNK_SIZE data points. An entry at level 0 spans BASE_SIZE data
+ * points, and an entry at level L spans FANOUT entries of level L - 1. The top
+ * level has a single entry.
+ * 
+ * The header holds the magic number, the version, the number of data points,
+ * the base size, the fanout, the chunk size, the number of levels, the minimum
+ * and maximum value of the series, the entry count and byte offset of each of
+ * up to MAX_LEVELS levels, then the byte offset and length of the chunk table.
+ * 
+ * @author antko
+ *
+ */
+public class JChartPanelLodBuilder
+{
+	/**
+	 * Magic number at the start of a sidecar file ("JCPL").
+	 */
+	public static final int MAGIC = 0x4A43504C;
+
+	/**
+	 * Version of the sidecar file format.
+	 */
+	public static final int VERSION = 2;
+
+	/**
+	 * Number of data points spanned by an entry at level 0.
+	 */
+	public static final int BASE_SIZE = 256;
+
+	/**
+	 * Number of entries of a level spanned by an entry of the level above.
+	 */
+	public static final int FANOUT = 8;
+
+	/**
+	 * Number of data points in a chunk of the raw file.
+	 */
+	public static final int CHUNK_SIZE = 65536;
+
+	/**
+	 * Maximum number of levels in a sidecar file.
+	 */
+	public static final int MAX_LEVELS = 32;
+
+	/**
+	 * Size, in bytes, of an entry of a level.
+	 */
+	public static final int ENTRY_SIZE = 40;
+
+	/**
+	 * Byte offset of the level table in the header.
+	 */
+	public static final int LEVEL_TABLE_OFFSET = 48;
+
+	/**
+	 * Size, in bytes, of the header of a sidecar file.
+	 */
+	public static final int HEADER_SIZE = LEVEL_TABLE_OFFSET + 16 * MAX_LEVELS + 16;
+
+	/**
+	 * Size, in bytes, of the buffers used to read and write the files.
+	 */
+	protected static final int BUFFER_SIZE = 1 << 20;
+
+	/**
+	 * The number of entries of each level.
+	 */
+	protected long[] entryCounts = new long[MAX_LEVELS];
+
+	/**
+	 * The entries of each level above level 0, which are written once all the
+	 * data points have been read: the minimum, maximum and count of each entry.
+	 */
+	protected double[][] entryMin = new double[MAX_LEVELS][];
+
+	/**
+	 * The maximum of each entry of each level above level 0.
+	 */
+	protected double[][] entryMax = new double[MAX_LEVELS][];
+
+	/**
+	 * The number of data points of each entry of each level above level 0.
+	 */
+	protected long[][] entryCount = new long[MAX_LEVELS][];
+
+	/**
+	 * The mean of each entry of each level above level 0.
+	 */
+	protected double[][] entryMean = new double[MAX_LEVELS][];
+
+	/**
+	 * The sum of squared deviations from the mean of each entry of each level
+	 * above level 0.
+	 */
+	protected double[][] entrySquaredDeviations = new double[MAX_LEVELS][];
+
+	/**
+	 * The minimum of the entry being accumulated at each level.
+	 */
+	protected double[] accumulatedMin = new double[MAX_LEVELS];
+
+	/**
+	 * The maximum of the entry being accumulated at each level.
+	 */
+	protected double[] accumulatedMax = new double[MAX_LEVELS];
+
+	/**
+	 * The number of data points of the entry being accumulated at each level.
+	 */
+	protected long[] accumulatedCount = new long[MAX_LEVELS];
+
+	/**
+	 * The mean of the entry being accumulated at each level. A running mean keeps
+	 * its precision for series far from zero, where a running sum would not.
+	 */
+	protected double[] accumulatedMean = new double[MAX_LEVELS];
+
+	/**
+	 * The sum of squared deviations from the mean of the entry being accumulated
+	 * at each level.
+	 */
+	protected double[] accumulatedSquaredDeviations = new double[MAX_LEVELS];
+
+	/**
+	 * The number of data points (at level 0) or entries of the level below (above
+	 * level 0) folded into the entry being accumulated at each level.
+	 */
+	protected int[] accumulatedChildren = new int[MAX_LEVELS];
+
+	/**
+	 * Buffer of entries and offsets waiting to be written to the sidecar file.
+	 */
+	protected ByteBuffer writeBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+	/**
+	 * The channel of the sidecar file being written.
+	 */
+	protected FileChannel out;
+
+	/**
+	 * Construct a JChartPanelLodBuilder object.
+	 */
+	public JChartPanelLodBuilder()
+	{
+		for (int level = 1 ; level < MAX_LEVELS ; ++level)
+		{
+			entryMin[level] = new double[16];
+			entryMax[level] = new double[16];
+			entryCount[level] = new long[16];
+			entryMean[level] = new double[16];
+			entrySquaredDeviations[level] = new double[16];
+		}
+	}
+
+	/**
+	 * Returns the sidecar file used for a raw series file by default.
+	 * 
+	 * @param rawFile
+	 *            - the raw series file
+	 * @return - the sidecar file, named after the raw file with ".lod" appended
+	 */
+	public static File getSidecarFile(File rawFile)
+	{
+		return new File(rawFile.getPath() + ".lod");
+	}
+
+	/**
+	 * Reads a raw series file and writes its sidecar file.
+	 * 
+	 * @param rawFile
+	 *            - the raw series file to read
+	 * @param sidecarFile
+	 *            - the sidecar file to write
+	 * @return - the number of data points of the series
+	 * @throws IOException
+	 *             - if the raw file cannot be read or the sidecar file cannot be
+	 *             written
+	 */
+	public long build(File rawFile, File sidecarFile) throws IOException
+	{
+		Arrays.fill(entryCounts, 0);
+
+		for (int level = 0 ; level < MAX_LEVELS ; ++level)
+			resetAccumulator(level);
+
+		RandomAccessFile rawAccess = new RandomAccessFile(rawFile, "r");
+		RandomAccessFile sidecarAccess = new RandomAccessFile(sidecarFile, "rw");
+
+		try
+		{
+			FileChannel in = rawAccess.getChannel();
+			out = sidecarAccess.getChannel();
+			out.truncate(0);
+			out.position(HEADER_SIZE);
+
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			long sampleCount = 0;
+			double minValue = Double.MAX_VALUE;
+			double maxValue = -Double.MAX_VALUE;
+
+			// Stream the raw file once, accumulating each level as entries complete
+			while (in.read(buffer) >= 0)
+			{
+				buffer.flip();
+
+				while (buffer.remaining() >= 8)
+				{
+					double v = buffer.getDouble();
+
+					if (v < minValue)
+						minValue = v;
+
+					if (v > maxValue)
+						maxValue = v;
+
+					if (v < accumulatedMin[0])
+						accumulatedMin[0] = v;
+
+					if (v > accumulatedMax[0])
+						accumulatedMax[0] = v;
+
+					// Welford's update of the mean and sum of squared deviations
+					double delta = v - accumulatedMean[0];
+
+					accumulatedMean[0] += delta / ++accumulatedCount[0];
+					accumulatedSquaredDeviations[0] += delta * (v - accumulatedMean[0]);
+					++sampleCount;
+
+					if (++accumulatedChildren[0] == BASE_SIZE)
+						emitAccumulator(0);
+				}
+
+				buffer.compact();
+			}
+
+			// Emit the partial entries at the end of each level, up to the level with a
+			// single entry
+			int levelCount = 1;
+
+			for (int level = 0 ; level < MAX_LEVELS ; ++level)
+			{
+				if (accumulatedChildren[level] > 0)
+					emitAccumulator(level);
+
+				if (entryCounts[level] <= 1)
+				{
+					levelCount = level + 1;
+					break;
+				}
+			}
+
+			flush();
+
+			// Write the levels above level 0, then the chunk table
+			long[] levelOffsets = new long[levelCount];
+			levelOffsets[0] = HEADER_SIZE;
+
+			for (int level = 1 ; level < levelCount ; ++level)
+			{
+				levelOffsets[level] = out.position();
+
+				for (int i = 0 ; i < entryCounts[level] ; ++i)
+					putEntry(entryMin[level][i], entryMax[level][i], entryCount[level][i], entryMean[level][i],
+							entrySquaredDeviations[level][i]);
+
+				flush();
+			}
+
+			long chunkTableOffset = out.position();
+			long chunkCount = (sampleCount + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+			for (long chunk = 0 ; chunk < chunkCount ; ++chunk)
+			{
+				if (writeBuffer.remaining() < 8)
+					flush();
+
+				writeBuffer.putLong(chunk * CHUNK_SIZE * 8);
+			}
+
+			flush();
+
+			// Write the header last, once everything it describes is known
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC);
+			header.putInt(VERSION);
+			header.putLong(sampleCount);
+			header.putInt(BASE_SIZE);
+			header.putInt(FANOUT);
+			header.putInt(CHUNK_SIZE);
+			header.putInt(levelCount);
+			header.putDouble(sampleCount > 0 ? minValue : 0.0);
+			header.putDouble(sampleCount > 0 ? maxValue : 0.0);
+
+			for (int level = 0 ; level < MAX_LEVELS ; ++level)
+			{
+				header.putLong(level < levelCount ? entryCounts[level] : 0);
+				header.putLong(level < levelCount ? levelOffsets[level] : 0);
+			}
+
+			header.putLong(chunkTableOffset);
+			header.putLong(chunkCount);
+			header.flip();
+
+			while (header.hasRemaining())
+				out.write(header, header.position());
+
+			return sampleCount;
+		}
+		finally
+		{
+			rawAccess.close();
+			sidecarAccess.close();
+		}
+	}
+
+	/**
+	 * Emits the entry accumulated at a level, and folds it into the entry being
+	 * accumulated at the level above.
+	 * 
+	 * @param level
+	 *            - the level of the entry
+	 * @throws IOException
+	 *             - if the entry cannot be written
+	 */
+	protected void emitAccumulator(int level) throws IOException
+	{
+		double min = accumulatedMin[level];
+		double max = accumulatedMax[level];
+		long count = accumulatedCount[level];
+		double mean = accumulatedMean[level];
+		double squaredDeviations = accumulatedSquaredDeviations[level];
+
+		resetAccumulator(level);
+
+		if (level == 0)
+		{
+			putEntry(min, max, count, mean, squaredDeviations);
+		}
+		else
+		{
+			int i = (int) entryCounts[level];
+
+			if (i == entryMin[level].length)
+			{
+				entryMin[level] = Arrays.copyOf(entryMin[level], i * 2);
+				entryMax[level] = Arrays.copyOf(entryMax[level], i * 2);
+				entryCount[level] = Arrays.copyOf(entryCount[level], i * 2);
+				entryMean[level] = Arrays.copyOf(entryMean[level], i * 2);
+				entrySquaredDeviations[level] = Arrays.copyOf(entrySquaredDeviations[level], i * 2);
+			}
+
+			entryMin[level][i] = min;
+			entryMax[level][i] = max;
+			entryCount[level][i] = count;
+			entryMean[level][i] = mean;
+			entrySquaredDeviations[level][i] = squaredDeviations;
+		}
+
+		++entryCounts[level];
+
+		if (level + 1 < MAX_LEVELS)
+		{
+			accumulatedMin[level + 1] = Math.min(accumulatedMin[level + 1], min);
+			accumulatedMax[level + 1] = Math.max(accumulatedMax[level + 1], max);
+			accumulatedSquaredDeviations[level + 1] = combineSquaredDeviations(accumulatedCount[level + 1],
+					accumulatedMean[level + 1], accumulatedSquaredDeviations[level + 1], count, mean,
+					squaredDeviations);
+			accumulatedMean[level + 1] = combineMean(accumulatedCount[level + 1], accumulatedMean[level + 1], count,
+					mean);
+			accumulatedCount[level + 1] += count;
+
+			if (++accumulatedChildren[level + 1] == FANOUT)
+				emitAccumulator(level + 1);
+		}
+	}
+
+	/**
+	 * Clears the entry being accumulated at a level.
+	 * 
+	 * @param level
+	 *            - the level
+	 */
+	protected void resetAccumulator(int level)
+	{
+		accumulatedMin[level] = Double.MAX_VALUE;
+		accumulatedMax[level] = -Double.MAX_VALUE;
+		accumulatedCount[level] = 0;
+		accumulatedMean[level] = 0.0;
+		accumulatedSquaredDeviations[level] = 0.0;
+		accumulatedChildren[level] = 0;
+	}
+
+	/**
+	 * Returns the mean of two sets of data points taken together.
+	 * 
+	 * @param countA
+	 *            - the number of data points of the first set
+	 * @param meanA
+	 *            - the mean of the first set
+	 * @param countB
+	 *            - the number of data points of the second set
+	 * @param meanB
+	 *            - the mean of the second set
+	 * @return - the mean of both sets
+	 */
+	public static double combineMean(long countA, double meanA, long countB, double meanB)
+	{
+		if (countA + countB == 0)
+			return 0.0;
+
+		return meanA + (meanB - meanA) * countB / (countA + countB);
+	}
+
+	/**
+	 * Returns the sum of squared deviations from the mean of two sets of data
+	 * points taken together, from the count, mean and sum of squared deviations of
+	 * each set. Unlike a sum of squares, this does not lose precision when the
+	 * deviations are small compared to the values.
+	 * 
+	 * @param countA
+	 *            - the number of data points of the first set
+	 * @param meanA
+	 *            - the mean of the first set
+	 * @param squaredDeviationsA
+	 *            - the sum of squared deviations of the first set
+	 * @param countB
+	 *            - the number of data points of the second set
+	 * @param meanB
+	 *            - the mean of the second set
+	 * @param squaredDeviationsB
+	 *            - the sum of squared deviations of the second set
+	 * @return - the sum of squared deviations of both sets
+	 */
+	public static double combineSquaredDeviations(long countA, double meanA, double squaredDeviationsA, long countB,
+			double meanB, double squaredDeviationsB)
+	{
+		if (countA == 0)
+			return squaredDeviationsB;
+
+		if (countB == 0)
+			return squaredDeviationsA;
+
+		double delta = meanB - meanA;
+
+		return squaredDeviationsA + squaredDeviationsB + delta * delta * countA * countB / (countA + countB);
+	}
+
+	/**
+	 * Adds an entry to the write buffer, writing the buffer first if it is full.
+	 * 
+	 * @param min
+	 *            - the minimum of the entry
+	 * @param max
+	 *            - the maximum of the entry
+	 * @param count
+	 *            - the number of data points of the entry
+	 * @param mean
+	 *            - the mean of the entry
+	 * @param squaredDeviations
+	 *            - the sum of squared deviations from the mean of the entry
+	 * @throws IOException
+	 *             - if the buffer cannot be written
+	 */
+	protected void putEntry(double min, double max, long count, double mean, double squaredDeviations)
+			throws IOException
+	{
+		if (writeBuffer.remaining() < ENTRY_SIZE)
+			flush();
+
+		writeBuffer.putDouble(min);
+		writeBuffer.putDouble(max);
+		writeBuffer.putLong(count);
+		writeBuffer.putDouble(mean);
+		writeBuffer.putDouble(squaredDeviations);
+	}
+
+	/**
+	 * Writes the write buffer at the current position of the sidecar file.
+	 * 
+	 * @throws IOException
+	 *             - if the buffer cannot be written
+	 */
+	protected void flush() throws IOException
+	{
+		writeBuffer.flip();
+
+		while (writeBuffer.hasRemaining())
+			out.write(writeBuffer);
+
+		writeBuffer.clear();
+	}
+
+	/**
+	 * Builds the sidecar file of a raw series file.
+	 * 
+	 * @param args
+	 *            - the raw series file, and optionally the sidecar file to write
+	 *            (by default the raw file name with ".lod" appended)
+	 * @throws IOException
+	 *             - if the raw file cannot be read or the sidecar file cannot be
+	 *             written
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 1)
+		{
+			System.err.println("Usage: JChartPanelLodBuilder rawFile [sidecarFile]");
+			return;
+		}
+
+		File rawFile = new File(args[0]);
+		File sidecarFile = args.length > 1 ? new File(args[1]) : getSidecarFile(rawFile);
+
+		long start = System.currentTimeMillis();
+		long sampleCount = new JChartPanelLodBuilder().build(rawFile, sidecarFile);
+
+		System.out.println("Wrote " + sidecarFile + " for " + sampleCount + " data points in "
+				+ (System.currentTimeMillis() - start) + " ms");
+	}
+}
@@ -0,0 +1,432 @@
+package com.ryanantkowiak.jchartpanel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only series storage that maps a raw series file and its level of detail
+ * sidecar file (written by JChartPanelLodBuilder) into memory. Opening the
+ * storage only reads the header of the sidecar file: the minimum and maximum
+ * value of the series come from the header, and range queries are answered
+ * from the aggregates of the largest spans in the range, so drawing a series
+ * of any length only touches a few entries per pixel column. Statistics of a
+ * range are answered the same way, from the count, mean and sum of squared
+ * deviations kept with each entry.
+ * 
+ * Files larger than 2GB are mapped in several segments.
+ * 
+ * @author antko
+ *
+ */
+public class JChartPanelLodSeriesStorage implements JChartPanelSummarizedSeriesStorage
+{
+	/**
+	 * Size, in bytes, of each mapped segment of a file. A multiple of 8, so that
+	 * an 8-byte value never straddles two segments.
+	 */
+	protected static final long SEGMENT_SIZE = 1L << 30;
+
+	/**
+	 * A file mapped into memory in segments.
+	 * 
+	 * @author antko
+	 *
+	 */
+	protected static class MappedFile
+	{
+		/**
+		 * The mapped segments of the file.
+		 */
+		protected final MappedByteBuffer[] segments;
+
+		/**
+		 * The size of the file in bytes.
+		 */
+		protected final long size;
+
+		/**
+		 * Construct a MappedFile object, mapping the whole file read-only.
+		 * 
+		 * @param file
+		 *            - the file to map
+		 * @throws IOException
+		 *             - if the file cannot be mapped
+		 */
+		protected MappedFile(File file) throws IOException
+		{
+			RandomAccessFile access = new RandomAccessFile(file, "r");
+
+			try
+			{
+				FileChannel channel = access.getChannel();
+				size = channel.size();
+
+				segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+
+				for (int i = 0 ; i < segments.length ; ++i)
+				{
+					long position = i * SEGMENT_SIZE;
+					segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+							Math.min(SEGMENT_SIZE, size - position));
+				}
+			}
+			finally
+			{
+				// The mappings remain valid after the file is closed
+				access.close();
+			}
+		}
+
+		/**
+		 * Reads a double at an 8-byte aligned position of the file.
+		 * 
+		 * @param position
+		 *            - the byte position in the file
+		 * @return - the value
+		 */
+		protected double getDouble(long position)
+		{
+			return segments[(int) (position / SEGMENT_SIZE)].getDouble((int) (position % SEGMENT_SIZE));
+		}
+
+		/**
+		 * Reads a long at an 8-byte aligned position of the file.
+		 * 
+		 * @param position
+		 *            - the byte position in the file
+		 * @return - the value
+		 */
+		protected long getLong(long position)
+		{
+			return segments[(int) (position / SEGMENT_SIZE)].getLong((int) (position % SEGMENT_SIZE));
+		}
+
+		/**
+		 * Reads an int at a 4-byte aligned position of the file.
+		 * 
+		 * @param position
+		 *            - the byte position in the file
+		 * @return - the value
+		 */
+		protected int getInt(long position)
+		{
+			return segments[(int) (position / SEGMENT_SIZE)].getInt((int) (position % SEGMENT_SIZE));
+		}
+	}
+
+	/**
+	 * The mapped raw series file.
+	 */
+	protected final MappedFile raw;
+
+	/**
+	 * The mapped sidecar file.
+	 */
+	protected final MappedFile sidecar;
+
+	/**
+	 * The number of data points in the series.
+	 */
+	protected final int size;
+
+	/**
+	 * The minimum value in the series data.
+	 */
+	protected final double minValue;
+
+	/**
+	 * The maximum value in the series data.
+	 */
+	protected final double maxValue;
+
+	/**
+	 * The number of levels in the sidecar file.
+	 */
+	protected final int levelCount;
+
+	/**
+	 * The number of data points spanned by an entry of each level.
+	 */
+	protected final long[] levelSpans;
+
+	/**
+	 * The byte offset in the sidecar file of the entries of each level.
+	 */
+	protected final long[] levelOffsets;
+
+	/**
+	 * The number of data points in a chunk of the raw file.
+	 */
+	protected final int chunkSize;
+
+	/**
+	 * The byte offset in the sidecar file of the table of chunk offsets in the raw
+	 * file.
+	 */
+	protected final long chunkTableOffset;
+
+	/**
+	 * Construct a JChartPanelLodSeriesStorage for a raw series file and its
+	 * sidecar file, named after the raw file with ".lod" appended.
+	 * 
+	 * @param rawFile
+	 *            - the raw series file
+	 * @throws IOException
+	 *             - if the files cannot be mapped, or the sidecar file is not
+	 *             valid or does not match the raw file
+	 */
+	public JChartPanelLodSeriesStorage(File rawFile) throws IOException
+	{
+		this(rawFile, JChartPanelLodBuilder.getSidecarFile(rawFile));
+	}
+
+	/**
+	 * Construct a JChartPanelLodSeriesStorage for a raw series file and its
+	 * sidecar file.
+	 * 
+	 * @param rawFile
+	 *            - the raw series file
+	 * @param sidecarFile
+	 *            - the sidecar file
+	 * @throws IOException
+	 *             - if the files cannot be mapped, or the sidecar file is not
+	 *             valid or does not match the raw file
+	 */
+	public JChartPanelLodSeriesStorage(File rawFile, File sidecarFile) throws IOException
+	{
+		sidecar = new MappedFile(sidecarFile);
+
+		if (sidecar.segments.length == 0 || sidecar.getInt(0) != JChartPanelLodBuilder.MAGIC)
+			throw new IOException("Not a JChartPanel LOD file: " + sidecarFile);
+
+		if (sidecar.getInt(4) != JChartPanelLodBuilder.VERSION)
+			throw new IOException("Unsupported JChartPanel LOD file version: " + sidecar.getInt(4));
+
+		long sampleCount = sidecar.getLong(8);
+
+		if (sampleCount < 0 || sampleCount > Integer.MAX_VALUE)
+			throw new IOException("Invalid number of data points in JChartPanel LOD file: " + sampleCount);
+
+		size = (int) sampleCount;
+		levelCount = sidecar.getInt(28);
+
+		if (levelCount <= 0 || levelCount > JChartPanelLodBuilder.MAX_LEVELS)
+			throw new IOException("Invalid number of levels in JChartPanel LOD file: " + levelCount);
+
+		int baseSize = sidecar.getInt(16);
+		int fanout = sidecar.getInt(20);
+		chunkSize = sidecar.getInt(24);
+
+		if (baseSize <= 0 || fanout <= 0 || chunkSize <= 0)
+			throw new IOException("Invalid level layout in JChartPanel LOD file: base size " + baseSize + ", fanout "
+					+ fanout + ", chunk size " + chunkSize);
+
+		minValue = sidecar.getDouble(32);
+		maxValue = sidecar.getDouble(40);
+
+		levelSpans = new long[levelCount];
+		levelOffsets = new long[levelCount];
+
+		for (int level = 0 ; level < levelCount ; ++level)
+		{
+			levelSpans[level] = level == 0 ? baseSize : levelSpans[level - 1] * fanout;
+			levelOffsets[level] = sidecar.getLong(JChartPanelLodBuilder.LEVEL_TABLE_OFFSET + 16 * level + 8);
+		}
+
+		chunkTableOffset = sidecar
+				.getLong(JChartPanelLodBuilder.LEVEL_TABLE_OFFSET + 16 * JChartPanelLodBuilder.MAX_LEVELS);
+		raw = new MappedFile(rawFile);
+
+		// A truncated raw file, or a sidecar file left from an earlier version of it
+		if (raw.size != sampleCount * 8)
+			throw new IOException("Raw series file " + rawFile + " has " + raw.size + " bytes, the sidecar file "
+					+ sidecarFile + " describes " + sampleCount + " data points");
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	@Override
+	public double get(int index)
+	{
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+
+		return raw.getDouble(rawPosition(index));
+	}
+
+	@Override
+	public double getMinValue()
+	{
+		return minValue;
+	}
+
+	@Override
+	public double getMaxValue()
+	{
+		return maxValue;
+	}
+
+	@Override
+	public void getRangeMinMax(int fromIndex, int toIndex, double[] minMax)
+	{
+		double min = Double.MAX_VALUE;
+		double max = -Double.MAX_VALUE;
+		long i = fromIndex;
+
+		while (i < toIndex)
+		{
+			int level = getLevelAt(i, toIndex);
+
+			if (level >= 0)
+			{
+				long entry = getEntryPosition(level, i);
+
+				min = Math.min(min, sidecar.getDouble(entry));
+				max = Math.max(max, sidecar.getDouble(entry + 8));
+				i += levelSpans[level];
+			}
+			else
+			{
+				// Read the data points up to the next entry boundary
+				long end = Math.min(toIndex, (i / levelSpans[0] + 1) * levelSpans[0]);
+
+				for ( ; i < end ; ++i)
+				{
+					double v = raw.getDouble(rawPosition(i));
+
+					if (v < min)
+						min = v;
+
+					if (v > max)
+						max = v;
+				}
+			}
+		}
+
+		minMax[0] = min;
+		minMax[1] = max;
+	}
+
+	@Override
+	public JChartPanelRangeStatistics.Summary getRangeSummary(int fromIndex, int toIndex)
+	{
+		fromIndex = Math.max(0, fromIndex);
+		toIndex = Math.min(size, toIndex);
+
+		if (fromIndex >= toIndex)
+			return null;
+
+		double min = Double.MAX_VALUE;
+		double max = -Double.MAX_VALUE;
+		long count = 0;
+		double mean = 0.0;
+		double squaredDeviations = 0.0;
+		long i = fromIndex;
+
+		while (i < toIndex)
+		{
+			int level = getLevelAt(i, toIndex);
+
+			if (level >= 0)
+			{
+				long entry = getEntryPosition(level, i);
+				long entryCount = sidecar.getLong(entry + 16);
+				double entryMean = sidecar.getDouble(entry + 24);
+
+				min = Math.min(min, sidecar.getDouble(entry));
+				max = Math.max(max, sidecar.getDouble(entry + 8));
+				squaredDeviations = JChartPanelLodBuilder.combineSquaredDeviations(count, mean, squaredDeviations,
+						entryCount, entryMean, sidecar.getDouble(entry + 32));
+				mean = JChartPanelLodBuilder.combineMean(count, mean, entryCount, entryMean);
+				count += entryCount;
+				i += levelSpans[level];
+			}
+			else
+			{
+				// Read the data points up to the next entry boundary
+				long end = Math.min(toIndex, (i / levelSpans[0] + 1) * levelSpans[0]);
+
+				for ( ; i < end ; ++i)
+				{
+					double v = raw.getDouble(rawPosition(i));
+					double delta = v - mean;
+
+					min = Math.min(min, v);
+					max = Math.max(max, v);
+					mean += delta / ++count;
+					squaredDeviations += delta * (v - mean);
+				}
+			}
+		}
+
+		return new JChartPanelRangeStatistics.Summary((int) count, min, max, mean * count, mean,
+				Math.sqrt(Math.max(0, squaredDeviations / count)));
+	}
+
+	/**
+	 * Returns the level of the largest span that starts at a data point and fits
+	 * in a range.
+	 * 
+	 * @param index
+	 *            - the index of the data point the span starts at
+	 * @param toIndex
+	 *            - the last index of the range (exclusive)
+	 * @return - the level of the span, or -1 if no entry starts at the data point
+	 *         and fits in the range
+	 */
+	protected int getLevelAt(long index, long toIndex)
+	{
+		int level = levelCount - 1;
+
+		while (level >= 0 && (index % levelSpans[level] != 0 || index + levelSpans[level] > toIndex))
+			--level;
+
+		return level;
+	}
+
+	/**
+	 * Returns the byte position in the sidecar file of the entry of a level that
+	 * holds a data point.
+	 * 
+	 * @param level
+	 *            - the level of the entry
+	 * @param index
+	 *            - the index of the data point
+	 * @return - the byte position of the entry
+	 */
+	protected long getEntryPosition(int level, long index)
+	{
+		return levelOffsets[level] + (index / levelSpans[level]) * JChartPanelLodBuilder.ENTRY_SIZE;
+	}
+
+	/**
+	 * Returns the byte position of a data point in the raw file, from the offset
+	 * of its chunk.
+	 * 
+	 * @param index
+	 *            - the index of the data point
+	 * @return - the byte position in the raw file
+	 */
+	protected long rawPosition(long index)
+	{
+		long chunkOffset = sidecar.getLong(chunkTableOffset + 8 * (index / chunkSize));
+
+		return chunkOffset + 8 * (index % chunkSize);
+	}
+
+	/**
+	 * The storage is read-only, so data points cannot be appended.
+	 */
+	@Override
+	public void append(double value)
+	{
+		throw new UnsupportedOperationException("A LOD series storage is read-only");
+	}
+}
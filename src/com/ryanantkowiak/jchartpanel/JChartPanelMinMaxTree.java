@@ -0,0 +1,202 @@
+package com.ryanantkowiak.jchartpanel;
+
+import java.util.Arrays;
+
+/**
+ * Tree of the minimum and maximum values of the blocks of a series storage,
+ * used by storages whose data points can be rewritten. Each leaf holds the
+ * minimum and maximum of a block of BLOCK_SIZE data points, and each node above
+ * holds those of its two children, so the minimum and maximum of the whole
+ * series are at the root. Rewriting a range of data points only reads the
+ * blocks of the range again, and updates the nodes above them.
+ * 
+ * @author antko
+ *
+ */
+public class JChartPanelMinMaxTree
+{
+	/**
+	 * Number of data points in a block.
+	 */
+	public static final int BLOCK_SIZE = 256;
+
+	/**
+	 * The number of leaves of the tree, a power of two.
+	 */
+	protected int leafCount;
+
+	/**
+	 * The minimum value of each node; node 1 is the root, the children of node n
+	 * are nodes 2n and 2n + 1, and the leaves start at node leafCount.
+	 */
+	protected double[] min;
+
+	/**
+	 * The maximum value of each node, laid out as the minimum values.
+	 */
+	protected double[] max;
+
+	/**
+	 * Buffer receiving the minimum and maximum of a block.
+	 */
+	protected final double[] minMax = new double[2];
+
+	/**
+	 * Construct a JChartPanelMinMaxTree object over the current data points of a
+	 * storage.
+	 * 
+	 * @param storage
+	 *            - the storage of the series data points
+	 */
+	public JChartPanelMinMaxTree(JChartPanelSeriesStorage storage)
+	{
+		int size = storage.size();
+
+		allocate(Math.max(1, (size + BLOCK_SIZE - 1) / BLOCK_SIZE));
+
+		for (int block = 0 ; block * BLOCK_SIZE < size ; ++block)
+		{
+			storage.getRangeMinMax(block * BLOCK_SIZE, Math.min(size, (block + 1) * BLOCK_SIZE), minMax);
+			min[leafCount + block] = minMax[0];
+			max[leafCount + block] = minMax[1];
+		}
+
+		for (int node = leafCount - 1 ; node > 0 ; --node)
+			combine(node);
+	}
+
+	/**
+	 * Returns the minimum value of the data points.
+	 * 
+	 * @return - the minimum value
+	 */
+	public double getMinValue()
+	{
+		return min[1];
+	}
+
+	/**
+	 * Returns the maximum value of the data points.
+	 * 
+	 * @return - the maximum value
+	 */
+	public double getMaxValue()
+	{
+		return max[1];
+	}
+
+	/**
+	 * Includes a data point appended to the storage.
+	 * 
+	 * @param index
+	 *            - the index of the data point
+	 * @param value
+	 *            - the value of the data point
+	 */
+	public void include(int index, double value)
+	{
+		int block = index / BLOCK_SIZE;
+
+		if (block >= leafCount)
+			grow(block + 1);
+
+		// Only the nodes whose minimum or maximum the value extends need to change
+		for (int node = leafCount + block ; node > 0 ; node >>= 1)
+		{
+			if (value >= min[node] && value <= max[node])
+				break;
+
+			min[node] = Math.min(min[node], value);
+			max[node] = Math.max(max[node], value);
+		}
+	}
+
+	/**
+	 * Reads the blocks of a rewritten range of data points of a storage again, and
+	 * updates the nodes above them.
+	 * 
+	 * @param storage
+	 *            - the storage of the series data points
+	 * @param fromIndex
+	 *            - the first index of the range (inclusive)
+	 * @param toIndex
+	 *            - the last index of the range (exclusive)
+	 */
+	public void update(JChartPanelSeriesStorage storage, int fromIndex, int toIndex)
+	{
+		if (fromIndex >= toIndex)
+			return;
+
+		int size = storage.size();
+		int firstBlock = fromIndex / BLOCK_SIZE;
+		int lastBlock = (toIndex - 1) / BLOCK_SIZE;
+
+		for (int block = firstBlock ; block <= lastBlock ; ++block)
+		{
+			storage.getRangeMinMax(block * BLOCK_SIZE, Math.min(size, (block + 1) * BLOCK_SIZE), minMax);
+			min[leafCount + block] = minMax[0];
+			max[leafCount + block] = minMax[1];
+		}
+
+		// Combine the nodes above the blocks, one level at a time
+		int from = (leafCount + firstBlock) >> 1;
+		int to = (leafCount + lastBlock) >> 1;
+
+		for ( ; from > 0 ; from >>= 1, to >>= 1)
+			for (int node = from ; node <= to ; ++node)
+				combine(node);
+	}
+
+	/**
+	 * Grows the tree to hold at least the given number of blocks.
+	 * 
+	 * @param blockCount
+	 *            - the number of blocks
+	 */
+	protected void grow(int blockCount)
+	{
+		double[] oldMin = min;
+		double[] oldMax = max;
+		int oldLeafCount = leafCount;
+
+		allocate(blockCount);
+
+		System.arraycopy(oldMin, oldLeafCount, min, leafCount, oldLeafCount);
+		System.arraycopy(oldMax, oldLeafCount, max, leafCount, oldLeafCount);
+
+		for (int node = leafCount - 1 ; node > 0 ; --node)
+			combine(node);
+	}
+
+	/**
+	 * Allocates an empty tree with at least the given number of leaves.
+	 * 
+	 * @param blockCount
+	 *            - the number of blocks
+	 */
+	protected void allocate(int blockCount)
+	{
+		leafCount = Integer.highestOneBit(blockCount);
+
+		if (leafCount < blockCount)
+			leafCount <<= 1;
+
+		min = new double[2 * leafCount];
+		max = new double[2 * leafCount];
+
+		Arrays.fill(min, Double.MAX_VALUE);
+		Arrays.fill(max, -Double.MAX_VALUE);
+	}
+
+	/**
+	 * Sets the minimum and maximum of a node from those of its children.
+	 * 
+	 * @param node
+	 *            - the node
+	 */
+	protected void combine(int node)
+	{
+		min[node] = Math.min(min[2 * node], min[2 * node + 1]);
+		max[node] = Math.max(max[2 * node], max[2 * node + 1]);
+	}
+}
@@ -0,0 +1,631 @@
+package com.ryanantkowiak.jchartpanel;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the screen points of the data series of a chart panel,
+ * for a given size of the chart panel. Snapshots are calculated off the event
+ * dispatch thread and published as a whole, so painting only ever reads a
+ * finished snapshot.
+ * 
+ * Only the visible data series are placed. The snapshot also holds the bounding
+ * box of the screen points of each series, so that painting can skip the series
+ * that lie entirely outside the area being repainted, and the mapping between
+ * the data points of each series and the pixel columns, so that the values
+ * under the cursor are read from what was drawn. The hit index used to find the
+ * series near the cursor is built from the snapshot too, once, preferably by the
+ * thread that calculated it.
+ * 
+ * @author antko
+ *
+ */
+public class JChartPanelPlacementSnapshot
+{
+	/**
+	 * Immutable screen placement of one data series.
+	 * 
+	 * @author antko
+	 *
+	 */
+	public static class Series
+	{
+		/**
+		 * The storage of the raw data points.
+		 */
+		public final JChartPanelSeriesStorage storage;
+
+		/**
+		 * The storage of the raw data points, if the data points are timestamped,
+		 * or null if the data points are evenly spaced.
+		 */
+		public final JChartPanelTimestampedSeriesStorage timestampedStorage;
+
+		/**
+		 * The screen points of the data series.
+		 */
+		public final List<Point> points;
+
+		/**
+		 * The number of data points in the series data when it was placed.
+		 */
+		public final int seriesSize;
+
+		/**
+		 * The minimum value in the series data when it was placed.
+		 */
+		public final double minValue;
+
+		/**
+		 * The maximum value in the series data when it was placed.
+		 */
+		public final double maxValue;
+
+		/**
+		 * The width of the chart panel in pixels.
+		 */
+		public final int pixelWidth;
+
+		/**
+		 * The height of the chart panel in pixels.
+		 */
+		public final int pixelHeight;
+
+		/**
+		 * The amount of pixels per data point, for an evenly spaced series.
+		 */
+		public final double pixelsPerValue;
+
+		/**
+		 * The time at the left edge of the chart panel, for a timestamped series.
+		 */
+		public final long timeFrom;
+
+		/**
+		 * The amount of pixels per unit of time, for a timestamped series.
+		 */
+		public final double pixelsPerTime;
+
+		/**
+		 * The lower edge, median and upper edge of the percentile envelope of the
+		 * series, or null if the envelope is not drawn.
+		 */
+		public final int[][] envelope;
+
+		/**
+		 * The bounding box of the screen points, or null if there are none.
+		 */
+		protected final Rectangle bounds;
+
+		/**
+		 * Construct a Series object from the current state of a placement. The
+		 * caller must hold the lock of the placement.
+		 * 
+		 * @param placement
+		 *            - the placement of the data series
+		 * @param envelope
+		 *            - the percentile envelope of the series, or null if it is not
+		 *            drawn
+		 */
+		public Series(JChartPanelDataScreenPlacement placement, int[][] envelope)
+		{
+			this(placement, placement.chartPoints, envelope);
+		}
+
+		/**
+		 * Construct a Series object from the current state of a placement, with the
+		 * given screen points. The caller must hold the lock of the placement.
+		 * 
+		 * @param placement
+		 *            - the placement of the data series
+		 * @param points
+		 *            - the screen points of the data series; the list must not be
+		 *            modified afterwards
+		 * @param envelope
+		 *            - the percentile envelope of the series, or null if it is not
+		 *            drawn
+		 */
+		protected Series(JChartPanelDataScreenPlacement placement, List<Point> points, int[][] envelope)
+		{
+			this.storage = placement.storage;
+			this.timestampedStorage = placement.timestampedStorage;
+			this.points = Collections.unmodifiableList(points);
+			this.seriesSize = placement.seriesSize;
+			this.minValue = placement.minValue;
+			this.maxValue = placement.maxValue;
+			this.pixelWidth = placement.pixelWidth;
+			this.pixelHeight = placement.pixelHeight;
+			this.pixelsPerValue = placement.pixelsPerValue;
+			this.timeFrom = placement.timeFrom;
+			this.pixelsPerTime = placement.pixelsPerTime;
+			this.envelope = envelope;
+			this.bounds = getBounds(points);
+		}
+
+		/**
+		 * Construct a Series object from another one, with the given screen points.
+		 * 
+		 * @param other
+		 *            - the placement of the data series to copy
+		 * @param points
+		 *            - the screen points of the data series; the list must not be
+		 *            modified afterwards
+		 */
+		protected Series(Series other, List<Point> points)
+		{
+			this.storage = other.storage;
+			this.timestampedStorage = other.timestampedStorage;
+			this.points = Collections.unmodifiableList(points);
+			this.seriesSize = other.seriesSize;
+			this.minValue = other.minValue;
+			this.maxValue = other.maxValue;
+			this.pixelWidth = other.pixelWidth;
+			this.pixelHeight = other.pixelHeight;
+			this.pixelsPerValue = other.pixelsPerValue;
+			this.timeFrom = other.timeFrom;
+			this.pixelsPerTime = other.pixelsPerTime;
+			this.envelope = null;
+			this.bounds = getBounds(points);
+		}
+
+		/**
+		 * Returns the placement of the series after a range of its data points was
+		 * rewritten in the storage, with only the screen points of the pixel columns
+		 * that hold the rewritten data points recalculated. Reads the storage but not
+		 * the placement the series was calculated from, so it never waits for a
+		 * placement calculation in progress. The envelope is not recalculated, and
+		 * is left out of the returned placement.
+		 * 
+		 * @param fromIndex
+		 *            - the first index of the rewritten range (inclusive)
+		 * @param toIndex
+		 *            - the last index of the rewritten range (exclusive)
+		 * @param dirty
+		 *            - array of at least two elements, which receives the first
+		 *            and last pixel column whose drawing changed
+		 * @return - the updated placement, or null if the whole series must be
+		 *         placed again, because it is timestamped, its size or range of
+		 *         values changed, or the range is empty
+		 */
+		public Series updateRange(int fromIndex, int toIndex, int[] dirty)
+		{
+			if (timestampedStorage != null || points.isEmpty() || fromIndex >= toIndex
+					|| storage.size() != seriesSize || storage.getMinValue() != minValue
+					|| storage.getMaxValue() != maxValue)
+				return null;
+
+			List<Point> updated = new ArrayList<Point>(points);
+			int first;
+			int last;
+
+			if (seriesSize > JChartPanelDataScreenPlacement.DECIMATION_POINTS_PER_PIXEL * (pixelWidth + 1))
+			{
+				// Decimate the columns of the rewritten data points again, with a column of
+				// margin on either side for the rounding of the column boundaries
+				int fromColumn = Math.max(0, (int) (fromIndex * pixelsPerValue) - 1);
+				int toColumn = Math.min(pixelWidth, (int) ((toIndex - 1) * pixelsPerValue) + 1);
+				JChartPanelDecimation decimation = new JChartPanelDecimation(storage, 0, seriesSize, pixelWidth,
+						fromColumn, toColumn);
+
+				first = JChartPanelTiledRenderer.firstIndexAtOrAfter(updated, fromColumn);
+				last = JChartPanelTiledRenderer.firstIndexAtOrAfter(updated, toColumn + 1);
+
+				List<Point> replaced = new ArrayList<Point>(decimation.count);
+
+				for (int i = 0 ; i < decimation.count ; ++i)
+					replaced.add(new Point(decimation.columns[i], valueToPixelY(decimation.values[i])));
+
+				updated.subList(first, last).clear();
+				updated.addAll(first, replaced);
+				last = first + replaced.size();
+			}
+			else
+			{
+				if (updated.size() != seriesSize)
+					return null;
+
+				first = fromIndex;
+				last = toIndex;
+
+				for (int i = first ; i < last ; ++i)
+					updated.set(i, new Point(updated.get(i).x, valueToPixelY(storage.get(i))));
+			}
+
+			// The line segments to the screen points on either side of the changed ones
+			// change too
+			dirty[0] = updated.get(Math.max(0, first - 1)).x;
+			dirty[1] = updated.get(Math.min(updated.size() - 1, last)).x;
+
+			return new Series(this, updated);
+		}
+
+		/**
+		 * Calculates the y-coordinate on the chart panel of a value of the data
+		 * series, as the placement of the series does.
+		 * 
+		 * @param value
+		 *            - the value of a data point
+		 * @return - the y-coordinate, in pixels
+		 */
+		private int valueToPixelY(double value)
+		{
+			double yPctInRange = (value - minValue) / (maxValue - minValue);
+			double yCoord = pixelHeight - (yPctInRange * pixelHeight);
+
+			return (int) yCoord;
+		}
+
+		/**
+		 * Returns the index of the data point that is closest to the given
+		 * x-coordinate on the chart panel.
+		 * 
+		 * @param x
+		 *            - the x-coordinate, in pixels
+		 * @return - the index of the closest data point, or -1 if the series is
+		 *         empty
+		 */
+		public int getIndexAt(int x)
+		{
+			if (seriesSize < 1)
+				return -1;
+
+			if (timestampedStorage != null)
+				return Math.min(seriesSize - 1, timestampedStorage.indexClosestTo(getTimeAt(x)));
+
+			if (seriesSize == 1)
+				return 0;
+
+			int index = (int) Math.round(x / pixelsPerValue);
+
+			return Math.max(0, Math.min(seriesSize - 1, index));
+		}
+
+		/**
+		 * Returns the time on the time axis at the given x-coordinate on the chart
+		 * panel, for a timestamped series.
+		 * 
+		 * @param x
+		 *            - the x-coordinate, in pixels
+		 * @return - the time at the x-coordinate
+		 */
+		public long getTimeAt(int x)
+		{
+			if (pixelsPerTime <= 0.0)
+				return timeFrom;
+
+			return timeFrom + Math.round(x / pixelsPerTime);
+		}
+
+		/**
+		 * Returns true if any of the screen points lie within an area of the chart
+		 * panel.
+		 * 
+		 * @param area
+		 *            - the area of the chart panel, or null for the whole chart
+		 *            panel
+		 * @return - true if the bounding box of the screen points intersects the
+		 *         area
+		 */
+		public boolean intersects(Rectangle area)
+		{
+			return bounds != null && (area == null || bounds.intersects(area));
+		}
+
+		/**
+		 * Calculates the bounding box of a list of screen points.
+		 * 
+		 * @param p
+		 *            - the screen points
+		 * @return - the bounding box, or null if there are no screen points
+		 */
+		private static Rectangle getBounds(List<Point> p)
+		{
+			if (p.isEmpty())
+				return null;
+
+			int minX = Integer.MAX_VALUE;
+			int minY = Integer.MAX_VALUE;
+			int maxX = Integer.MIN_VALUE;
+			int maxY = Integer.MIN_VALUE;
+
+			for (Point pt : p)
+			{
+				minX = Math.min(minX, pt.x);
+				minY = Math.min(minY, pt.y);
+				maxX = Math.max(maxX, pt.x);
+				maxY = Math.max(maxY, pt.y);
+			}
+
+			return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+		}
+	}
+
+	/**
+	 * Immutable state of the data of a chart panel that a placement depends on: the
+	 * time axis, whether the hit index is built with the placement, and the size,
+	 * number of rewrites and envelope flag of each visible data series, in order.
+	 * Two states are compared exactly, so a placement is only reused for the very
+	 * data it was calculated from.
+	 * 
+	 * @author antko
+	 *
+	 */
+	public static class DataState
+	{
+		/**
+		 * The time at the left edge of the chart panel.
+		 */
+		protected final long timeFrom;
+
+		/**
+		 * The time at the right edge of the chart panel.
+		 */
+		protected final long timeTo;
+
+		/**
+		 * True if the hit index is built with the placement.
+		 */
+		protected final boolean withHitIndex;
+
+		/**
+		 * The placement of each visible data series.
+		 */
+		protected final JChartPanelDataScreenPlacement[] placements;
+
+		/**
+		 * The number of data points of each visible data series.
+		 */
+		protected final int[] sizes;
+
+		/**
+		 * The number of times ranges of data points of each visible data series were
+		 * rewritten.
+		 */
+		protected final int[] updateCounts;
+
+		/**
+		 * True for each visible data series whose envelope is drawn.
+		 */
+		protected final boolean[] envelopes;
+
+		/**
+		 * Construct a DataState object. The arrays must not be modified afterwards.
+		 * 
+		 * @param timeFrom
+		 *            - the time at the left edge of the chart panel
+		 * @param timeTo
+		 *            - the time at the right edge of the chart panel
+		 * @param withHitIndex
+		 *            - true if the hit index is built with the placement
+		 * @param placements
+		 *            - the placement of each visible data series
+		 * @param sizes
+		 *            - the number of data points of each visible data series
+		 * @param updateCounts
+		 *            - the number of rewrites of each visible data series
+		 * @param envelopes
+		 *            - true for each visible data series whose envelope is drawn
+		 */
+		public DataState(long timeFrom, long timeTo, boolean withHitIndex,
+				JChartPanelDataScreenPlacement[] placements, int[] sizes, int[] updateCounts, boolean[] envelopes)
+		{
+			this.timeFrom = timeFrom;
+			this.timeTo = timeTo;
+			this.withHitIndex = withHitIndex;
+			this.placements = placements;
+			this.sizes = sizes;
+			this.updateCounts = updateCounts;
+			this.envelopes = envelopes;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+
+			if (!(obj instanceof DataState))
+				return false;
+
+			DataState other = (DataState) obj;
+
+			// The placements are compared by identity
+			return timeFrom == other.timeFrom && timeTo == other.timeTo && withHitIndex == other.withHitIndex
+					&& Arrays.equals(placements, other.placements) && Arrays.equals(sizes, other.sizes)
+					&& Arrays.equals(updateCounts, other.updateCounts) && Arrays.equals(envelopes, other.envelopes);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return Arrays.hashCode(sizes) * 31 + Arrays.hashCode(updateCounts);
+		}
+	}
+
+	/**
+	 * The width of the chart panel in pixels, when the snapshot was calculated.
+	 */
+	public final int pixelWidth;
+
+	/**
+	 * The height of the chart panel in pixels, when the snapshot was calculated.
+	 */
+	public final int pixelHeight;
+
+	/**
+	 * The time at the left edge of the chart panel, when the snapshot was
+	 * calculated.
+	 */
+	public final long timeFrom;
+
+	/**
+	 * The time at the right edge of the chart panel, when the snapshot was
+	 * calculated.
+	 */
+	public final long timeTo;
+
+	/**
+	 * State of the data of the chart panel when the snapshot was calculated, used
+	 * to detect that the data has changed since.
+	 */
+	public final DataState dataState;
+
+	/**
+	 * The screen placement of each data series, by the placement of the series, in
+	 * the order in which the series were placed.
+	 */
+	protected final Map<JChartPanelDataScreenPlacement, Series> series;
+
+	/**
+	 * Index of the pixel columns covered by the placed data series, or null until
+	 * it is first needed.
+	 */
+	private JChartPanelHitIndex hitIndex;
+
+	/**
+	 * Construct a JChartPanelPlacementSnapshot object.
+	 * 
+	 * @param pixelWidth
+	 *            - the width of the chart panel in pixels
+	 * @param pixelHeight
+	 *            - the height of the chart panel in pixels
+	 * @param timeFrom
+	 *            - the time at the left edge of the chart panel
+	 * @param timeTo
+	 *            - the time at the right edge of the chart panel
+	 * @param dataState
+	 *            - state of the data of the chart panel
+	 * @param series
+	 *            - the screen placement of each data series, by the placement of
+	 *            the series, in the order in which they were placed
+	 */
+	public JChartPanelPlacementSnapshot(int pixelWidth, int pixelHeight, long timeFrom, long timeTo,
+			DataState dataState, Map<JChartPanelDataScreenPlacement, Series> series)
+	{
+		this.pixelWidth = pixelWidth;
+		this.pixelHeight = pixelHeight;
+		this.timeFrom = timeFrom;
+		this.timeTo = timeTo;
+		this.dataState = dataState;
+		this.series = new LinkedHashMap<JChartPanelDataScreenPlacement, Series>(series);
+	}
+
+	/**
+	 * Construct a JChartPanelPlacementSnapshot object that is a copy of another
+	 * snapshot, except for the screen placement of one data series.
+	 * 
+	 * @param other
+	 *            - the snapshot to copy
+	 * @param dataState
+	 *            - state of the data of the chart panel
+	 * @param placement
+	 *            - the placement of the data series whose screen placement changed
+	 * @param placed
+	 *            - the new screen placement of the data series
+	 */
+	public JChartPanelPlacementSnapshot(JChartPanelPlacementSnapshot other, DataState dataState,
+			JChartPanelDataScreenPlacement placement, Series placed)
+	{
+		this.pixelWidth = other.pixelWidth;
+		this.pixelHeight = other.pixelHeight;
+		this.timeFrom = other.timeFrom;
+		this.timeTo = other.timeTo;
+		this.dataState = dataState;
+		this.series = new LinkedHashMap<JChartPanelDataScreenPlacement, Series>(other.series);
+
+		series.put(placement, placed);
+
+		// Update the hit index of the other snapshot for the one series, rather than
+		// building it again
+		synchronized (other)
+		{
+			if (other.hitIndex != null && other.series.containsKey(placement))
+				hitIndex = new JChartPanelHitIndex(other.hitIndex, getPlacements().indexOf(placement), placed.points);
+		}
+	}
+
+	/**
+	 * Returns the screen placement of a data series.
+	 * 
+	 * @param placement
+	 *            - the placement of the data series
+	 * @return - the screen placement, or null if the series was not placed when
+	 *         the snapshot was calculated
+	 */
+	public Series getSeries(JChartPanelDataScreenPlacement placement)
+	{
+		return series.get(placement);
+	}
+
+	/**
+	 * Returns the placements of the placed data series, in the order of the hit
+	 * index.
+	 * 
+	 * @return - the placements of the data series
+	 */
+	public List<JChartPanelDataScreenPlacement> getPlacements()
+	{
+		return new ArrayList<JChartPanelDataScreenPlacement>(series.keySet());
+	}
+
+	/**
+	 * Returns the index of the pixel columns covered by the placed data series,
+	 * used to find the series that pass near a point. The index is built on the
+	 * first call.
+	 * 
+	 * @return - the hit index, whose positions are those of getPlacements()
+	 */
+	public synchronized JChartPanelHitIndex getHitIndex()
+	{
+		if (hitIndex == null)
+		{
+			List<List<Point>> pointLists = new ArrayList<List<Point>>(series.size());
+
+			for (Series s : series.values())
+				pointLists.add(s.points);
+
+			hitIndex = new JChartPanelHitIndex(pixelWidth, pointLists);
+		}
+
+		return hitIndex;
+	}
+
+	/**
+	 * Returns the screen points of a data series.
+	 * 
+	 * @param placement
+	 *            - the placement of the data series
+	 * @return - the screen points, or an empty list if the series was not part of
+	 *         the chart panel when the snapshot was calculated
+	 */
+	public List<Point> getPoints(JChartPanelDataScreenPlacement placement)
+	{
+		Series s = series.get(placement);
+
+		return s == null ? Collections.<Point> emptyList() : s.points;
+	}
+
+	/**
+	 * Returns true if any of the screen points of a data series lie within an area
+	 * of the chart panel.
+	 * 
+	 * @param placement
+	 *            - the placement of the data series
+	 * @param area
+	 *            - the area of the chart panel, or null for the whole chart panel
+	 * @return - true if the bounding box of the screen points of the series
+	 *         intersects the area
+	 */
+	public boolean intersects(JChartPanelDataScreenPlacement placement, Rectangle area)
+	{
+		Series s = series.get(placement);
+
+		return s != null && s.intersects(area);
+	}
+}
@@ -0,0 +1,219 @@
+package com.ryanantkowiak.jchartpanel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cache of quantile sketches over the blocks of a series storage, at several
+ * levels of detail. A block at level 0 holds BLOCK_SIZE data points, and a block
+ * at level L holds the data points of two blocks at level L - 1. The sketch of a
+ * range of data points is merged from the sketches of the largest whole blocks
+ * in the range, so zooming out merges cached sketches rather than reading the
+ * data points again.
+ * 
+ * Sketches are only calculated for blocks that are completely filled, the
+ * first time they are needed.
+ * 
+ * @author antko
+ *
+ */
+public class JChartPanelQuantileIndex
+{
+	/**
+	 * Number of data points in a block at level 0.
+	 */
+	public static final int BLOCK_SIZE = 1024;
+
+	/**
+	 * Number of level 0 blocks a range must span before its ends are rounded to
+	 * block boundaries, rather than reading the data points of the partially
+	 * covered blocks.
+	 */
+	public static final int MIN_BLOCKS_TO_ROUND = 4;
+
+	/**
+	 * The storage of the data points.
+	 */
+	protected final JChartPanelSeriesStorage storage;
+
+	/**
+	 * The cached sketches of each level, by block number; null where a sketch has
+	 * not been calculated yet.
+	 */
+	protected final List<List<JChartPanelQuantileSketch>> sketches = new ArrayList<List<JChartPanelQuantileSketch>>();
+
+	/**
+	 * Buffer into which the values of the data points of a partial or uncached
+	 * block are read.
+	 */
+	protected final double[] readBuffer = new double[BLOCK_SIZE];
+
+	/**
+	 * Construct a JChartPanelQuantileIndex object.
+	 * 
+	 * @param storage
+	 *            - the storage of the data points
+	 */
+	public JChartPanelQuantileIndex(JChartPanelSeriesStorage storage)
+	{
+		this.storage = storage;
+	}
+
+	/**
+	 * Returns a sketch of the data points in a range of indices. The ends of a
+	 * range that spans many blocks are rounded to the nearest block boundaries.
+	 * 
+	 * @param fromIndex
+	 *            - the first index of the range (inclusive)
+	 * @param toIndex
+	 *            - the last index of the range (exclusive)
+	 * @return - a new sketch of the data points in the range
+	 */
+	public synchronized JChartPanelQuantileSketch getSketch(int fromIndex, int toIndex)
+	{
+		JChartPanelQuantileSketch sketch = new JChartPanelQuantileSketch();
+		int size = storage.size();
+
+		toIndex = Math.min(toIndex, size);
+
+		if (toIndex - fromIndex >= MIN_BLOCKS_TO_ROUND * BLOCK_SIZE)
+		{
+			fromIndex = roundToBlock(fromIndex);
+
+			// The end may only be rounded up to a block that is completely filled
+			int roundedTo = roundToBlock(toIndex);
+			toIndex = roundedTo <= size ? roundedTo : toIndex;
+		}
+
+		int i = fromIndex;
+
+		// Read the data points before the first block boundary
+		int end = Math.min(toIndex, roundUpToBlock(i));
+		sketch.update(read(i, end), 0, end - i);
+		i = end;
+
+		// Merge the largest whole blocks that fit in the range
+		while (i + BLOCK_SIZE <= toIndex)
+		{
+			int level = 0;
+
+			while ((i % (BLOCK_SIZE << (level + 1))) == 0 && i + (BLOCK_SIZE << (level + 1)) <= toIndex)
+				++level;
+
+			sketch.merge(getBlockSketch(level, i / (BLOCK_SIZE << level)));
+			i += BLOCK_SIZE << level;
+		}
+
+		// Read the data points after the last block boundary
+		sketch.update(read(i, toIndex), 0, toIndex - i);
+
+		return sketch;
+	}
+
+	/**
+	 * Discards the cached sketches of the blocks that hold any of a range of data
+	 * points, at every level, after the data points were rewritten.
+	 * 
+	 * @param fromIndex
+	 *            - the first index of the range (inclusive)
+	 * @param toIndex
+	 *            - the last index of the range (exclusive)
+	 */
+	public synchronized void invalidate(int fromIndex, int toIndex)
+	{
+		if (fromIndex >= toIndex)
+			return;
+
+		for (int level = 0 ; level < sketches.size() ; ++level)
+		{
+			List<JChartPanelQuantileSketch> levelSketches = sketches.get(level);
+			int last = Math.min(levelSketches.size() - 1, (toIndex - 1) / (BLOCK_SIZE << level));
+
+			for (int block = fromIndex / (BLOCK_SIZE << level) ; block <= last ; ++block)
+				levelSketches.set(block, null);
+		}
+	}
+
+	/**
+	 * Reads the values of a range of data points into the read buffer.
+	 * 
+	 * @param fromIndex
+	 *            - the first index of the range (inclusive)
+	 * @param toIndex
+	 *            - the last index of the range (exclusive), at most BLOCK_SIZE
+	 *            after the first
+	 * @return - the read buffer, holding the values from index 0
+	 */
+	protected double[] read(int fromIndex, int toIndex)
+	{
+		for (int i = fromIndex ; i < toIndex ; ++i)
+			readBuffer[i - fromIndex] = storage.get(i);
+
+		return readBuffer;
+	}
+
+	/**
+	 * Returns the sketch of a block, calculating and caching it if necessary.
+	 * 
+	 * @param level
+	 *            - the level of the block
+	 * @param block
+	 *            - the number of the block within its level
+	 * @return - the sketch of the block
+	 */
+	protected JChartPanelQuantileSketch getBlockSketch(int level, int block)
+	{
+		while (sketches.size() <= level)
+			sketches.add(new ArrayList<JChartPanelQuantileSketch>());
+
+		List<JChartPanelQuantileSketch> levelSketches = sketches.get(level);
+
+		while (levelSketches.size() <= block)
+			levelSketches.add(null);
+
+		JChartPanelQuantileSketch sketch = levelSketches.get(block);
+
+		if (sketch == null)
+		{
+			sketch = new JChartPanelQuantileSketch();
+
+			if (level == 0)
+			{
+				sketch.update(read(block * BLOCK_SIZE, (block + 1) * BLOCK_SIZE), 0, BLOCK_SIZE);
+			}
+			else
+			{
+				sketch.merge(getBlockSketch(level - 1, 2 * block));
+				sketch.merge(getBlockSketch(level - 1, 2 * block + 1));
+			}
+
+			levelSketches.set(block, sketch);
+		}
+
+		return sketch;
+	}
+
+	/**
+	 * Rounds an index to the nearest level 0 block boundary.
+	 * 
+	 * @param index
+	 *            - the index to round
+	 * @return - the rounded index
+	 */
+	protected static int roundToBlock(int index)
+	{
+		return (int) ((index + BLOCK_SIZE / 2L) / BLOCK_SIZE * BLOCK_SIZE);
+	}
+
+	/**
+	 * Rounds an index up to the next level 0 block boundary.
+	 * 
+	 * @param index
+	 *            - the index to round
+	 * @return - the rounded index
+	 */
+	protected static int roundUpToBlock(int index)
+	{
+		return (int) ((index + BLOCK_SIZE - 1L) / BLOCK_SIZE * BLOCK_SIZE);
+	}
+}
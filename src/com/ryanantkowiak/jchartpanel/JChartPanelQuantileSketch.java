@@ -0,0 +1,283 @@
+package com.ryanantkowiak.jchartpanel;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable streaming sketch of the distribution of a set of values, which
+ * estimates quantiles such as the median in a small, bounded amount of memory.
+ * 
+ * The sketch is a stack of compactors, in the style of the KLL sketch. Values
+ * are added to the bottom compactor. When a compactor is full, its values are
+ * sorted and every other one is promoted to the compactor above, where each
+ * value stands for twice as many of the original values. Higher compactors have
+ * larger capacities, so most of the memory goes to the values that carry the
+ * most weight. Two sketches are merged by combining their compactors level by
+ * level, then compacting the ones that are over capacity.
+ * 
+ * @author antko
+ *
+ */
+public class JChartPanelQuantileSketch
+{
+	/**
+	 * Default capacity of the top compactor, which sets the accuracy of the
+	 * sketch.
+	 */
+	public static final int DEFAULT_K = 128;
+
+	/**
+	 * Minimum capacity of a compactor.
+	 */
+	protected static final int MIN_CAPACITY = 8;
+
+	/**
+	 * Capacity of the top compactor.
+	 */
+	protected final int k;
+
+	/**
+	 * The values held by each compactor; a value at level h stands for 2^h of the
+	 * original values.
+	 */
+	protected double[][] levels = new double[0][];
+
+	/**
+	 * The number of values held by each compactor.
+	 */
+	protected int[] sizes = new int[0];
+
+	/**
+	 * The capacity of each compactor, which changes as compactors are added.
+	 */
+	protected int[] capacities = new int[0];
+
+	/**
+	 * The number of values added to the sketch, directly or through merges.
+	 */
+	protected long count;
+
+	/**
+	 * Alternates which half of a compactor is promoted, so that compactions do
+	 * not consistently favor the lower or the upper values.
+	 */
+	protected boolean promoteOdd;
+
+	/**
+	 * Construct an empty JChartPanelQuantileSketch with the default accuracy.
+	 */
+	public JChartPanelQuantileSketch()
+	{
+		this(DEFAULT_K);
+	}
+
+	/**
+	 * Construct an empty JChartPanelQuantileSketch.
+	 * 
+	 * @param k
+	 *            - the capacity of the top compactor; larger values are more
+	 *            accurate and use more memory
+	 */
+	public JChartPanelQuantileSketch(int k)
+	{
+		if (k < MIN_CAPACITY)
+			throw new IllegalArgumentException("k must be at least " + MIN_CAPACITY);
+
+		this.k = k;
+		addLevel();
+	}
+
+	/**
+	 * Returns the number of values added to the sketch.
+	 * 
+	 * @return - the number of values
+	 */
+	public long getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * Adds a value to the sketch.
+	 * 
+	 * @param value
+	 *            - the value to add
+	 */
+	public void update(double value)
+	{
+		append(0, value);
+		++count;
+
+		if (sizes[0] >= capacities[0])
+			compact();
+	}
+
+	/**
+	 * Adds a range of an array of values to the sketch. The values are compacted
+	 * together, which is much faster than adding them one at a time.
+	 * 
+	 * @param values
+	 *            - the array holding the values to add
+	 * @param offset
+	 *            - the index in the array of the first value to add
+	 * @param length
+	 *            - the number of values to add
+	 */
+	public void update(double[] values, int offset, int length)
+	{
+		for (int i = offset ; i < offset + length ; ++i)
+			append(0, values[i]);
+
+		count += length;
+		compact();
+	}
+
+	/**
+	 * Adds all the values of another sketch to this sketch. The other sketch is
+	 * not changed.
+	 * 
+	 * @param other
+	 *            - the sketch to merge into this one
+	 */
+	public void merge(JChartPanelQuantileSketch other)
+	{
+		while (levels.length < other.levels.length)
+			addLevel();
+
+		for (int h = 0 ; h < other.levels.length ; ++h)
+			for (int i = 0 ; i < other.sizes[h] ; ++i)
+				append(h, other.levels[h][i]);
+
+		count += other.count;
+		compact();
+	}
+
+	/**
+	 * Estimates the values at the given quantiles of the values added to the
+	 * sketch.
+	 * 
+	 * @param quantiles
+	 *            - the quantiles to estimate, each between 0 and 1
+	 * @return - the estimated value at each quantile, or NaN for each quantile if
+	 *         the sketch is empty
+	 */
+	public double[] getQuantiles(double[] quantiles)
+	{
+		double[] result = new double[quantiles.length];
+
+		// Sort the values of each compactor, then walk them all in order of value,
+		// adding up their weights until the rank of the quantile is reached
+		double[][] sorted = new double[levels.length][];
+		long totalWeight = 0;
+
+		for (int h = 0 ; h < levels.length ; ++h)
+		{
+			sorted[h] = Arrays.copyOf(levels[h], sizes[h]);
+			Arrays.sort(sorted[h]);
+			totalWeight += (long) sizes[h] << h;
+		}
+
+		for (int q = 0 ; q < quantiles.length ; ++q)
+		{
+			long rank = Math.max(1, (long) Math.ceil(quantiles[q] * totalWeight));
+			int[] heads = new int[levels.length];
+			long cumulative = 0;
+
+			result[q] = Double.NaN;
+
+			while (cumulative < rank)
+			{
+				int next = -1;
+
+				for (int h = 0 ; h < levels.length ; ++h)
+					if (heads[h] < sorted[h].length
+							&& (next < 0 || sorted[h][heads[h]] < sorted[next][heads[next]]))
+						next = h;
+
+				if (next < 0)
+					break;
+
+				result[q] = sorted[next][heads[next]++];
+				cumulative += 1L << next;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Compacts each compactor that is over its capacity, from the bottom up.
+	 */
+	protected void compact()
+	{
+		for (int h = 0 ; h < levels.length ; ++h)
+		{
+			if (sizes[h] < capacities[h])
+				continue;
+
+			if (h == levels.length - 1)
+				addLevel();
+
+			double[] level = levels[h];
+			int size = sizes[h];
+
+			Arrays.sort(level, 0, size);
+
+			// With an odd number of values, the lowest one stays behind, so that no
+			// weight is lost
+			int kept = size & 1;
+			int offset = kept + (promoteOdd ? 1 : 0);
+			promoteOdd = !promoteOdd;
+
+			for (int i = offset ; i < size ; i += 2)
+				append(h + 1, level[i]);
+
+			sizes[h] = kept;
+		}
+	}
+
+	/**
+	 * Returns the capacity of a compactor. The top compactor holds k values, and
+	 * each compactor below it holds two thirds as many as the one above.
+	 * 
+	 * @param h
+	 *            - the level of the compactor
+	 * @return - the capacity of the compactor
+	 */
+	protected int capacity(int h)
+	{
+		int depth = levels.length - 1 - h;
+
+		return Math.max(MIN_CAPACITY, (int) Math.ceil(k * Math.pow(2.0 / 3.0, depth)));
+	}
+
+	/**
+	 * Appends a value to a compactor, growing it if necessary.
+	 * 
+	 * @param h
+	 *            - the level of the compactor
+	 * @param value
+	 *            - the value to append
+	 */
+	protected void append(int h, double value)
+	{
+		if (sizes[h] == levels[h].length)
+			levels[h] = Arrays.copyOf(levels[h], Math.max(MIN_CAPACITY, levels[h].length * 2));
+
+		levels[h][sizes[h]++] = value;
+	}
+
+	/**
+	 * Adds an empty compactor at the top of the stack.
+	 */
+	protected void addLevel()
+	{
+		levels = Arrays.copyOf(levels, levels.length + 1);
+		sizes = Arrays.copyOf(sizes, sizes.length + 1);
+		levels[levels.length - 1] = new double[MIN_CAPACITY];
+
+		capacities = new int[levels.length];
+
+		for (int h = 0 ; h < levels.length ; ++h)
+			capacities[h] = capacity(h);
+	}
+}
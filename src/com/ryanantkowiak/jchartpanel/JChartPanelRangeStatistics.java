@@ -0,0 +1,346 @@
+package com.ryanantkowiak.jchartpanel;
+
+import java.util.Arrays;
+
+/**
+ * Index over the data points of a series storage, which answers statistics
+ * queries over any range of indices without rescanning the data points.
+ * 
+ * Prefix sums of the values and of their squares give the count, sum, mean and
+ * standard deviation of a range in constant time. The minimum and maximum come
+ * from a sparse table over blocks of data points: the whole blocks covered by a
+ * range are answered by two overlapping table entries, and only the data points
+ * in the partially covered blocks at either end of the range are read from the
+ * storage.
+ * 
+ * The index is built in one pass over the storage, and extended with the data
+ * points appended to the storage since the last query. A storage that keeps its
+ * own aggregates, such as a LOD storage mapped from a file, is not indexed:
+ * queries are passed on to the storage instead.
+ * 
+ * @author antko
+ *
+ */
+public class JChartPanelRangeStatistics
+{
+	/**
+	 * Number of data points in each block of the sparse table.
+	 */
+	public static final int BLOCK_SIZE = 64;
+
+	/**
+	 * Statistics of the data points in a range of indices.
+	 * 
+	 * @author antko
+	 *
+	 */
+	public static class Summary
+	{
+		/**
+		 * The number of data points in the range.
+		 */
+		public final int count;
+
+		/**
+		 * The minimum value in the range.
+		 */
+		public final double min;
+
+		/**
+		 * The maximum value in the range.
+		 */
+		public final double max;
+
+		/**
+		 * The sum of the values in the range.
+		 */
+		public final double sum;
+
+		/**
+		 * The mean of the values in the range.
+		 */
+		public final double mean;
+
+		/**
+		 * The population standard deviation of the values in the range.
+		 */
+		public final double stdDev;
+
+		/**
+		 * Construct a Summary object.
+		 * 
+		 * @param count
+		 *            - the number of data points
+		 * @param min
+		 *            - the minimum value
+		 * @param max
+		 *            - the maximum value
+		 * @param sum
+		 *            - the sum of the values
+		 * @param mean
+		 *            - the mean of the values
+		 * @param stdDev
+		 *            - the standard deviation of the values
+		 */
+		public Summary(int count, double min, double max, double sum, double mean, double stdDev)
+		{
+			this.count = count;
+			this.min = min;
+			this.max = max;
+			this.sum = sum;
+			this.mean = mean;
+			this.stdDev = stdDev;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("n=%d min=%.4g max=%.4g mean=%.4g sd=%.4g sum=%.4g", count, min, max, mean, stdDev,
+					sum);
+		}
+	}
+
+	/**
+	 * The storage of the indexed data points.
+	 */
+	protected final JChartPanelSeriesStorage storage;
+
+	/**
+	 * The number of indexed data points.
+	 */
+	protected int size;
+
+	/**
+	 * Value subtracted from every data point before it is summed, which keeps the
+	 * sums of squares small for series far from zero.
+	 */
+	protected double shift;
+
+	/**
+	 * Prefix sums of the shifted values; element i is the sum of the first i
+	 * data points.
+	 */
+	protected double[] prefixSum = new double[BLOCK_SIZE + 1];
+
+	/**
+	 * Prefix sums of the squares of the shifted values.
+	 */
+	protected double[] prefixSumSquares = new double[BLOCK_SIZE + 1];
+
+	/**
+	 * Sparse table of block minimums; element i of level k is the minimum of the
+	 * 2^k whole blocks starting at block i.
+	 */
+	protected double[][] blockMin = new double[0][];
+
+	/**
+	 * Sparse table of block maximums, laid out as blockMin.
+	 */
+	protected double[][] blockMax = new double[0][];
+
+	/**
+	 * The number of whole blocks in the sparse table.
+	 */
+	protected int blockCount;
+
+	/**
+	 * Minimum of the block being filled.
+	 */
+	protected double currentMin = Double.MAX_VALUE;
+
+	/**
+	 * Maximum of the block being filled.
+	 */
+	protected double currentMax = -Double.MAX_VALUE;
+
+	/**
+	 * Construct a JChartPanelRangeStatistics object, indexing the data points the
+	 * storage already has.
+	 * 
+	 * @param storage
+	 *            - the storage of the data points to index
+	 */
+	public JChartPanelRangeStatistics(JChartPanelSeriesStorage storage)
+	{
+		this.storage = storage;
+		update();
+	}
+
+	/**
+	 * Indexes the data points appended to the storage since the last update.
+	 */
+	public synchronized void update()
+	{
+		if (storage instanceof JChartPanelSummarizedSeriesStorage)
+			return;
+
+		int n = storage.size();
+
+		if (n <= size)
+			return;
+
+		if (size == 0)
+			shift = storage.get(0);
+
+		if (n + 1 > prefixSum.length)
+		{
+			int capacity = Math.max(n + 1, prefixSum.length * 2);
+			prefixSum = Arrays.copyOf(prefixSum, capacity);
+			prefixSumSquares = Arrays.copyOf(prefixSumSquares, capacity);
+		}
+
+		for (int i = size ; i < n ; ++i)
+		{
+			double v = storage.get(i);
+			double d = v - shift;
+
+			prefixSum[i + 1] = prefixSum[i] + d;
+			prefixSumSquares[i + 1] = prefixSumSquares[i] + d * d;
+
+			if (v < currentMin)
+				currentMin = v;
+
+			if (v > currentMax)
+				currentMax = v;
+
+			if ((i + 1) % BLOCK_SIZE == 0)
+			{
+				addBlock(currentMin, currentMax);
+				currentMin = Double.MAX_VALUE;
+				currentMax = -Double.MAX_VALUE;
+			}
+		}
+
+		size = n;
+	}
+
+	/**
+	 * Returns the statistics of the data points in a range of indices, after
+	 * indexing any newly appended data points.
+	 * 
+	 * @param fromIndex
+	 *            - the first index of the range (inclusive)
+	 * @param toIndex
+	 *            - the last index of the range (exclusive)
+	 * @return - the statistics of the range, or null if the range is empty
+	 */
+	public synchronized Summary query(int fromIndex, int toIndex)
+	{
+		if (storage instanceof JChartPanelSummarizedSeriesStorage)
+			return ((JChartPanelSummarizedSeriesStorage) storage).getRangeSummary(fromIndex, toIndex);
+
+		update();
+
+		fromIndex = Math.max(0, fromIndex);
+		toIndex = Math.min(size, toIndex);
+
+		if (fromIndex >= toIndex)
+			return null;
+
+		int count = toIndex - fromIndex;
+		double shiftedSum = prefixSum[toIndex] - prefixSum[fromIndex];
+		double shiftedSquares = prefixSumSquares[toIndex] - prefixSumSquares[fromIndex];
+		double shiftedMean = shiftedSum / count;
+		double variance = Math.max(0, shiftedSquares / count - shiftedMean * shiftedMean);
+
+		double[] minMax = new double[2];
+		rangeMinMax(fromIndex, toIndex, minMax);
+
+		return new Summary(count, minMax[0], minMax[1], shiftedSum + shift * count, shiftedMean + shift,
+				Math.sqrt(variance));
+	}
+
+	/**
+	 * Calculates the minimum and maximum of the data points in a range of
+	 * indices.
+	 * 
+	 * @param fromIndex
+	 *            - the first index of the range (inclusive)
+	 * @param toIndex
+	 *            - the last index of the range (exclusive)
+	 * @param minMax
+	 *            - array which receives the minimum at index 0 and the maximum at
+	 *            index 1
+	 */
+	protected void rangeMinMax(int fromIndex, int toIndex, double[] minMax)
+	{
+		int firstBlock = (fromIndex + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		int lastBlock = Math.min(blockCount, toIndex / BLOCK_SIZE);
+
+		if (firstBlock >= lastBlock)
+		{
+			storage.getRangeMinMax(fromIndex, toIndex, minMax);
+			return;
+		}
+
+		// Two overlapping table entries cover the whole blocks
+		int level = 31 - Integer.numberOfLeadingZeros(lastBlock - firstBlock);
+		int second = lastBlock - (1 << level);
+		double min = Math.min(blockMin[level][firstBlock], blockMin[level][second]);
+		double max = Math.max(blockMax[level][firstBlock], blockMax[level][second]);
+
+		// Read the partially covered blocks at either end
+		if (fromIndex < firstBlock * BLOCK_SIZE)
+		{
+			storage.getRangeMinMax(fromIndex, firstBlock * BLOCK_SIZE, minMax);
+			min = Math.min(min, minMax[0]);
+			max = Math.max(max, minMax[1]);
+		}
+
+		if (lastBlock * BLOCK_SIZE < toIndex)
+		{
+			storage.getRangeMinMax(lastBlock * BLOCK_SIZE, toIndex, minMax);
+			min = Math.min(min, minMax[0]);
+			max = Math.max(max, minMax[1]);
+		}
+
+		minMax[0] = min;
+		minMax[1] = max;
+	}
+
+	/**
+	 * Adds a whole block to the sparse table, filling in the entries of each
+	 * level that end with the new block.
+	 * 
+	 * @param min
+	 *            - the minimum of the block
+	 * @param max
+	 *            - the maximum of the block
+	 */
+	protected void addBlock(double min, double max)
+	{
+		int b = blockCount++;
+		int levels = 32 - Integer.numberOfLeadingZeros(blockCount);
+
+		if (levels > blockMin.length)
+		{
+			blockMin = Arrays.copyOf(blockMin, levels);
+			blockMax = Arrays.copyOf(blockMax, levels);
+			blockMin[levels - 1] = new double[BLOCK_SIZE];
+			blockMax[levels - 1] = new double[BLOCK_SIZE];
+		}
+
+		for (int k = 0 ; k < levels ; ++k)
+		{
+			int start = b - (1 << k) + 1;
+
+			if (start >= blockMin[k].length)
+			{
+				blockMin[k] = Arrays.copyOf(blockMin[k], Math.max(start + 1, blockMin[k].length * 2));
+				blockMax[k] = Arrays.copyOf(blockMax[k], Math.max(start + 1, blockMax[k].length * 2));
+			}
+
+			if (k == 0)
+			{
+				blockMin[0][b] = min;
+				blockMax[0][b] = max;
+			}
+			else
+			{
+				int half = start + (1 << (k - 1));
+				blockMin[k][start] = Math.min(blockMin[k - 1][start], blockMin[k - 1][half]);
+				blockMax[k][start] = Math.max(blockMax[k - 1][start], blockMax[k - 1][half]);
+			}
+		}
+	}
+}
@@ -0,0 +1,926 @@
+package com.ryanantkowiak.jchartpanel;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.event.ComponentEvent;
+import java.awt.event.ComponentListener;
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseMotionListener;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Headless harness that replays a trace of interaction and data events against
+ * a chart panel, painting into an off-screen image after each event, and
+ * reports the latency from each event to the end of the paint that follows it.
+ * Regressions in the event handlers or the painting of the chart panel show up
+ * as higher latency percentiles or lower throughput.
+ * 
+ * A trace is recorded from a live chart panel, generated from a seed, or loaded
+ * from a file. The chart panel is placed synchronously unless asynchronous
+ * placement is asked for. Placed synchronously, every paint shows the effect of
+ * the event before it; placed asynchronously, as a live chart panel usually is,
+ * a paint may show an earlier placement while the new one is calculated. Each
+ * event is replayed on the event dispatch thread, which publishes the
+ * asynchronous placements between events.
+ * 
+ * @author antko
+ *
+ */
+public class JChartPanelReplayHarness
+{
+	/**
+	 * First line of a trace file, which identifies the format.
+	 */
+	public static final String TRACE_HEADER = "JChartPanelTrace 1";
+
+	/**
+	 * Event type of a mouse move, with the x- and y-coordinate of the mouse.
+	 */
+	public static final char MOUSE_MOVE = 'M';
+
+	/**
+	 * Event type of a key press, with the key code of the key.
+	 */
+	public static final char KEY_PRESS = 'K';
+
+	/**
+	 * Event type of a typed key, with the character of the key.
+	 */
+	public static final char KEY_TYPE = 'T';
+
+	/**
+	 * Event type of a resize of the chart panel, with the new width and height.
+	 */
+	public static final char RESIZE = 'R';
+
+	/**
+	 * Event type of data points appended to a series, with the index/id of the
+	 * series and the values of the data points.
+	 */
+	public static final char APPEND = 'A';
+
+	/**
+	 * An event of a trace.
+	 * 
+	 * @author antko
+	 *
+	 */
+	public static class Event
+	{
+		/**
+		 * The time of the event, in nanoseconds since the start of the trace.
+		 */
+		public final long time;
+
+		/**
+		 * The type of the event.
+		 */
+		public final char type;
+
+		/**
+		 * The first argument of the event: an x-coordinate, key code, character,
+		 * width or series index/id, depending on the type.
+		 */
+		public final int a;
+
+		/**
+		 * The second argument of the event: a y-coordinate or height, depending on
+		 * the type.
+		 */
+		public final int b;
+
+		/**
+		 * The values of the appended data points, for an append event.
+		 */
+		public final double[] values;
+
+		/**
+		 * Construct an Event object.
+		 * 
+		 * @param time
+		 *            - the time of the event, in nanoseconds since the start of the
+		 *            trace
+		 * @param type
+		 *            - the type of the event
+		 * @param a
+		 *            - the first argument of the event
+		 * @param b
+		 *            - the second argument of the event
+		 * @param values
+		 *            - the values of the appended data points, or null
+		 */
+		public Event(long time, char type, int a, int b, double[] values)
+		{
+			this.time = time;
+			this.type = type;
+			this.a = a;
+			this.b = b;
+			this.values = values;
+		}
+	}
+
+	/**
+	 * The latencies measured by a replay, with the throughput of the replay.
+	 * 
+	 * @author antko
+	 *
+	 */
+	public static class Report
+	{
+		/**
+		 * The event types of the trace, in the order of the latencies.
+		 */
+		protected final char[] types;
+
+		/**
+		 * The latency of each event, in nanoseconds from the start of handling the
+		 * event to the end of the paint that follows it.
+		 */
+		protected final long[] latencies;
+
+		/**
+		 * The duration of the replay, in nanoseconds.
+		 */
+		protected final long elapsed;
+
+		/**
+		 * Construct a Report object.
+		 * 
+		 * @param types
+		 *            - the event types of the trace
+		 * @param latencies
+		 *            - the latency of each event, in nanoseconds
+		 * @param elapsed
+		 *            - the duration of the replay, in nanoseconds
+		 */
+		public Report(char[] types, long[] latencies, long elapsed)
+		{
+			this.types = types;
+			this.latencies = latencies;
+			this.elapsed = elapsed;
+		}
+
+		/**
+		 * Returns the number of events replayed.
+		 * 
+		 * @return - the number of events
+		 */
+		public int getEventCount()
+		{
+			return latencies.length;
+		}
+
+		/**
+		 * Returns a percentile of the latencies of the events of a type.
+		 * 
+		 * @param type
+		 *            - the event type, or 0 for all events
+		 * @param percentile
+		 *            - the percentile, between 0 and 100
+		 * @return - the latency at the percentile in nanoseconds, or -1 if there
+		 *         are no events of the type
+		 */
+		public long getPercentile(char type, double percentile)
+		{
+			long[] sorted = new long[latencies.length];
+			int count = 0;
+
+			for (int i = 0 ; i < latencies.length ; ++i)
+				if (type == 0 || types[i] == type)
+					sorted[count++] = latencies[i];
+
+			if (count == 0)
+				return -1;
+
+			Arrays.sort(sorted, 0, count);
+
+			int rank = (int) Math.ceil(percentile / 100.0 * count);
+			return sorted[Math.min(count - 1, Math.max(0, rank - 1))];
+		}
+
+		/**
+		 * Returns the throughput of the replay.
+		 * 
+		 * @return - the number of events replayed per second, including the time
+		 *         spent waiting between events when replaying at recorded speed
+		 */
+		public double getThroughput()
+		{
+			return elapsed > 0 ? latencies.length * 1e9 / elapsed : 0.0;
+		}
+
+		/**
+		 * Returns the latency percentiles of all events and of each event type, and
+		 * the throughput, one line each.
+		 * 
+		 * @return - the text of the report
+		 */
+		@Override
+		public String toString()
+		{
+			StringBuilder sb = new StringBuilder();
+
+			sb.append(String.format(Locale.ROOT, "%d events in %.1f ms, %.1f events/s%n", latencies.length,
+					elapsed / 1e6, getThroughput()));
+
+			appendLine(sb, "all", (char) 0);
+			appendLine(sb, "mouse move", MOUSE_MOVE);
+			appendLine(sb, "key press", KEY_PRESS);
+			appendLine(sb, "key type", KEY_TYPE);
+			appendLine(sb, "resize", RESIZE);
+			appendLine(sb, "append", APPEND);
+
+			return sb.toString();
+		}
+
+		/**
+		 * Appends a line with the latency percentiles of an event type, if there are
+		 * events of the type.
+		 * 
+		 * @param sb
+		 *            - the builder to append the line to
+		 * @param name
+		 *            - the name of the event type
+		 * @param type
+		 *            - the event type, or 0 for all events
+		 */
+		protected void appendLine(StringBuilder sb, String name, char type)
+		{
+			if (getPercentile(type, 100) < 0)
+				return;
+
+			sb.append(String.format(Locale.ROOT, "%-10s p50 %8.3f ms  p90 %8.3f ms  p99 %8.3f ms  max %8.3f ms%n",
+					name, getPercentile(type, 50) / 1e6, getPercentile(type, 90) / 1e6,
+					getPercentile(type, 99) / 1e6, getPercentile(type, 100) / 1e6));
+		}
+	}
+
+	/**
+	 * Records the events of a live chart panel into a trace. Mouse moves, key
+	 * presses, typed keys and resizes are recorded as they are delivered to the
+	 * chart panel; data points must be appended through the recorder to be
+	 * recorded.
+	 * 
+	 * @author antko
+	 *
+	 */
+	public static class Recorder implements MouseMotionListener, KeyListener, ComponentListener
+	{
+		/**
+		 * The chart panel being recorded.
+		 */
+		protected final JChartPanel panel;
+
+		/**
+		 * The recorded events.
+		 */
+		protected final List<Event> events = Collections.synchronizedList(new ArrayList<Event>());
+
+		/**
+		 * The time at which the recording started.
+		 */
+		protected final long start = System.nanoTime();
+
+		/**
+		 * Construct a Recorder object, and start recording the events of a chart
+		 * panel.
+		 * 
+		 * @param panel
+		 *            - the chart panel to record
+		 */
+		public Recorder(JChartPanel panel)
+		{
+			this.panel = panel;
+
+			panel.addMouseMotionListener(this);
+			panel.addKeyListener(this);
+			panel.addComponentListener(this);
+		}
+
+		/**
+		 * Stops recording the events of the chart panel.
+		 * 
+		 * @return - the recorded trace
+		 */
+		public List<Event> stop()
+		{
+			panel.removeMouseMotionListener(this);
+			panel.removeKeyListener(this);
+			panel.removeComponentListener(this);
+
+			synchronized (events)
+			{
+				return new ArrayList<Event>(events);
+			}
+		}
+
+		/**
+		 * Appends data points to a series of the chart panel, and records the append.
+		 * 
+		 * @param seriesIndex
+		 *            - the index/id of the data series
+		 * @param values
+		 *            - the values of the data points
+		 * @return - true if the series exists
+		 */
+		public boolean appendToSeries(int seriesIndex, double[] values)
+		{
+			record(APPEND, seriesIndex, 0, values.clone());
+			return panel.appendToSeries(seriesIndex, values);
+		}
+
+		/**
+		 * Records an event at the current time.
+		 * 
+		 * @param type
+		 *            - the type of the event
+		 * @param a
+		 *            - the first argument of the event
+		 * @param b
+		 *            - the second argument of the event
+		 * @param values
+		 *            - the values of the appended data points, or null
+		 */
+		protected void record(char type, int a, int b, double[] values)
+		{
+			events.add(new Event(System.nanoTime() - start, type, a, b, values));
+		}
+
+		@Override
+		public void mouseMoved(MouseEvent e)
+		{
+			record(MOUSE_MOVE, e.getX(), e.getY(), null);
+		}
+
+		@Override
+		public void mouseDragged(MouseEvent e)
+		{
+			// Drags select a range, which the trace does not replay
+		}
+
+		@Override
+		public void keyPressed(KeyEvent e)
+		{
+			record(KEY_PRESS, e.getKeyCode(), 0, null);
+		}
+
+		@Override
+		public void keyReleased(KeyEvent e)
+		{
+			// The chart panel does not react to released keys
+		}
+
+		@Override
+		public void keyTyped(KeyEvent e)
+		{
+			record(KEY_TYPE, e.getKeyChar(), 0, null);
+		}
+
+		@Override
+		public void componentResized(ComponentEvent e)
+		{
+			record(RESIZE, panel.getWidth(), panel.getHeight(), null);
+		}
+
+		@Override
+		public void componentMoved(ComponentEvent e)
+		{
+			// Moving the chart panel does not change what it paints
+		}
+
+		@Override
+		public void componentShown(ComponentEvent e)
+		{
+			// Nothing to record
+		}
+
+		@Override
+		public void componentHidden(ComponentEvent e)
+		{
+			// Nothing to record
+		}
+	}
+
+	/**
+	 * Delivers an event of a trace to a chart panel and paints it, measuring the
+	 * latency.
+	 * 
+	 * @author antko
+	 *
+	 */
+	protected static class Step implements Runnable
+	{
+		/**
+		 * The chart panel.
+		 */
+		protected final JChartPanel panel;
+
+		/**
+		 * The off-screen image the chart panel is painted into.
+		 */
+		protected BufferedImage image;
+
+		/**
+		 * The event to deliver.
+		 */
+		protected Event event;
+
+		/**
+		 * The latency of the event, in nanoseconds from the start of handling the
+		 * event to the end of the paint that follows it.
+		 */
+		protected long latency;
+
+		/**
+		 * Construct a Step object.
+		 * 
+		 * @param panel
+		 *            - the chart panel
+		 */
+		protected Step(JChartPanel panel)
+		{
+			this.panel = panel;
+		}
+
+		@Override
+		public void run()
+		{
+			long t0 = System.nanoTime();
+
+			deliver(panel, event, System.currentTimeMillis());
+
+			if (image == null || image.getWidth() != panel.getWidth() || image.getHeight() != panel.getHeight())
+				image = new BufferedImage(Math.max(1, panel.getWidth()), Math.max(1, panel.getHeight()),
+						BufferedImage.TYPE_INT_RGB);
+
+			Graphics2D g = image.createGraphics();
+
+			try
+			{
+				panel.paint(g);
+			}
+			finally
+			{
+				g.dispose();
+			}
+
+			latency = System.nanoTime() - t0;
+		}
+	}
+
+	/**
+	 * Generates a trace of events from a seed: the mouse wanders across the chart
+	 * panel, with arrow key nudges, series toggles, resizes and appends mixed in,
+	 * one event every 10 milliseconds.
+	 * 
+	 * @param eventCount
+	 *            - the number of events to generate
+	 * @param seriesCount
+	 *            - the number of series of the chart panel the trace is for
+	 * @param width
+	 *            - the initial width of the chart panel
+	 * @param height
+	 *            - the initial height of the chart panel
+	 * @param seed
+	 *            - the seed of the generator; the same seed generates the same
+	 *            trace
+	 * @return - the generated trace
+	 */
+	public static List<Event> generateTrace(int eventCount, int seriesCount, int width, int height, long seed)
+	{
+		final int[] arrows = { KeyEvent.VK_LEFT, KeyEvent.VK_RIGHT, KeyEvent.VK_UP, KeyEvent.VK_DOWN };
+
+		Random random = new Random(seed);
+		List<Event> trace = new ArrayList<Event>(eventCount);
+		int x = width / 2;
+		int y = height / 2;
+
+		trace.add(new Event(0, RESIZE, width, height, null));
+
+		for (int i = 1 ; i < eventCount ; ++i)
+		{
+			long time = i * 10000000L;
+			int kind = random.nextInt(100);
+
+			if (kind < 70)
+			{
+				x = Math.max(0, Math.min(width - 1, x + random.nextInt(21) - 10));
+				y = Math.max(0, Math.min(height - 1, y + random.nextInt(21) - 10));
+				trace.add(new Event(time, MOUSE_MOVE, x, y, null));
+			}
+			else if (kind < 85)
+			{
+				trace.add(new Event(time, KEY_PRESS, arrows[random.nextInt(arrows.length)], 0, null));
+			}
+			else if (kind < 90)
+			{
+				trace.add(new Event(time, KEY_TYPE, '0' + random.nextInt(Math.min(10, seriesCount)), 0, null));
+			}
+			else if (kind < 92)
+			{
+				width = Math.max(200, width + random.nextInt(101) - 50);
+				height = Math.max(150, height + random.nextInt(101) - 50);
+				x = Math.min(x, width - 1);
+				y = Math.min(y, height - 1);
+				trace.add(new Event(time, RESIZE, width, height, null));
+			}
+			else
+			{
+				double[] values = new double[1 + random.nextInt(100)];
+
+				for (int v = 0 ; v < values.length ; ++v)
+					values[v] = random.nextGaussian();
+
+				trace.add(new Event(time, APPEND, random.nextInt(seriesCount), 0, values));
+			}
+		}
+
+		return trace;
+	}
+
+	/**
+	 * Creates a chart panel with series of random walks generated from a seed, to
+	 * replay a trace against.
+	 * 
+	 * @param seriesCount
+	 *            - the number of series
+	 * @param pointsPerSeries
+	 *            - the number of data points of each series
+	 * @param seed
+	 *            - the seed of the generator; the same seed creates the same
+	 *            series
+	 * @return - the chart panel
+	 */
+	public static JChartPanel createPanel(int seriesCount, int pointsPerSeries, long seed)
+	{
+		Random random = new Random(seed);
+		JChartPanel panel = new JChartPanel();
+		double[] values = new double[pointsPerSeries];
+
+		for (int s = 0 ; s < seriesCount ; ++s)
+		{
+			double last = 0.0;
+
+			for (int i = 0 ; i < pointsPerSeries ; ++i)
+			{
+				last += random.nextGaussian();
+				values[i] = last;
+			}
+
+			Color color = Color.getHSBColor(random.nextFloat(), 0.8f, 1.0f);
+			int seriesIndex = panel.addSeries(new JChartPanelDoubleSeriesStorage(), "Series " + s, color);
+			panel.appendToSeries(seriesIndex, values);
+		}
+
+		return panel;
+	}
+
+	/**
+	 * Replays a trace against a chart panel, delivering each event to the chart
+	 * panel and then painting it into an off-screen image the size of the chart
+	 * panel. The chart panel is placed synchronously, so that every paint shows
+	 * the effect of the event before it, and its own placement mode is restored
+	 * afterwards. Call from the event dispatch thread, or from another thread to
+	 * replay each event on the event dispatch thread.
+	 * 
+	 * @param panel
+	 *            - the chart panel
+	 * @param trace
+	 *            - the events to replay, in order of time
+	 * @param recordedSpeed
+	 *            - true to wait until the recorded time of each event, false to
+	 *            replay the events as fast as possible
+	 * @return - the latencies and throughput of the replay
+	 * @throws InterruptedException
+	 *             - if interrupted while waiting for the event dispatch thread
+	 */
+	public static Report replay(JChartPanel panel, List<Event> trace, boolean recordedSpeed)
+			throws InterruptedException
+	{
+		return replay(panel, trace, recordedSpeed, false);
+	}
+
+	/**
+	 * Replays a trace against a chart panel, delivering each event to the chart
+	 * panel and then painting it into an off-screen image the size of the chart
+	 * panel. The chart panel is placed in the given placement mode, and its own
+	 * placement mode is restored afterwards.
+	 * 
+	 * Each event is delivered and painted on the event dispatch thread. Between
+	 * events, the event dispatch thread runs its other pending work, such as
+	 * publishing a placement calculated asynchronously, so the replay must not be
+	 * called from the event dispatch thread with asynchronous placement: the
+	 * placements would never be published, and every paint would show the first
+	 * one.
+	 * 
+	 * @param panel
+	 *            - the chart panel
+	 * @param trace
+	 *            - the events to replay, in order of time
+	 * @param recordedSpeed
+	 *            - true to wait until the recorded time of each event, false to
+	 *            replay the events as fast as possible
+	 * @param asyncPlacement
+	 *            - true to calculate the placement off the event dispatch thread,
+	 *            so that the latencies leave out the placement calculations, false
+	 *            to calculate it in each paint that needs it
+	 * @return - the latencies and throughput of the replay
+	 * @throws InterruptedException
+	 *             - if interrupted while waiting for the event dispatch thread
+	 * @throws IllegalStateException
+	 *             - if called from the event dispatch thread with asynchronous
+	 *             placement
+	 */
+	public static Report replay(final JChartPanel panel, List<Event> trace, boolean recordedSpeed,
+			final boolean asyncPlacement) throws InterruptedException
+	{
+		if (asyncPlacement && SwingUtilities.isEventDispatchThread())
+			throw new IllegalStateException("Asynchronous placement cannot be replayed on the event dispatch thread");
+
+		final boolean panelAsyncPlacement = panel.asyncPlacement;
+		char[] types = new char[trace.size()];
+		long[] latencies = new long[trace.size()];
+		Step step = new Step(panel);
+
+		runOnEventDispatchThread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				panel.setAsyncPlacement(asyncPlacement);
+			}
+		});
+
+		try
+		{
+			long start = System.nanoTime();
+
+			for (int i = 0 ; i < trace.size() ; ++i)
+			{
+				step.event = trace.get(i);
+
+				if (recordedSpeed)
+					waitUntil(start + step.event.time);
+
+				runOnEventDispatchThread(step);
+
+				types[i] = step.event.type;
+				latencies[i] = step.latency;
+			}
+
+			return new Report(types, latencies, System.nanoTime() - start);
+		}
+		finally
+		{
+			runOnEventDispatchThread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					panel.setAsyncPlacement(panelAsyncPlacement);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Runs a task on the event dispatch thread and waits for it, or runs it
+	 * directly when called from the event dispatch thread.
+	 * 
+	 * @param task
+	 *            - the task to run
+	 * @throws InterruptedException
+	 *             - if interrupted while waiting for the event dispatch thread
+	 */
+	protected static void runOnEventDispatchThread(Runnable task) throws InterruptedException
+	{
+		if (SwingUtilities.isEventDispatchThread())
+		{
+			task.run();
+			return;
+		}
+
+		try
+		{
+			SwingUtilities.invokeAndWait(task);
+		}
+		catch (InvocationTargetException e)
+		{
+			// The task can only throw unchecked exceptions
+			if (e.getCause() instanceof Error)
+				throw (Error) e.getCause();
+
+			throw (RuntimeException) e.getCause();
+		}
+	}
+
+	/**
+	 * Delivers an event to a chart panel, as the event handlers of the chart panel
+	 * would receive it.
+	 * 
+	 * @param panel
+	 *            - the chart panel
+	 * @param event
+	 *            - the event
+	 * @param when
+	 *            - the timestamp to give the event, in milliseconds since the
+	 *            epoch
+	 */
+	protected static void deliver(JChartPanel panel, Event event, long when)
+	{
+		if (event.type == MOUSE_MOVE)
+			panel.mouseMoved(new MouseEvent(panel, MouseEvent.MOUSE_MOVED, when, 0, event.a, event.b, 0, false));
+		else if (event.type == KEY_PRESS)
+			panel.keyPressed(new KeyEvent(panel, KeyEvent.KEY_PRESSED, when, 0, event.a, KeyEvent.CHAR_UNDEFINED));
+		else if (event.type == KEY_TYPE)
+			panel.keyTyped(new KeyEvent(panel, KeyEvent.KEY_TYPED, when, 0, KeyEvent.VK_UNDEFINED, (char) event.a));
+		else if (event.type == RESIZE)
+			panel.setSize(event.a, event.b);
+		else if (event.type == APPEND)
+			panel.appendToSeries(event.a, event.values);
+	}
+
+	/**
+	 * Sleeps until the given time.
+	 * 
+	 * @param time
+	 *            - the time to wait for, as given by System.nanoTime()
+	 */
+	protected static void waitUntil(long time)
+	{
+		long remaining;
+
+		while ((remaining = time - System.nanoTime()) > 0)
+		{
+			try
+			{
+				Thread.sleep(remaining / 1000000, (int) (remaining % 1000000));
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Writes a trace to a file, one event per line.
+	 * 
+	 * @param trace
+	 *            - the events of the trace
+	 * @param file
+	 *            - the file to write
+	 * @throws IOException
+	 *             - if the file cannot be written
+	 */
+	public static void saveTrace(List<Event> trace, File file) throws IOException
+	{
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+
+		try
+		{
+			writer.write(TRACE_HEADER + "\n");
+
+			for (Event event : trace)
+			{
+				StringBuilder sb = new StringBuilder();
+				sb.append(event.time).append(' ').append(event.type).append(' ').append(event.a);
+
+				if (event.type == MOUSE_MOVE || event.type == RESIZE)
+					sb.append(' ').append(event.b);
+
+				if (event.values != null)
+					for (double v : event.values)
+						sb.append(' ').append(v);
+
+				writer.write(sb.append('\n').toString());
+			}
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+
+	/**
+	 * Reads a trace from a file written by saveTrace.
+	 * 
+	 * @param file
+	 *            - the file to read
+	 * @return - the events of the trace
+	 * @throws IOException
+	 *             - if the file cannot be read, or is not a trace file
+	 */
+	public static List<Event> loadTrace(File file) throws IOException
+	{
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+				StandardCharsets.UTF_8));
+
+		try
+		{
+			if (!TRACE_HEADER.equals(reader.readLine()))
+				throw new IOException("Not a JChartPanel trace file: " + file);
+
+			List<Event> trace = new ArrayList<Event>();
+			String line;
+
+			while ((line = reader.readLine()) != null)
+			{
+				if (line.isEmpty())
+					continue;
+
+				String[] fields = line.split(" ");
+
+				try
+				{
+					long time = Long.parseLong(fields[0]);
+					char type = fields[1].charAt(0);
+					int a = Integer.parseInt(fields[2]);
+					int b = 0;
+					double[] values = null;
+
+					if (type == MOUSE_MOVE || type == RESIZE)
+					{
+						b = Integer.parseInt(fields[3]);
+					}
+					else if (type == APPEND)
+					{
+						values = new double[fields.length - 3];
+
+						for (int v = 0 ; v < values.length ; ++v)
+							values[v] = Double.parseDouble(fields[3 + v]);
+					}
+
+					trace.add(new Event(time, type, a, b, values));
+				}
+				catch (RuntimeException e)
+				{
+					throw new IOException("Invalid trace line: " + line, e);
+				}
+			}
+
+			return trace;
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	/**
+	 * Replays a trace against a chart panel of generated series, and prints the
+	 * report. Without a trace file, a trace is generated from a fixed seed, so
+	 * every run replays the same events.
+	 * 
+	 * @param args
+	 *            - the number of series (default 20), the number of data points
+	 *            per series (default 100000), the trace file to replay (default
+	 *            a generated trace of 2000 events, or "-"), "recorded" to replay
+	 *            at recorded speed rather than as fast as possible (or "-"), and
+	 *            "sync" or "async" to choose the placement mode (default
+	 *            "sync")
+	 * @throws IOException
+	 *             - if the trace file cannot be read
+	 * @throws InterruptedException
+	 *             - if interrupted while replaying
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException
+	{
+		int seriesCount = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		int pointsPerSeries = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+		boolean recordedSpeed = args.length > 3 && args[3].equals("recorded");
+
+		List<Event> trace = args.length > 2 && !args[2].equals("-") ? loadTrace(new File(args[2]))
+				: generateTrace(2000, seriesCount, 1200, 800, 1L);
+		JChartPanel panel = createPanel(seriesCount, pointsPerSeries, 1L);
+		boolean asyncPlacement = args.length > 4 && args[4].equals("async");
+
+		panel.setSize(1200, 800);
+
+		// Replay from the main thread; each event is handled and painted on the event
+		// dispatch thread, as on a live chart panel
+		System.out.print(replay(panel, trace, recordedSpeed, asyncPlacement));
+	}
+}
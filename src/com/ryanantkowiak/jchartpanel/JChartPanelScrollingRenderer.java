@@ -0,0 +1,449 @@
+package com.ryanantkowiak.jchartpanel;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class used internally by JChartPanel to draw rolling live charts. The chart
+ * shows the most recent data points of the data series, all on a shared index
+ * axis. When data points are appended, the previously drawn image is shifted
+ * left by the number of pixels the window moved, and only the newly exposed
+ * columns are drawn. The whole image is only redrawn when the range of values
+ * of a series in the window changes, when data points of a series are
+ * rewritten, or when the size or the set of series changes.
+ * 
+ * @author antko
+ *
+ */
+public class JChartPanelScrollingRenderer
+{
+	/**
+	 * Double-ended queue of data point indices and values, used to track the
+	 * minimum or maximum value of a sliding window of data points.
+	 * 
+	 * @author antko
+	 *
+	 */
+	protected static class WindowDeque
+	{
+		/**
+		 * The indices of the data points in the queue.
+		 */
+		protected int[] indices = new int[16];
+
+		/**
+		 * The values of the data points in the queue.
+		 */
+		protected double[] values = new double[16];
+
+		/**
+		 * The position of the first element of the queue in the arrays.
+		 */
+		protected int head;
+
+		/**
+		 * The number of elements in the queue.
+		 */
+		protected int count;
+
+		/**
+		 * Adds a data point to the back of the queue, first removing the data points
+		 * at the back that it dominates.
+		 * 
+		 * @param index
+		 *            - the index of the data point
+		 * @param value
+		 *            - the value of the data point
+		 * @param maximum
+		 *            - true if the queue tracks the maximum, false for the minimum
+		 */
+		protected void push(int index, double value, boolean maximum)
+		{
+			while (count > 0)
+			{
+				double back = values[(head + count - 1) & (values.length - 1)];
+
+				if (maximum ? back > value : back < value)
+					break;
+
+				--count;
+			}
+
+			if (count == values.length)
+				grow();
+
+			int pos = (head + count) & (values.length - 1);
+			indices[pos] = index;
+			values[pos] = value;
+			++count;
+		}
+
+		/**
+		 * Removes the data points at the front of the queue that are before the start
+		 * of the window.
+		 * 
+		 * @param start
+		 *            - the index of the first data point in the window
+		 */
+		protected void expire(int start)
+		{
+			while (count > 0 && indices[head] < start)
+			{
+				head = (head + 1) & (values.length - 1);
+				--count;
+			}
+		}
+
+		/**
+		 * Returns the value at the front of the queue.
+		 * 
+		 * @return - the minimum or maximum value of the window
+		 */
+		protected double front()
+		{
+			return values[head];
+		}
+
+		/**
+		 * Doubles the capacity of the queue.
+		 */
+		protected void grow()
+		{
+			int n = values.length;
+			int[] newIndices = new int[n * 2];
+			double[] newValues = new double[n * 2];
+
+			for (int i = 0 ; i < count ; ++i)
+			{
+				newIndices[i] = indices[(head + i) & (n - 1)];
+				newValues[i] = values[(head + i) & (n - 1)];
+			}
+
+			indices = newIndices;
+			values = newValues;
+			head = 0;
+		}
+	}
+
+	/**
+	 * The state kept for each data series between frames.
+	 * 
+	 * @author antko
+	 *
+	 */
+	protected static class SeriesState
+	{
+		/**
+		 * Queue tracking the minimum value in the window.
+		 */
+		protected final WindowDeque minDeque = new WindowDeque();
+
+		/**
+		 * Queue tracking the maximum value in the window.
+		 */
+		protected final WindowDeque maxDeque = new WindowDeque();
+
+		/**
+		 * The number of data points added to the queues.
+		 */
+		protected int queuedSize;
+
+		/**
+		 * The number of data points when the series was last drawn.
+		 */
+		protected int drawnSize;
+
+		/**
+		 * The minimum value in the window when the series was last drawn.
+		 */
+		protected double minValue;
+
+		/**
+		 * The maximum value in the window when the series was last drawn.
+		 */
+		protected double maxValue;
+
+		/**
+		 * The update count of the storage when the queues were filled.
+		 */
+		protected int updateCount;
+	}
+
+	/**
+	 * The image holding the drawn series layer.
+	 */
+	protected BufferedImage image;
+
+	/**
+	 * The state of each data series, by storage.
+	 */
+	protected Map<JChartPanelSeriesStorage, SeriesState> states = new IdentityHashMap<JChartPanelSeriesStorage, SeriesState>();
+
+	/**
+	 * The storages of the data series in the last drawn frame.
+	 */
+	protected List<JChartPanelSeriesStorage> drawnStorages = new ArrayList<JChartPanelSeriesStorage>();
+
+	/**
+	 * The colors of the data series in the last drawn frame.
+	 */
+	protected List<Color> drawnColors = new ArrayList<Color>();
+
+	/**
+	 * The background color of the last drawn frame.
+	 */
+	protected Color drawnBackground;
+
+	/**
+	 * The number of data points in the window of the last drawn frame.
+	 */
+	protected int drawnWindowSize;
+
+	/**
+	 * The index of the first data point in the window of the last drawn frame.
+	 */
+	protected int drawnStart;
+
+	/**
+	 * Draws the background and the line graphs of the most recent data points of
+	 * the given data series into an image the size of the chart panel.
+	 * 
+	 * @param storages
+	 *            - the storage of each data series to draw
+	 * @param colors
+	 *            - the color of each data series to draw
+	 * @param background
+	 *            - the background color of the chart panel
+	 * @param width
+	 *            - the width of the chart panel in pixels
+	 * @param height
+	 *            - the height of the chart panel in pixels
+	 * @param windowSize
+	 *            - the number of data points shown across the chart panel
+	 * @return - the image holding the drawn series layer
+	 */
+	public BufferedImage render(List<JChartPanelSeriesStorage> storages, List<Color> colors, Color background,
+			int width, int height, int windowSize)
+	{
+		int end = 0;
+
+		for (JChartPanelSeriesStorage storage : storages)
+			end = Math.max(end, storage.size());
+
+		int start = Math.max(0, end - windowSize);
+		double pixelsPerValue = width / (windowSize - 1.0);
+
+		boolean fullRedraw = image == null || image.getWidth() != width || image.getHeight() != height
+				|| windowSize != drawnWindowSize || start < drawnStart || !background.equals(drawnBackground)
+				|| !storages.equals(drawnStorages) || !colors.equals(drawnColors);
+
+		if (fullRedraw)
+		{
+			if (image == null || image.getWidth() != width || image.getHeight() != height)
+				image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+
+			states.keySet().retainAll(storages);
+		}
+
+		// Slide the window of each series, and check whether its range of values changed
+		boolean resetStates = fullRedraw;
+
+		for (JChartPanelSeriesStorage storage : storages)
+		{
+			SeriesState state = states.get(storage);
+
+			// Rewritten data points may be in the window, and in the queues
+			int updateCount = storage instanceof JChartPanelUpdatableSeriesStorage
+					? ((JChartPanelUpdatableSeriesStorage) storage).getUpdateCount() : 0;
+
+			if (state == null || resetStates || updateCount != state.updateCount)
+			{
+				state = new SeriesState();
+				state.queuedSize = start;
+				state.drawnSize = start;
+				state.updateCount = updateCount;
+				states.put(storage, state);
+				fullRedraw = true;
+			}
+
+			int size = storage.size();
+
+			for (int i = Math.max(state.queuedSize, start) ; i < size ; ++i)
+			{
+				double v = storage.get(i);
+				state.minDeque.push(i, v, false);
+				state.maxDeque.push(i, v, true);
+			}
+
+			state.queuedSize = size;
+			state.minDeque.expire(start);
+			state.maxDeque.expire(start);
+
+			if (state.minDeque.count > 0
+					&& (state.minDeque.front() != state.minValue || state.maxDeque.front() != state.maxValue))
+			{
+				state.minValue = state.minDeque.front();
+				state.maxValue = state.maxDeque.front();
+				fullRedraw = true;
+			}
+		}
+
+		int shift = pixelX(start, pixelsPerValue) - pixelX(drawnStart, pixelsPerValue);
+
+		if (shift >= width)
+			fullRedraw = true;
+
+		Graphics2D g = image.createGraphics();
+
+		try
+		{
+			int fromX = 0;
+
+			if (!fullRedraw)
+			{
+				// Shift the previous frame left, then redraw the exposed columns, starting from
+				// the last previously drawn data point of each series
+				if (shift > 0)
+					g.copyArea(shift, 0, width - shift, height, -shift, 0);
+
+				fromX = width - shift;
+
+				for (JChartPanelSeriesStorage storage : storages)
+				{
+					SeriesState state = states.get(storage);
+
+					if (state.drawnSize > start)
+						fromX = Math.min(fromX,
+								pixelX(state.drawnSize - 1, pixelsPerValue) - pixelX(start, pixelsPerValue));
+				}
+
+				fromX = Math.max(0, fromX);
+			}
+
+			g.setClip(fromX, 0, width - fromX, height);
+			g.setColor(background);
+			g.fillRect(fromX, 0, width - fromX, height);
+
+			for (int s = 0 ; s < storages.size() ; ++s)
+			{
+				JChartPanelSeriesStorage storage = storages.get(s);
+				SeriesState state = states.get(storage);
+				int size = storage.size();
+
+				g.setColor(colors.get(s));
+				drawSegments(g, storage, state, start, size, fromX, pixelsPerValue, height);
+
+				state.drawnSize = size;
+			}
+		}
+		finally
+		{
+			g.dispose();
+		}
+
+		drawnStorages = new ArrayList<JChartPanelSeriesStorage>(storages);
+		drawnColors = new ArrayList<Color>(colors);
+		drawnBackground = background;
+		drawnWindowSize = windowSize;
+		drawnStart = start;
+
+		return image;
+	}
+
+	/**
+	 * Draws the line graph segments of a data series that end at or right of the
+	 * given x-coordinate.
+	 * 
+	 * @param g
+	 *            - the graphics context of the image
+	 * @param storage
+	 *            - the storage of the series data points
+	 * @param state
+	 *            - the state of the series
+	 * @param start
+	 *            - the index of the first data point in the window
+	 * @param size
+	 *            - the number of data points of the series
+	 * @param fromX
+	 *            - the x-coordinate of the leftmost column to draw
+	 * @param pixelsPerValue
+	 *            - the amount of pixels per value in the series data
+	 * @param height
+	 *            - the height of the chart panel in pixels
+	 */
+	protected void drawSegments(Graphics2D g, JChartPanelSeriesStorage storage, SeriesState state, int start,
+			int size, int fromX, double pixelsPerValue, int height)
+	{
+		int originX = pixelX(start, pixelsPerValue);
+
+		// Find the first data point at or right of fromX; the segment ending at it is
+		// the first one to draw. It may start left of the window, so that the line
+		// enters the chart from the left edge the same way after shifting as after a
+		// full redraw.
+		int i = Math.max(1, start + (int) (fromX / pixelsPerValue) - 1);
+
+		while (i > 1 && pixelX(i - 1, pixelsPerValue) - originX >= fromX)
+			--i;
+
+		while (i < size && pixelX(i, pixelsPerValue) - originX < fromX)
+			++i;
+
+		if (i >= size)
+			return;
+
+		double span = state.maxValue - state.minValue;
+		int prevX = pixelX(i - 1, pixelsPerValue) - originX;
+		int prevY = pixelY(storage.get(i - 1), state.minValue, span, height);
+
+		for ( ; i < size ; ++i)
+		{
+			int x = pixelX(i, pixelsPerValue) - originX;
+			int y = pixelY(storage.get(i), state.minValue, span, height);
+
+			g.drawLine(prevX, prevY, x, y);
+
+			prevX = x;
+			prevY = y;
+		}
+	}
+
+	/**
+	 * Calculates the x-coordinate of a data point relative to the first data point
+	 * of the series.
+	 * 
+	 * @param index
+	 *            - the index of the data point
+	 * @param pixelsPerValue
+	 *            - the amount of pixels per value in the series data
+	 * @return - the x-coordinate, in pixels
+	 */
+	protected static int pixelX(int index, double pixelsPerValue)
+	{
+		return (int) (pixelsPerValue * index);
+	}
+
+	/**
+	 * Calculates the y-coordinate of a value of a data series.
+	 * 
+	 * @param value
+	 *            - the value of a data point
+	 * @param minValue
+	 *            - the minimum value in the window
+	 * @param valueSpan
+	 *            - the range of values in the window
+	 * @param height
+	 *            - the height of the chart panel in pixels
+	 * @return - the y-coordinate, in pixels
+	 */
+	protected static int pixelY(double value, double minValue, double valueSpan, int height)
+	{
+		double yPctInRange = (value - minValue) / (valueSpan);
+
+		return (int) (height - (yPctInRange * height));
+	}
+}
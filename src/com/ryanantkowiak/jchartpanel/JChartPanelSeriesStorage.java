@@ -0,0 +1,72 @@
+package com.ryanantkowiak.jchartpanel;
+
+/**
+ * Interface for the in-memory storage of the raw data points of a series. A
+ * JChartPanelDataScreenPlacement reads the data points of a series through this
+ * interface, so the representation of the values can be chosen per series.
+ * 
+ * A storage is read by the threads that place the series off the event
+ * dispatch thread while data points are appended to it, or rewritten, on the
+ * event dispatch thread. Implementations must therefore be safe to read from
+ * any thread while they are written: the storages of this package synchronize
+ * every method that reads or writes their data points on the storage. Reading
+ * a range of data points with several calls may see data points appended or
+ * rewritten in between, which the chart panel detects and places again.
+ * 
+ * @author antko
+ *
+ */
+public interface JChartPanelSeriesStorage
+{
+	/**
+	 * Returns the number of data points in the storage.
+	 * 
+	 * @return - the number of data points
+	 */
+	public int size();
+
+	/**
+	 * Returns the value of the data point at the given index.
+	 * 
+	 * @param index
+	 *            - the index of the data point
+	 * @return - the value of the data point
+	 */
+	public double get(int index);
+
+	/**
+	 * Returns the minimum value of all the data points in the storage.
+	 * 
+	 * @return - the minimum value
+	 */
+	public double getMinValue();
+
+	/**
+	 * Returns the maximum value of all the data points in the storage.
+	 * 
+	 * @return - the maximum value
+	 */
+	public double getMaxValue();
+
+	/**
+	 * Calculates the minimum and maximum value of the data points in a range of
+	 * indices.
+	 * 
+	 * @param fromIndex
+	 *            - the first index of the range (inclusive)
+	 * @param toIndex
+	 *            - the last index of the range (exclusive)
+	 * @param minMax
+	 *            - array of at least two elements, which receives the minimum
+	 *            value at index 0 and the maximum value at index 1
+	 */
+	public void getRangeMinMax(int fromIndex, int toIndex, double[] minMax);
+
+	/**
+	 * Appends a data point to the end of the storage.
+	 * 
+	 * @param value
+	 *            - the value of the data point to append
+	 */
+	public void append(double value);
+}
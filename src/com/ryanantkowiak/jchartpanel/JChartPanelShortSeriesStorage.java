@@ -0,0 +1,81 @@
+package com.ryanantkowiak.jchartpanel;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Series storage that holds the data points as scaled 16-bit integers in a
+ * primitive short array.
+ * 
+ * @author antko
+ *
+ */
+public class JChartPanelShortSeriesStorage extends JChartPanelFixedPointSeriesStorage
+{
+	/**
+	 * The raw integer data points. Only the first size elements are in use.
+	 */
+	protected short[] values;
+
+	/**
+	 * Constructor for an empty short series storage.
+	 * 
+	 * @param offset
+	 *            - the value represented by a raw integer value of zero
+	 * @param scale
+	 *            - the difference in value between two consecutive raw integer
+	 *            values, must be positive
+	 */
+	public JChartPanelShortSeriesStorage(double offset, double scale)
+	{
+		super(offset, scale, Short.MIN_VALUE, Short.MAX_VALUE);
+
+		values = new short[DEFAULT_CAPACITY];
+	}
+
+	/**
+	 * Constructor for a short series storage that holds the given data points,
+	 * rounded to the nearest multiple of the scale.
+	 * 
+	 * @param series
+	 *            - the series data points
+	 * @param offset
+	 *            - the value represented by a raw integer value of zero
+	 * @param scale
+	 *            - the difference in value between two consecutive raw integer
+	 *            values, must be positive
+	 */
+	public JChartPanelShortSeriesStorage(List<Double> series, double offset, double scale)
+	{
+		super(offset, scale, Short.MIN_VALUE, Short.MAX_VALUE);
+
+		values = new short[Math.max(series.size(), DEFAULT_CAPACITY)];
+
+		for (Double v : series)
+			append(v);
+	}
+
+	@Override
+	public synchronized int getRaw(int index)
+	{
+		return values[index];
+	}
+
+	@Override
+	protected void setRaw(int index, int raw)
+	{
+		values[index] = (short) raw;
+	}
+
+	@Override
+	protected int capacity()
+	{
+		return values.length;
+	}
+
+	@Override
+	protected void grow(int capacity)
+	{
+		values = Arrays.copyOf(values, capacity);
+	}
+}
@@ -0,0 +1,24 @@
+package com.ryanantkowiak.jchartpanel;
+
+/**
+ * Interface for a series storage that keeps aggregates of its data points, and
+ * so answers statistics queries over a range of indices itself, without the
+ * index of JChartPanelRangeStatistics, which would hold a prefix sum for every
+ * data point of the series.
+ * 
+ * @author antko
+ *
+ */
+public interface JChartPanelSummarizedSeriesStorage extends JChartPanelSeriesStorage
+{
+	/**
+	 * Returns the statistics of the data points in a range of indices.
+	 * 
+	 * @param fromIndex
+	 *            - the first index of the range (inclusive)
+	 * @param toIndex
+	 *            - the last index of the range (exclusive)
+	 * @return - the statistics of the range, or null if the range is empty
+	 */
+	public JChartPanelRangeStatistics.Summary getRangeSummary(int fromIndex, int toIndex);
+}
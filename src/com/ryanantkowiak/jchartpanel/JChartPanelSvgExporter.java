@@ -0,0 +1,570 @@
+package com.ryanantkowiak.jchartpanel;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Point;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Exports the visible data series of a chart panel as an SVG image, written
+ * directly to an output stream. Each series is placed afresh at the size of the
+ * image, so it is decimated per pixel column of the image exactly as it would be
+ * on a chart panel of that size, and a series of any length becomes a path of a
+ * few points per column. Timestamped series are placed on the time axis of the
+ * placement snapshot last drawn by the chart panel. Exporting does not change
+ * the chart panel or the placements of its series, so it can run on any thread.
+ * 
+ * The series are written in the order in which the chart panel draws them: the
+ * percentile envelopes first, then the line graphs grouped by color. A scrolling
+ * chart panel is exported as the scrolling renderer draws it, each series over
+ * the data points in the window and scaled to their range of values. A density
+ * heatmap is a raster image, and is not exported.
+ * 
+ * The paths of the series are built on all the processor cores. Only a few
+ * series are built ahead of the one being written, so the memory used does not
+ * grow with the number of series.
+ * 
+ * @author antko
+ *
+ */
+public class JChartPanelSvgExporter
+{
+	/**
+	 * Number of processor cores available to build paths.
+	 */
+	protected static final int THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Maximum number of series whose paths are built ahead of the series being
+	 * written.
+	 */
+	protected static final int MAX_PENDING_SERIES = THREAD_COUNT * 2;
+
+	/**
+	 * Opacity of the band of a percentile envelope, matching the alpha of the band
+	 * drawn by the chart panel.
+	 */
+	protected static final double ENVELOPE_BAND_OPACITY = 96 / 255.0;
+
+	/**
+	 * Thread pool shared by all the exporters to build paths.
+	 */
+	protected static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREAD_COUNT,
+			new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable r)
+				{
+					Thread t = new Thread(r, "JChartPanelSvgExporter");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+
+	/**
+	 * The chart panel to export.
+	 */
+	protected final JChartPanel panel;
+
+	/**
+	 * Construct a JChartPanelSvgExporter object.
+	 * 
+	 * @param panel
+	 *            - the chart panel to export
+	 */
+	public JChartPanelSvgExporter(JChartPanel panel)
+	{
+		this.panel = panel;
+	}
+
+	/**
+	 * Writes the visible data series of the chart panel, along with its
+	 * background and key/legend, as an SVG image. The output stream is flushed but
+	 * not closed.
+	 * 
+	 * @param out
+	 *            - the output stream to write the image to
+	 * @param width
+	 *            - the width of the image in pixels
+	 * @param height
+	 *            - the height of the image in pixels
+	 * @throws IOException
+	 *             - if the image cannot be written, a series cannot be exported,
+	 *             or the export is interrupted
+	 * @throws UnsupportedOperationException
+	 *             - if the chart panel draws its series as a density heatmap,
+	 *             which has no vector form
+	 */
+	public void export(OutputStream out, int width, int height) throws IOException
+	{
+		if (panel.densityMode)
+			throw new UnsupportedOperationException("A density heatmap cannot be exported as SVG");
+
+		final Dimension size = new Dimension(width, height);
+		List<JChartPanel.ChartSeriesStruct> series = panel.seriesData;
+		List<JChartPanel.ChartSeriesStruct> visible = new ArrayList<JChartPanel.ChartSeriesStruct>();
+
+		for (JChartPanel.ChartSeriesStruct css : series)
+			if (css.visible)
+				visible.add(css);
+
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+
+		writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		writer.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + width + "\" height=\"" + height
+				+ "\" viewBox=\"0 0 " + width + " " + height + "\">\n");
+		writer.write("<rect width=\"100%\" height=\"100%\"" + fill(panel.chartBackgroundColor) + "/>\n");
+
+		final int scrollingWindow = panel.scrollingWindow;
+
+		if (scrollingWindow > 0)
+		{
+			// A scrolling chart panel draws the series in order, over their most recent
+			// data points
+			int end = 0;
+
+			for (JChartPanel.ChartSeriesStruct css : visible)
+				end = Math.max(end, css.seriesData.storage.size());
+
+			final int start = Math.max(0, end - scrollingWindow);
+			List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+
+			for (final JChartPanel.ChartSeriesStruct css : visible)
+			{
+				tasks.add(new Callable<String>()
+				{
+					@Override
+					public String call()
+					{
+						return buildScrollingSeries(css, size, start, scrollingWindow);
+					}
+				});
+			}
+
+			writeInOrder(writer, tasks);
+		}
+		else
+		{
+			// Place the timestamped series on the time axis last drawn by the chart panel
+			JChartPanelPlacementSnapshot snapshot = panel.placementSnapshot;
+			final long timeFrom = snapshot != null ? snapshot.timeFrom : panel.timeFrom;
+			final long timeTo = snapshot != null ? snapshot.timeTo : panel.timeTo;
+
+			// The chart panel draws the percentile envelopes first, in the order of the
+			// series. A series without enough data points for an envelope is drawn as a
+			// line graph, and its path is kept for the line graphs.
+			final Map<JChartPanel.ChartSeriesStruct, String> fallbackPaths = new ConcurrentHashMap<JChartPanel.ChartSeriesStruct, String>();
+			List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+
+			for (final JChartPanel.ChartSeriesStruct css : visible)
+			{
+				if (css.envelope)
+				{
+					tasks.add(new Callable<String>()
+					{
+						@Override
+						public String call()
+						{
+							JChartPanelPlacementSnapshot.Series placed = place(css, size, timeFrom, timeTo);
+
+							if (placed.envelope != null)
+								return buildEnvelope(css.seriesColor, placed.envelope);
+
+							fallbackPaths.put(css, buildPath(css.seriesColor, placed.points));
+							return "";
+						}
+					});
+				}
+			}
+
+			writeInOrder(writer, tasks);
+
+			// The line graphs are drawn next, grouped by color in the order each color
+			// first appears
+			Map<Color, List<JChartPanel.ChartSeriesStruct>> batches = new LinkedHashMap<Color, List<JChartPanel.ChartSeriesStruct>>();
+
+			for (JChartPanel.ChartSeriesStruct css : visible)
+			{
+				if (css.envelope && !fallbackPaths.containsKey(css))
+					continue;
+
+				List<JChartPanel.ChartSeriesStruct> batch = batches.get(css.seriesColor);
+
+				if (batch == null)
+				{
+					batch = new ArrayList<JChartPanel.ChartSeriesStruct>();
+					batches.put(css.seriesColor, batch);
+				}
+
+				batch.add(css);
+			}
+
+			tasks.clear();
+
+			for (List<JChartPanel.ChartSeriesStruct> batch : batches.values())
+			{
+				for (final JChartPanel.ChartSeriesStruct css : batch)
+				{
+					tasks.add(new Callable<String>()
+					{
+						@Override
+						public String call()
+						{
+							String path = fallbackPaths.remove(css);
+
+							if (path != null)
+								return path;
+
+							return buildPath(css.seriesColor, place(css, size, timeFrom, timeTo).points);
+						}
+					});
+				}
+			}
+
+			writeInOrder(writer, tasks);
+		}
+
+		if (panel.showKey)
+			writeKey(writer, series);
+
+		writer.write("</svg>\n");
+		writer.flush();
+	}
+
+	/**
+	 * Runs tasks that build SVG elements on all the processor cores, and writes
+	 * their elements in the order of the tasks. Only a few tasks are run ahead of
+	 * the one being written.
+	 * 
+	 * @param writer
+	 *            - the writer of the image
+	 * @param tasks
+	 *            - the tasks building the SVG elements
+	 * @throws IOException
+	 *             - if the elements cannot be written, a task fails, or the
+	 *             export is interrupted
+	 */
+	protected void writeInOrder(Writer writer, List<Callable<String>> tasks) throws IOException
+	{
+		Queue<Future<String>> pending = new ArrayDeque<Future<String>>();
+
+		try
+		{
+			for (Callable<String> task : tasks)
+			{
+				if (pending.size() >= MAX_PENDING_SERIES)
+					writer.write(pending.remove().get());
+
+				pending.add(EXECUTOR.submit(task));
+			}
+
+			while (!pending.isEmpty())
+				writer.write(pending.remove().get());
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("SVG export interrupted");
+		}
+		catch (ExecutionException e)
+		{
+			throw new IOException("Cannot export series", e.getCause());
+		}
+		finally
+		{
+			for (Future<String> f : pending)
+				f.cancel(true);
+		}
+	}
+
+	/**
+	 * Places a data series at the size of the image.
+	 * 
+	 * @param css
+	 *            - the data series
+	 * @param size
+	 *            - the size of the image
+	 * @param timeFrom
+	 *            - the time at the left edge of the image, for a timestamped
+	 *            series
+	 * @param timeTo
+	 *            - the time at the right edge of the image, for a timestamped
+	 *            series
+	 * @return - the screen points of the series, and its envelope if requested
+	 */
+	protected JChartPanelPlacementSnapshot.Series place(JChartPanel.ChartSeriesStruct css, Dimension size,
+			long timeFrom, long timeTo)
+	{
+		// Place the series afresh rather than through the placement of the chart
+		// panel, which stays at the size of the chart panel
+		JChartPanelDataScreenPlacement placement = new JChartPanelDataScreenPlacement(css.seriesData.storage, size);
+		return placement.place(size, timeFrom, timeTo, css.envelope);
+	}
+
+	/**
+	 * Builds the SVG elements that draw a percentile envelope: its band and its
+	 * median path.
+	 * 
+	 * @param color
+	 *            - the color of the data series
+	 * @param envelope
+	 *            - the lower edge, median and upper edge of the envelope
+	 * @return - the SVG elements
+	 */
+	protected static String buildEnvelope(Color color, int[][] envelope)
+	{
+		StringBuilder sb = new StringBuilder();
+		int[] low = envelope[0];
+		int[] median = envelope[1];
+		int[] high = envelope[2];
+
+		sb.append("<path fill=\"none\"").append(stroke(color, ENVELOPE_BAND_OPACITY)).append(" d=\"");
+
+		for (int x = 0 ; x < low.length ; ++x)
+			if (low[x] != Integer.MIN_VALUE)
+				sb.append('M').append(x).append(' ').append(high[x]).append('V').append(low[x]);
+
+		sb.append("\"/>\n");
+
+		List<Point> medians = new ArrayList<Point>();
+
+		for (int x = 0 ; x < median.length ; ++x)
+			if (median[x] != Integer.MIN_VALUE)
+				medians.add(new Point(x, median[x]));
+
+		appendPath(sb, color, medians);
+
+		return sb.toString();
+	}
+
+	/**
+	 * Builds the SVG element that draws a line graph through a list of screen
+	 * points.
+	 * 
+	 * @param color
+	 *            - the color of the data series
+	 * @param points
+	 *            - the screen points
+	 * @return - the SVG element
+	 */
+	protected static String buildPath(Color color, List<Point> points)
+	{
+		StringBuilder sb = new StringBuilder();
+		appendPath(sb, color, points);
+		return sb.toString();
+	}
+
+	/**
+	 * Builds the SVG element that draws a data series of a scrolling chart panel:
+	 * the line graph of its data points in the window, scaled to the range of
+	 * values in the window, as drawn by the scrolling renderer.
+	 * 
+	 * @param css
+	 *            - the data series
+	 * @param size
+	 *            - the size of the image
+	 * @param start
+	 *            - the index of the first data point in the window
+	 * @param windowSize
+	 *            - the number of data points shown across the image
+	 * @return - the SVG element
+	 */
+	protected static String buildScrollingSeries(JChartPanel.ChartSeriesStruct css, Dimension size, int start,
+			int windowSize)
+	{
+		JChartPanelSeriesStorage storage = css.seriesData.storage;
+		int end = storage.size();
+
+		if (end <= start)
+			return "";
+
+		double minValue = Double.MAX_VALUE;
+		double maxValue = -Double.MAX_VALUE;
+
+		for (int i = start ; i < end ; ++i)
+		{
+			double v = storage.get(i);
+			minValue = Math.min(minValue, v);
+			maxValue = Math.max(maxValue, v);
+		}
+
+		// The line enters the image from the data point left of the window
+		double pixelsPerValue = size.width / (windowSize - 1.0);
+		int originX = JChartPanelScrollingRenderer.pixelX(start, pixelsPerValue);
+		List<Point> points = new ArrayList<Point>();
+
+		for (int i = Math.max(0, start - 1) ; i < end ; ++i)
+			points.add(new Point(JChartPanelScrollingRenderer.pixelX(i, pixelsPerValue) - originX,
+					JChartPanelScrollingRenderer.pixelY(storage.get(i), minValue, maxValue - minValue,
+							size.height)));
+
+		return buildPath(css.seriesColor, points);
+	}
+
+	/**
+	 * Appends a path through a list of screen points.
+	 * 
+	 * @param sb
+	 *            - the builder to append the path to
+	 * @param color
+	 *            - the color of the path
+	 * @param points
+	 *            - the screen points
+	 */
+	protected static void appendPath(StringBuilder sb, Color color, List<Point> points)
+	{
+		if (points.size() < 2)
+			return;
+
+		sb.append("<path fill=\"none\" stroke-linejoin=\"round\"").append(stroke(color, 1.0)).append(" d=\"M");
+
+		for (int i = 0 ; i < points.size() ; ++i)
+		{
+			if (i > 0)
+				sb.append(' ');
+
+			sb.append(points.get(i).x).append(' ').append(points.get(i).y);
+		}
+
+		sb.append("\"/>\n");
+	}
+
+	/**
+	 * Writes the key/legend of the chart panel, with the same position, spacing
+	 * and font as on the chart panel.
+	 * 
+	 * @param writer
+	 *            - the writer of the image
+	 * @param series
+	 *            - the data series of the chart panel
+	 * @throws IOException
+	 *             - if the key cannot be written
+	 */
+	protected void writeKey(Writer writer, List<JChartPanel.ChartSeriesStruct> series) throws IOException
+	{
+		Font font = panel.keyFont;
+
+		writer.write("<g font-family=\"" + escape(font.getFamily()) + "\" font-size=\"" + font.getSize() + "\""
+				+ (font.isBold() ? " font-weight=\"bold\"" : "") + (font.isItalic() ? " font-style=\"italic\"" : "")
+				+ ">\n");
+
+		for (int i = 0 ; i < series.size() ; ++i)
+		{
+			JChartPanel.ChartSeriesStruct css = series.get(i);
+
+			if (css.visible)
+			{
+				int y = panel.keyPosition.y + i * panel.keyYDelta;
+				String label = "" + css.seriesIndex + ": " + css.seriesName;
+
+				writer.write("<text x=\"" + panel.keyPosition.x + "\" y=\"" + y + "\"" + fill(css.seriesColor) + ">"
+						+ escape(label) + "</text>\n");
+			}
+		}
+
+		writer.write("</g>\n");
+	}
+
+	/**
+	 * Returns the fill attributes for a color.
+	 * 
+	 * @param color
+	 *            - the color
+	 * @return - the fill attributes, with a leading space
+	 */
+	protected static String fill(Color color)
+	{
+		String attributes = " fill=\"" + hex(color) + "\"";
+
+		if (color.getAlpha() < 255)
+			attributes += String.format(Locale.ROOT, " fill-opacity=\"%.3f\"", color.getAlpha() / 255.0);
+
+		return attributes;
+	}
+
+	/**
+	 * Returns the stroke attributes for a color, with an opacity applied on top of
+	 * the alpha of the color.
+	 * 
+	 * @param color
+	 *            - the color
+	 * @param opacity
+	 *            - the opacity, between 0 and 1
+	 * @return - the stroke attributes, with a leading space
+	 */
+	protected static String stroke(Color color, double opacity)
+	{
+		String attributes = " stroke=\"" + hex(color) + "\"";
+
+		opacity *= color.getAlpha() / 255.0;
+
+		if (opacity < 1.0)
+			attributes += String.format(Locale.ROOT, " stroke-opacity=\"%.3f\"", opacity);
+
+		return attributes;
+	}
+
+	/**
+	 * Returns the hexadecimal notation of the red, green and blue components of a
+	 * color.
+	 * 
+	 * @param color
+	 *            - the color
+	 * @return - the color as #rrggbb
+	 */
+	protected static String hex(Color color)
+	{
+		return String.format("#%06x", color.getRGB() & 0xFFFFFF);
+	}
+
+	/**
+	 * Escapes the characters of a string that are special in XML.
+	 * 
+	 * @param text
+	 *            - the string to escape
+	 * @return - the escaped string
+	 */
+	protected static String escape(String text)
+	{
+		StringBuilder sb = new StringBuilder(text.length());
+
+		for (int i = 0 ; i < text.length() ; ++i)
+		{
+			char c = text.charAt(i);
+
+			if (c == '&')
+				sb.append("&amp;");
+			else if (c == '<')
+				sb.append("&lt;");
+			else if (c == '>')
+				sb.append("&gt;");
+			else if (c == '"')
+				sb.append("&quot;");
+			else
+				sb.append(c);
+		}
+
+		return sb.toString();
+	}
+}
@@ -0,0 +1,209 @@
+package com.ryanantkowiak.jchartpanel;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Class used internally by JChartPanel to draw the line graphs of the data
+ * series of a large chart panel on all processor cores. The chart panel is
+ * split into vertical strips, and each strip is drawn by its own thread into
+ * its own tile of a shared image. Since the x-coordinates of the screen points
+ * of a series never decrease, the points that cross a strip are found with a
+ * binary search.
+ * 
+ * @author antko
+ *
+ */
+public class JChartPanelTiledRenderer
+{
+	/**
+	 * Number of processor cores available to draw strips.
+	 */
+	protected static final int THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Minimum width of a strip, in pixels.
+	 */
+	protected static final int MIN_STRIP_WIDTH = 64;
+
+	/**
+	 * Thread pool shared by all the chart panels to draw strips.
+	 */
+	protected static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREAD_COUNT,
+			new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable r)
+				{
+					Thread t = new Thread(r, "JChartPanelTiledRenderer");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+
+	/**
+	 * The image holding the drawn series layer, reused while the size of the chart
+	 * panel does not change.
+	 */
+	protected BufferedImage image;
+
+	/**
+	 * Returns true if drawing on more than one thread can be done on this machine.
+	 * 
+	 * @return - true if more than one processor core is available
+	 */
+	public static boolean isAvailable()
+	{
+		return THREAD_COUNT > 1;
+	}
+
+	/**
+	 * Draws the background and the line graphs of the given data series into an
+	 * image the size of the chart panel.
+	 * 
+	 * @param pointLists
+	 *            - the screen points of each data series to draw
+	 * @param colors
+	 *            - the color of each data series to draw
+	 * @param background
+	 *            - the background color of the chart panel
+	 * @param width
+	 *            - the width of the chart panel in pixels
+	 * @param height
+	 *            - the height of the chart panel in pixels
+	 * @return - the image holding the drawn series layer
+	 */
+	public BufferedImage render(final List<List<Point>> pointLists, final List<Color> colors, final Color background,
+			int width, final int height)
+	{
+		if (image == null || image.getWidth() != width || image.getHeight() != height)
+			image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+
+		int stripCount = Math.max(1, Math.min(THREAD_COUNT * 2, width / MIN_STRIP_WIDTH));
+		int stripWidth = (width + stripCount - 1) / stripCount;
+
+		List<Future<?>> futures = new ArrayList<Future<?>>(stripCount);
+
+		for (int x0 = 0 ; x0 < width ; x0 += stripWidth)
+		{
+			final int stripX = x0;
+			final int stripW = Math.min(stripWidth, width - x0);
+
+			futures.add(EXECUTOR.submit(new Callable<Void>()
+			{
+				@Override
+				public Void call()
+				{
+					drawStrip(pointLists, colors, background, stripX, stripW, height);
+					return null;
+				}
+			}));
+		}
+
+		try
+		{
+			for (Future<?> f : futures)
+				f.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch (ExecutionException e)
+		{
+			throw new RuntimeException(e.getCause());
+		}
+
+		return image;
+	}
+
+	/**
+	 * Draws the background and the line graph segments of the given data series
+	 * that cross a vertical strip of the chart panel.
+	 * 
+	 * @param pointLists
+	 *            - the screen points of each data series to draw
+	 * @param colors
+	 *            - the color of each data series to draw
+	 * @param background
+	 *            - the background color of the chart panel
+	 * @param stripX
+	 *            - the x-coordinate of the left edge of the strip
+	 * @param stripWidth
+	 *            - the width of the strip in pixels
+	 * @param height
+	 *            - the height of the chart panel in pixels
+	 */
+	protected void drawStrip(List<List<Point>> pointLists, List<Color> colors, Color background, int stripX,
+			int stripWidth, int height)
+	{
+		Graphics2D g = image.getSubimage(stripX, 0, stripWidth, height).createGraphics();
+
+		try
+		{
+			g.translate(-stripX, 0);
+			g.setClip(stripX, 0, stripWidth, height);
+
+			g.setColor(background);
+			g.fillRect(stripX, 0, stripWidth, height);
+
+			for (int s = 0 ; s < pointLists.size() ; ++s)
+			{
+				List<Point> points = pointLists.get(s);
+
+				// First segment ends at the first point at or right of the strip, and the last
+				// segment starts at the last point left of the right edge of the strip
+				int from = Math.max(1, firstIndexAtOrAfter(points, stripX));
+				int to = Math.min(points.size() - 1, firstIndexAtOrAfter(points, stripX + stripWidth));
+
+				g.setColor(colors.get(s));
+
+				for (int i = from ; i <= to ; ++i)
+					g.drawLine(points.get(i - 1).x, points.get(i - 1).y, points.get(i).x, points.get(i).y);
+			}
+		}
+		finally
+		{
+			g.dispose();
+		}
+	}
+
+	/**
+	 * Returns the index of the first screen point with an x-coordinate at or right
+	 * of the given x-coordinate.
+	 * 
+	 * @param points
+	 *            - the screen points, in order of x-coordinate
+	 * @param x
+	 *            - the x-coordinate
+	 * @return - the index of the first point at or right of x, or the number of
+	 *         points if there is none
+	 */
+	protected static int firstIndexAtOrAfter(List<Point> points, int x)
+	{
+		int lo = 0;
+		int hi = points.size();
+
+		while (lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+
+			if (points.get(mid).x < x)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+
+		return lo;
+	}
+}
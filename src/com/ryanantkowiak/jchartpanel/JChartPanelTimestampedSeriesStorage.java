@@ -0,0 +1,228 @@
+package com.ryanantkowiak.jchartpanel;
+
+import java.util.Arrays;
+
+/**
+ * Series storage for data points that are not evenly spaced in time. Each data
+ * point has a timestamp, held in a primitive long array alongside the storage
+ * of the values. Timestamps never decrease, so the data points in a range of
+ * time are found with a binary search.
+ * 
+ * Chart panels place timestamped series on a time axis shared by all the
+ * timestamped series of the panel, instead of spreading the data points evenly
+ * across the panel.
+ * 
+ * @author antko
+ *
+ */
+public class JChartPanelTimestampedSeriesStorage implements JChartPanelSeriesStorage
+{
+	/**
+	 * Default initial capacity of the array of timestamps.
+	 */
+	public static final int DEFAULT_CAPACITY = 16;
+
+	/**
+	 * The storage of the values of the data points.
+	 */
+	protected final JChartPanelSeriesStorage values;
+
+	/**
+	 * The timestamps of the data points. Only the first size elements are in use.
+	 */
+	protected long[] timestamps;
+
+	/**
+	 * Constructor for an empty timestamped series storage, holding the values in a
+	 * primitive double array.
+	 */
+	public JChartPanelTimestampedSeriesStorage()
+	{
+		this(new JChartPanelDoubleSeriesStorage());
+	}
+
+	/**
+	 * Constructor for an empty timestamped series storage.
+	 * 
+	 * @param values
+	 *            - the empty storage to hold the values of the data points, such as
+	 *            a JChartPanelFloatSeriesStorage
+	 */
+	public JChartPanelTimestampedSeriesStorage(JChartPanelSeriesStorage values)
+	{
+		if (values.size() != 0)
+			throw new IllegalArgumentException("values storage must be empty");
+
+		this.values = values;
+		this.timestamps = new long[DEFAULT_CAPACITY];
+	}
+
+	/**
+	 * Constructor for a timestamped series storage that holds a copy of the given
+	 * data points.
+	 * 
+	 * @param timestamps
+	 *            - the timestamps of the data points, in non-decreasing order
+	 * @param values
+	 *            - the values of the data points
+	 */
+	public JChartPanelTimestampedSeriesStorage(long[] timestamps, double[] values)
+	{
+		this();
+
+		if (timestamps.length != values.length)
+			throw new IllegalArgumentException("timestamps and values must have the same length");
+
+		for (int i = 0 ; i < timestamps.length ; ++i)
+			append(timestamps[i], values[i]);
+	}
+
+	@Override
+	public synchronized int size()
+	{
+		return values.size();
+	}
+
+	@Override
+	public synchronized double get(int index)
+	{
+		return values.get(index);
+	}
+
+	@Override
+	public synchronized double getMinValue()
+	{
+		return values.getMinValue();
+	}
+
+	@Override
+	public synchronized double getMaxValue()
+	{
+		return values.getMaxValue();
+	}
+
+	@Override
+	public synchronized void getRangeMinMax(int fromIndex, int toIndex, double[] minMax)
+	{
+		values.getRangeMinMax(fromIndex, toIndex, minMax);
+	}
+
+	/**
+	 * Not supported, since a data point needs a timestamp. Use append(long,
+	 * double) instead.
+	 */
+	@Override
+	public synchronized void append(double value)
+	{
+		throw new UnsupportedOperationException("Timestamped series need a timestamp for each data point");
+	}
+
+	/**
+	 * Appends a data point to the end of the storage.
+	 * 
+	 * @param timestamp
+	 *            - the timestamp of the data point, not before the timestamp of the
+	 *            last data point
+	 * @param value
+	 *            - the value of the data point
+	 */
+	public synchronized void append(long timestamp, double value)
+	{
+		int n = values.size();
+
+		if (n > 0 && timestamp < timestamps[n - 1])
+			throw new IllegalArgumentException("Timestamps must not decrease");
+
+		if (n == timestamps.length)
+			timestamps = Arrays.copyOf(timestamps, n * 2);
+
+		timestamps[n] = timestamp;
+		values.append(value);
+	}
+
+	/**
+	 * Returns the timestamp of the data point at the given index.
+	 * 
+	 * @param index
+	 *            - the index of the data point
+	 * @return - the timestamp of the data point
+	 */
+	public synchronized long getTimestamp(int index)
+	{
+		if (index >= values.size())
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + values.size());
+
+		return timestamps[index];
+	}
+
+	/**
+	 * Returns the index of the first data point with a timestamp at or after the
+	 * given time.
+	 * 
+	 * @param time
+	 *            - the time
+	 * @return - the index of the first data point at or after the time, or the
+	 *         number of data points if there is none
+	 */
+	public synchronized int indexAtOrAfter(long time)
+	{
+		return indexAtOrAfter(time, 0, values.size());
+	}
+
+	/**
+	 * Returns the index of the first data point in a range of indices with a
+	 * timestamp at or after the given time.
+	 * 
+	 * @param time
+	 *            - the time
+	 * @param fromIndex
+	 *            - the first index of the range to search (inclusive)
+	 * @param toIndex
+	 *            - the last index of the range to search (exclusive)
+	 * @return - the index of the first data point at or after the time, or toIndex
+	 *         if there is none
+	 */
+	public synchronized int indexAtOrAfter(long time, int fromIndex, int toIndex)
+	{
+		int lo = fromIndex;
+		int hi = toIndex;
+
+		while (lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+
+			if (timestamps[mid] < time)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+
+		return lo;
+	}
+
+	/**
+	 * Returns the index of the data point with the timestamp closest to the given
+	 * time.
+	 * 
+	 * @param time
+	 *            - the time
+	 * @return - the index of the closest data point, or -1 if the storage is empty
+	 */
+	public synchronized int indexClosestTo(long time)
+	{
+		int n = values.size();
+
+		if (n == 0)
+			return -1;
+
+		int i = indexAtOrAfter(time);
+
+		if (i == n)
+			return n - 1;
+
+		if (i > 0 && time - timestamps[i - 1] <= timestamps[i] - time)
+			return i - 1;
+
+		return i;
+	}
+}
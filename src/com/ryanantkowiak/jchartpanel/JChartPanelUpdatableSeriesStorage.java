@@ -0,0 +1,38 @@
+package com.ryanantkowiak.jchartpanel;
+
+/**
+ * Interface for a series storage whose data points can be rewritten in place,
+ * for series that are corrected after the fact.
+ * 
+ * @author antko
+ *
+ */
+public interface JChartPanelUpdatableSeriesStorage extends JChartPanelSeriesStorage
+{
+	/**
+	 * Replaces the values of a range of data points. The minimum and maximum
+	 * value of the storage are kept up to date without reading all of the data
+	 * points again.
+	 * 
+	 * @param fromIndex
+	 *            - the index of the first data point to replace
+	 * @param values
+	 *            - the array holding the new values
+	 * @param offset
+	 *            - the index in the array of the first new value
+	 * @param length
+	 *            - the number of data points to replace
+	 * @throws IndexOutOfBoundsException
+	 *             - if the range of data points is not within the storage
+	 */
+	public void setRange(int fromIndex, double[] values, int offset, int length);
+
+	/**
+	 * Returns the number of times ranges of data points were rewritten. Chart
+	 * panels that show the series compare it with the count they last placed, to
+	 * detect a rewrite made through any of them.
+	 * 
+	 * @return - the number of rewrites of the storage
+	 */
+	public int getUpdateCount();
+}
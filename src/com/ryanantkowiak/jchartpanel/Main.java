@@ -40,6 +40,10 @@ public class Main
 		chartPanel.addSeries(series1, "Series 1", Color.RED);
 		chartPanel.addSeries(series2, "Series 2", Color.LIGHT_GRAY);
 
+		// Add a 3-point moving average of the first series
+		chartPanel.addDerivedSeries(0, new JChartPanelDerivedSeries.MovingAverage(3), "Series 1 Average",
+				Color.ORANGE);
+
 		// Add the chart panel to the frame, and let the chart panel know the frame that
 		// owns it.
 		frame.getContentPane().add(chartPanel, BorderLayout.CENTER);